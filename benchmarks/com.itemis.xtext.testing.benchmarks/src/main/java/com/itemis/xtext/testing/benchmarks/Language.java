@@ -0,0 +1,165 @@
+package com.itemis.xtext.testing.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.xtext.IGrammarAccess;
+import org.eclipse.xtext.junit4.IInjectorProvider;
+import org.eclipse.xtext.junit4.IRegistryConfigurator;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.google.common.io.Files;
+import com.google.inject.Injector;
+import com.itemis.xtext.testing.GrammarModelGenerator;
+import com.itemis.xtext.testing.GrammarModelGenerator.CrossReferenceNames;
+import com.itemis.xtext.testing.ModelPipeline;
+
+/**
+ * <p>
+ * The language under benchmark and the model files to run through it. The
+ * language is set up like for a test class with
+ * <code>@InjectWith(injectorProvider)</code>: the injector provider sets up
+ * the EMF registries and creates the injector, which provides the resource
+ * sets and the {@link ModelPipeline}.
+ * </p>
+ *
+ * <p>
+ * The defaults are the domainmodel example and its test models; its bundles
+ * must be on the classpath of the benchmark.
+ * </p>
+ *
+ * <p>
+ * With a <code>generatedSize</code> above 0, a single model of that many
+ * characters is generated from the grammar instead, see
+ * {@link GrammarModelGenerator}. References to elements the grammar doesn't
+ * generate, like JVM types, are filled with <code>String</code>.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+@State(Scope.Thread)
+public class Language {
+
+    @Param("org.eclipse.xtext.example.domainmodel.DomainmodelInjectorProvider")
+    public String injectorProvider;
+
+    /** all files with the extension are loaded into one resource set */
+    @Param("../../examples/org.eclipse.xtext.example.domainmodel.tests/resources/ModelFileTest")
+    public String modelDirectory;
+
+    @Param("dmodel")
+    public String fileExtension;
+
+    /** the size of a generated model to use instead of the files, in chars */
+    @Param("0")
+    public long generatedSize;
+
+    @Param("1")
+    public long seed;
+
+    private IInjectorProvider provider;
+    private Injector injector;
+    private ModelPipeline pipeline;
+    private final List<URI> uris = new ArrayList<URI>();
+    private final List<byte[]> contents = new ArrayList<byte[]>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        provider = (IInjectorProvider) Class.forName(injectorProvider)
+                .newInstance();
+        if (provider instanceof IRegistryConfigurator) {
+            ((IRegistryConfigurator) provider).setupRegistry();
+        }
+        injector = provider.getInjector();
+        pipeline = injector.getInstance(ModelPipeline.class);
+
+        if (generatedSize > 0) {
+            generate();
+            return;
+        }
+        final File[] files = new File(modelDirectory)
+                .listFiles(new FileFilter() {
+                    @Override
+                    public boolean accept(final File file) {
+                        return file.isFile() && file.getName()
+                                .endsWith("." + fileExtension);
+                    }
+                });
+        if (files == null || files.length == 0) {
+            throw new IllegalArgumentException("no *." + fileExtension
+                    + " files in " + new File(modelDirectory).getAbsolutePath());
+        }
+        Arrays.sort(files);
+        for (final File file : files) {
+            uris.add(URI.createFileURI(file.getAbsolutePath()));
+            contents.add(Files.toByteArray(file));
+        }
+    }
+
+    private void generate() throws IOException {
+        final URI uri = URI.createFileURI(new File(modelDirectory,
+                "generated." + fileExtension).getAbsolutePath());
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final Writer out = new OutputStreamWriter(bytes,
+                pipeline.getEncoding(uri));
+        new GrammarModelGenerator(injector.getInstance(IGrammarAccess.class),
+                seed).setCrossReferenceNames(new CrossReferenceNames() {
+                    @Override
+                    public String getName(final EClassifier type,
+                            final List<String> generated,
+                            final Random random) {
+                        return generated.isEmpty() ? "String" : null;
+                    }
+                }).generate(out, generatedSize);
+        out.close();
+        uris.add(uri);
+        contents.add(bytes.toByteArray());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (provider instanceof IRegistryConfigurator) {
+            ((IRegistryConfigurator) provider).restoreRegistry();
+        }
+    }
+
+    public ModelPipeline getPipeline() {
+        return pipeline;
+    }
+
+    public ResourceSet newResourceSet() {
+        return injector.getInstance(ResourceSet.class);
+    }
+
+    /**
+     * parses all model files into a new resource set
+     */
+    public List<Resource> parseAll() throws IOException {
+        final ResourceSet rs = newResourceSet();
+        final List<Resource> resources = new ArrayList<Resource>(uris.size());
+        for (int i = 0; i < uris.size(); i++) {
+            resources.add(pipeline.parse(rs, uris.get(i),
+                    new ByteArrayInputStream(contents.get(i))));
+        }
+        return resources;
+    }
+}
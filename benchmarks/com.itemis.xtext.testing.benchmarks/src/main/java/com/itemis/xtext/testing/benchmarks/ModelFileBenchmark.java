@@ -0,0 +1,109 @@
+package com.itemis.xtext.testing.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.emf.ecore.resource.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * <p>
+ * Throughput of the steps of
+ * {@link com.itemis.xtext.testing.XtextTestBase#testFile(String, String...)}
+ * for all model files of the {@link Language}: one operation runs the step for
+ * the whole directory. Each step starts from models that went through the
+ * steps before, prepared outside of the measurement.
+ * </p>
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar:&lt;language jars&gt; org.openjdk.jmh.Main \
+ *     -p injectorProvider=... -p modelDirectory=... -p fileExtension=...
+ * </pre>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ModelFileBenchmark {
+
+    @State(Scope.Thread)
+    public static class Parsed {
+
+        List<Resource> resources;
+
+        @Setup(Level.Invocation)
+        public void setUp(final Language language) throws IOException {
+            resources = language.parseAll();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Linked {
+
+        List<Resource> resources;
+
+        @Setup(Level.Invocation)
+        public void setUp(final Language language) throws IOException {
+            resources = language.parseAll();
+            for (final Resource resource : resources) {
+                language.getPipeline().link(resource);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Resource> parse(final Language language) throws IOException {
+        return language.parseAll();
+    }
+
+    @Benchmark
+    public void link(final Language language, final Parsed parsed) {
+        for (final Resource resource : parsed.resources) {
+            language.getPipeline().link(resource);
+        }
+    }
+
+    @Benchmark
+    public void validate(final Language language, final Linked linked,
+            final Blackhole blackhole) {
+        for (final Resource resource : linked.resources) {
+            blackhole.consume(language.getPipeline().validate(resource));
+        }
+    }
+
+    @Benchmark
+    public void serialize(final Language language, final Linked linked)
+            throws IOException {
+        for (final Resource resource : linked.resources) {
+            language.getPipeline().serialize(resource,
+                    ByteStreams.nullOutputStream(), false);
+        }
+    }
+
+    @Benchmark
+    public void format(final Language language, final Linked linked)
+            throws IOException {
+        for (final Resource resource : linked.resources) {
+            language.getPipeline().serialize(resource,
+                    ByteStreams.nullOutputStream(), true);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.eclipse.xtext.example.domainmodel.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.eclipse.xtext.example.domainmodel.DomainmodelInjectorProvider;
+import org.eclipse.xtext.junit4.InjectWith;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.itemis.xtext.testing.Corpus;
+import com.itemis.xtext.testing.CorpusResult;
+import com.itemis.xtext.testing.XtextCorpusRunner;
+import com.itemis.xtext.testing.XtextTest;
+
+/*
+ * one test per file in resources/ModelFileTest/corpus, plus the methods below
+ */
+@RunWith(XtextCorpusRunner.class)
+@InjectWith(DomainmodelInjectorProvider.class)
+@Corpus(directory = "corpus", references = "person_no_attributes.dmodel", fileExtensions = "dmodel")
+public class CorpusTest extends XtextTest {
+
+	public CorpusTest() {
+		super("ModelFileTest");
+	}
+
+	@Test
+	public void corpus_in_one_batch() {
+		final CorpusResult result = testDirectory(2, "corpus", "person_no_attributes.dmodel");
+		assertEquals(2, result.getFiles().size());
+	}
+}
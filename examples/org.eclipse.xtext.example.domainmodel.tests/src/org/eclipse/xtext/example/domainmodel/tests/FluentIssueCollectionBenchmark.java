@@ -0,0 +1,101 @@
+package org.eclipse.xtext.example.domainmodel.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.eclipse.xtext.diagnostics.Severity;
+import org.eclipse.xtext.validation.Issue;
+import org.junit.Test;
+
+import com.itemis.xtext.testing.FluentIssueCollection;
+
+/**
+ * Compares chained filters of {@link FluentIssueCollection} with filtering by
+ * copying the issue list in every step, on a large synthetic set of issues;
+ * only with {@link TimingTests} turned on.
+ */
+public class FluentIssueCollectionBenchmark {
+
+	private static final Logger LOGGER = Logger.getLogger(FluentIssueCollectionBenchmark.class);
+
+	private static final int ISSUES = 20000;
+	private static final int LINES = 2000;
+	private static final String[] CODES = { "duplicate", "unused", "deprecated", "unresolved" };
+	private static final int ROUNDS = 20;
+
+	@Test
+	public void chainedFilters() {
+		TimingTests.assumeEnabled();
+		final List<Issue> issues = createIssues();
+
+		// warm up and check that both give the same result
+		assertEquals(copying(issues), indexed(issues));
+
+		long copying = 0;
+		long indexed = 0;
+		for (int i = 0; i < ROUNDS; i++) {
+			long start = System.nanoTime();
+			copying(issues);
+			copying += System.nanoTime() - start;
+			start = System.nanoTime();
+			indexed(issues);
+			indexed += System.nanoTime() - start;
+		}
+		LOGGER.info(String.format("%d issues, %d lines x%d: copying %dms, indexed %dms, speedup %.2f", ISSUES, LINES,
+				ROUNDS, copying / 1000000, indexed / 1000000, (double) copying / indexed));
+	}
+
+	/**
+	 * asserts every line, like a test of a large model would
+	 */
+	private int indexed(final List<Issue> issues) {
+		final FluentIssueCollection all = new FluentIssueCollection(null, issues, new ArrayList<String>());
+		int found = 0;
+		for (int line = 1; line <= LINES; line++) {
+			found += all.errorsOnly().inLine(line).withCode(CODES[line % CODES.length]).getIssues().size();
+		}
+		return found;
+	}
+
+	private int copying(final List<Issue> issues) {
+		int found = 0;
+		for (int line = 1; line <= LINES; line++) {
+			final List<Issue> errors = new ArrayList<Issue>();
+			for (final Issue i : issues) {
+				if (i.getSeverity() == Severity.ERROR) {
+					errors.add(i);
+				}
+			}
+			final List<Issue> inLine = new ArrayList<Issue>();
+			for (final Issue i : errors) {
+				if (i.getLineNumber() == line) {
+					inLine.add(i);
+				}
+			}
+			final List<Issue> withCode = new ArrayList<Issue>();
+			for (final Issue i : inLine) {
+				if (i.getCode().equals(CODES[line % CODES.length])) {
+					withCode.add(i);
+				}
+			}
+			found += withCode.size();
+		}
+		return found;
+	}
+
+	private static List<Issue> createIssues() {
+		final List<Issue> issues = new ArrayList<Issue>(ISSUES);
+		for (int i = 0; i < ISSUES; i++) {
+			final Issue.IssueImpl issue = new Issue.IssueImpl();
+			issue.setLineNumber(1 + i % LINES);
+			issue.setSeverity(i % 3 == 0 ? Severity.WARNING : Severity.ERROR);
+			issue.setCode(CODES[i % CODES.length]);
+			issue.setMessage("issue " + i);
+			issues.add(issue);
+		}
+		return issues;
+	}
+}
@@ -0,0 +1,57 @@
+package org.eclipse.xtext.example.domainmodel.tests;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+
+import org.eclipse.xtext.example.domainmodel.DomainmodelInjectorProvider;
+import org.eclipse.xtext.junit4.InjectWith;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.itemis.xtext.testing.LexerStatistics;
+import com.itemis.xtext.testing.TerminalCases;
+import com.itemis.xtext.testing.TokenCursor;
+import com.itemis.xtext.testing.XtextRunner2;
+import com.itemis.xtext.testing.XtextTest;
+
+@RunWith(XtextRunner2.class)
+@InjectWith(DomainmodelInjectorProvider.class)
+public class LexerTest extends XtextTest {
+
+	public LexerTest() {
+		super("ModelFileTest");
+	}
+
+	@Test
+	public void terminals() {
+		testTerminals(new TerminalCases()
+				.add("bar", "ID")
+				.add("_bar_", "ID")
+				.add("$bar$", "ID")
+				.add("foo.bar", "ID", "'.'", "ID")
+				.add("foo.*", "ID", "'.'", "'*'")
+				.add("entity", "'entity'")
+				.addNot("3bar", "ID")
+				.addNot("#bar", "ID"));
+	}
+
+	@Test
+	public void lexer_throughput() {
+		final LexerStatistics statistics = measureLexer("person2_extends_person.dmodel", "person_no_attributes.dmodel");
+		assertTrue(statistics.getTokens("ID") > 0);
+		assertTrue(statistics.getRules().contains(LexerStatistics.KEYWORDS));
+	}
+
+	@Test
+	public void token_cursor_over_generated_model() {
+		final String model = newModelGenerator(1).generate(1000000).toString();
+		final TokenCursor tokens = getTokenCursor(new StringReader(model));
+		int end = 0;
+		while (tokens.next()) {
+			assertTrue(tokens.getOffset() == end);
+			end = tokens.getOffset() + tokens.getLength();
+		}
+		assertTrue(end == model.length());
+	}
+}
@@ -6,6 +6,7 @@ import org.eclipse.xtext.junit4.InjectWith;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import com.itemis.xtext.testing.TestPhase;
 import com.itemis.xtext.testing.XtextRunner2;
 import com.itemis.xtext.testing.XtextTest;
 
@@ -36,6 +37,19 @@ public class ModelFileTest extends XtextTest {
     testFile("person2_extends_person.dmodel", /* not tested, but indexed */ "person_no_attributes.dmodel");
   }
 
+  @Test
+  public void person2_extends_person_linkOnly(){
+    testFile(TestPhase.LINK, "person2_extends_person.dmodel", "person_no_attributes.dmodel");
+  }
+
+  @Test
+  public void person2_extends_person_fromSnapshot(){
+    /* the referenced model is stored on the first run and loaded by later
+     * runs, the supertype of person2 must link to the loaded snapshot */
+    snapshotReferencedResources();
+    testFile("person2_extends_person.dmodel", "person_no_attributes.dmodel");
+  }
+
   @Test
   public void test_withCode(){
     testFile("person_invalid_typename.dmodel");
@@ -0,0 +1,52 @@
+package org.eclipse.xtext.example.domainmodel.tests;
+
+import static org.junit.Assert.assertTrue;
+
+import org.apache.log4j.Logger;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+
+import com.itemis.xtext.testing.ParallelScheduler;
+import com.itemis.xtext.testing.XtextRunner2;
+
+/**
+ * Runs {@link ModelFileTest} serially and on a worker pool and logs the
+ * speedup; only with {@link TimingTests} turned on.
+ */
+public class ParallelRunnerBenchmark {
+
+	private static final Logger LOGGER = Logger.getLogger(ParallelRunnerBenchmark.class);
+
+	private static final int ROUNDS = 5;
+
+	@Test
+	public void modelFileTestSpeedup() throws Exception {
+		TimingTests.assumeEnabled();
+		final int threads = Runtime.getRuntime().availableProcessors();
+		// warm up injector, registries and JIT
+		run(false, threads);
+
+		long serial = 0;
+		long parallel = 0;
+		for (int i = 0; i < ROUNDS; i++) {
+			serial += run(false, threads);
+			parallel += run(true, threads);
+		}
+		LOGGER.info(String.format("ModelFileTest x%d: serial %dms, %d threads %dms, speedup %.2f", ROUNDS,
+				serial / 1000000, threads, parallel / 1000000, (double) serial / parallel));
+	}
+
+	private long run(final boolean parallel, final int threads) throws Exception {
+		final XtextRunner2 runner = new XtextRunner2(ModelFileTest.class);
+		if (parallel) {
+			runner.setScheduler(new ParallelScheduler(threads));
+		}
+		final long start = System.nanoTime();
+		final Result result = new JUnitCore().run(Request.runner(runner));
+		final long elapsed = System.nanoTime() - start;
+		assertTrue(result.getFailures().toString(), result.wasSuccessful());
+		return elapsed;
+	}
+}
@@ -0,0 +1,34 @@
+package org.eclipse.xtext.example.domainmodel.tests;
+
+import org.eclipse.xtext.example.domainmodel.DomainmodelInjectorProvider;
+import org.eclipse.xtext.junit4.InjectWith;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.itemis.xtext.testing.XtextRunner2;
+import com.itemis.xtext.testing.XtextTest;
+
+/**
+ * Fuzzes the parser with the files of {@link ModelFileTest}; the seed is
+ * pinned so a failure can be reproduced, and each mutant has a time limit,
+ * so it only runs with {@link TimingTests} turned on.
+ */
+@RunWith(XtextRunner2.class)
+@InjectWith(DomainmodelInjectorProvider.class)
+public class ParserFuzzingTest extends XtextTest {
+	public ParserFuzzingTest() {
+		super("ModelFileTest");
+	}
+
+	@Before
+	public void onlyWithTimingTests() {
+		TimingTests.assumeEnabled();
+	}
+
+	@Test
+	public void person2_extends_person_survivesParserFuzzing() {
+		fuzzParser(newParserFuzzer().millis(2000).mutations(100).seed(42),
+				"person2_extends_person.dmodel", "person_no_attributes.dmodel");
+	}
+}
@@ -0,0 +1,44 @@
+package org.eclipse.xtext.example.domainmodel.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.xtext.example.domainmodel.DomainmodelInjectorProvider;
+import org.eclipse.xtext.junit4.InjectWith;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.itemis.xtext.testing.ParseStatistics;
+import com.itemis.xtext.testing.ParserRuleCases;
+import com.itemis.xtext.testing.RuleProfile;
+import com.itemis.xtext.testing.XtextRunner2;
+import com.itemis.xtext.testing.XtextTest;
+
+@RunWith(XtextRunner2.class)
+@InjectWith(DomainmodelInjectorProvider.class)
+public class ParserRulesTest extends XtextTest {
+
+	public ParserRulesTest() {
+		super("ModelFileTest");
+	}
+
+	@Test
+	public void parser_rules() {
+		final ParserRuleCases cases = new ParserRuleCases()
+				.add("foo.bar", "QualifiedName")
+				.add("foo.bar.*", "QualifiedNameWithWildcard")
+				.add("name : String", "Property")
+				.add("entity A extends B { name : String }", "Entity");
+		for (int i = 0; i < 100; i++) {
+			cases.add("op get" + i + "(int x) : int { return x * " + i + " }", "Operation");
+		}
+		final ParseStatistics statistics = testParserRules(cases, 0);
+		assertEquals(100, statistics.getCount("Operation"));
+	}
+
+	@Test
+	public void profile_parser_rules() {
+		final RuleProfile profile = profileParser("person2_extends_person.dmodel", "person_no_attributes.dmodel");
+		assertTrue(profile.getRule("Entity").getEntries() >= 2);
+	}
+}
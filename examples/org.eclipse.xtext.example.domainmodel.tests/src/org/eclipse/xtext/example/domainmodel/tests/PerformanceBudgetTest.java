@@ -0,0 +1,34 @@
+package org.eclipse.xtext.example.domainmodel.tests;
+
+import org.eclipse.xtext.example.domainmodel.DomainmodelInjectorProvider;
+import org.eclipse.xtext.junit4.InjectWith;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.itemis.xtext.testing.PerformanceBudget;
+import com.itemis.xtext.testing.XtextRunner2;
+import com.itemis.xtext.testing.XtextTest;
+
+/**
+ * Budget checks on the files of {@link ModelFileTest}; only with
+ * {@link TimingTests} turned on.
+ */
+@RunWith(XtextRunner2.class)
+@InjectWith(DomainmodelInjectorProvider.class)
+public class PerformanceBudgetTest extends XtextTest {
+	public PerformanceBudgetTest() {
+		super("ModelFileTest");
+	}
+
+	@Before
+	public void onlyWithTimingTests() {
+		TimingTests.assumeEnabled();
+	}
+
+	@Test
+	public void person2_extends_person_validatesWithinBudget() {
+		assertValidatesWithin(new PerformanceBudget().millis(2000).warmup(2).iterations(5),
+				"person2_extends_person.dmodel", "person_no_attributes.dmodel");
+	}
+}
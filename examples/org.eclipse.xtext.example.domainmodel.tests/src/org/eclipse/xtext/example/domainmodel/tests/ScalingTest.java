@@ -0,0 +1,75 @@
+package org.eclipse.xtext.example.domainmodel.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.xtext.example.domainmodel.DomainmodelInjectorProvider;
+import org.eclipse.xtext.junit4.InjectWith;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.itemis.xtext.testing.GrammarModelGenerator;
+import com.itemis.xtext.testing.GrammarModelGenerator.CrossReferenceNames;
+import com.itemis.xtext.testing.ModelGenerator;
+import com.itemis.xtext.testing.XtextRunner2;
+import com.itemis.xtext.testing.XtextTest;
+
+@RunWith(XtextRunner2.class)
+@InjectWith(DomainmodelInjectorProvider.class)
+public class ScalingTest extends XtextTest {
+
+	/**
+	 * a chain of entities, each extending and referring to the one before
+	 */
+	private static final ModelGenerator ENTITIES = new ModelGenerator() {
+		@Override
+		public CharSequence generate(final int size) {
+			final StringBuilder sb = new StringBuilder("entity Entity0 {\n  name : String\n}\n");
+			for (int i = 1; i < size; i++) {
+				sb.append("entity Entity").append(i).append(" extends Entity").append(i - 1).append(" {\n");
+				sb.append("  previous : Entity").append(i - 1).append("\n");
+				sb.append("  count").append(i).append(" : int\n");
+				sb.append("}\n");
+			}
+			return sb;
+		}
+	};
+
+	/**
+	 * JVM types and members are not generated, refer to String instead
+	 */
+	private static final CrossReferenceNames JVM_TYPES = new CrossReferenceNames() {
+		@Override
+		public String getName(final EClassifier type, final List<String> generated, final Random random) {
+			return generated.isEmpty() ? "String" : null;
+		}
+	};
+
+	public ScalingTest() {
+		super("ScalingTest");
+	}
+
+	/**
+	 * fits wall-clock times, so only with {@link TimingTests} turned on
+	 */
+	@Test
+	public void entities_scale_linearly() {
+		TimingTests.assumeEnabled();
+		assertLinearScaling("entities.dmodel", ENTITIES, 100, 200, 400, 800);
+	}
+
+	@Test
+	public void generated_models_parse() {
+		final GrammarModelGenerator generator = newModelGenerator(42).setCrossReferenceNames(JVM_TYPES);
+		testParserRule(generator.generate(100000).toString(), "DomainModel");
+	}
+
+	@Test
+	public void generated_models_are_reproducible() {
+		final String model = newModelGenerator(7).generate(10000).toString();
+		assertEquals(model, newModelGenerator(7).generate(10000).toString());
+	}
+}
@@ -0,0 +1,23 @@
+package org.eclipse.xtext.example.domainmodel.tests;
+
+import org.junit.Assume;
+
+/**
+ * Tests that measure wall-clock time fail randomly on shared or loaded
+ * machines, so they only run with the system property
+ * <code>xtext.testing.timingTests=true</code>.
+ */
+final class TimingTests {
+
+	static final String PROPERTY = "xtext.testing.timingTests";
+
+	private TimingTests() {
+	}
+
+	/**
+	 * skips the calling test unless timing tests are turned on
+	 */
+	static void assumeEnabled() {
+		Assume.assumeTrue(Boolean.getBoolean(PROPERTY));
+	}
+}
@@ -0,0 +1,123 @@
+package org.eclipse.xtext.example.domainmodel.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.xtext.example.domainmodel.domainmodel.DomainModel;
+import org.eclipse.xtext.example.domainmodel.domainmodel.DomainmodelFactory;
+import org.eclipse.xtext.example.domainmodel.domainmodel.DomainmodelPackage;
+import org.eclipse.xtext.example.domainmodel.domainmodel.Entity;
+import org.eclipse.xtext.example.domainmodel.domainmodel.Property;
+import org.junit.Test;
+
+import com.itemis.xtext.testing.XtextUtils;
+
+/**
+ * Compares looking up the name feature by string on every call with the
+ * cached lookup of {@link XtextUtils#name(EObject)} and the typed accessor, on
+ * elements of the domainmodel metamodel; only with {@link TimingTests} turned
+ * on.
+ */
+public class XtextUtilsBenchmark {
+
+	private static final Logger LOGGER = Logger.getLogger(XtextUtilsBenchmark.class);
+
+	private static final int ELEMENTS = 3000;
+	private static final int ROUNDS = 2000;
+
+	@Test
+	public void nameLookup() {
+		TimingTests.assumeEnabled();
+		final List<EObject> elements = createElements();
+
+		// warm up and check that all give the same result
+		assertEquals(uncached(elements), cached(elements));
+		assertEquals(uncached(elements), typed(elements));
+
+		long uncached = 0;
+		long cached = 0;
+		long typed = 0;
+		for (int i = 0; i < ROUNDS; i++) {
+			long start = System.nanoTime();
+			uncached(elements);
+			uncached += System.nanoTime() - start;
+			start = System.nanoTime();
+			cached(elements);
+			cached += System.nanoTime() - start;
+			start = System.nanoTime();
+			typed(elements);
+			typed += System.nanoTime() - start;
+		}
+		LOGGER.info(String.format("%d elements x%d: by string %dms, cached %dms, typed %dms", ELEMENTS, ROUNDS,
+				uncached / 1000000, cached / 1000000, typed / 1000000));
+	}
+
+	private int uncached(final List<EObject> elements) {
+		int length = 0;
+		for (final EObject element : elements) {
+			final EStructuralFeature feature = element.eClass().getEStructuralFeature("name");
+			if (feature != null) {
+				length += ((String) element.eGet(feature)).length();
+			}
+		}
+		return length;
+	}
+
+	private int cached(final List<EObject> elements) {
+		int length = 0;
+		for (final EObject element : elements) {
+			final String name = XtextUtils.name(element);
+			if (name != null) {
+				length += name.length();
+			}
+		}
+		return length;
+	}
+
+	private int typed(final List<EObject> elements) {
+		final EStructuralFeature entityName = DomainmodelPackage.Literals.ABSTRACT_ELEMENT__NAME;
+		final EStructuralFeature propertyName = DomainmodelPackage.Literals.FEATURE__NAME;
+		int length = 0;
+		for (final EObject element : elements) {
+			String name = XtextUtils.eget(element, entityName, String.class);
+			if (name == null) {
+				name = XtextUtils.eget(element, propertyName, String.class);
+			}
+			if (name != null) {
+				length += name.length();
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * entities, properties and models, which don't have a name
+	 */
+	private static List<EObject> createElements() {
+		final DomainmodelFactory factory = DomainmodelFactory.eINSTANCE;
+		final List<EObject> elements = new ArrayList<EObject>(ELEMENTS);
+		for (int i = 0; i < ELEMENTS; i++) {
+			switch (i % 3) {
+			case 0:
+				final Entity entity = factory.createEntity();
+				entity.setName("Entity" + i);
+				elements.add(entity);
+				break;
+			case 1:
+				final Property property = factory.createProperty();
+				property.setName("property" + i);
+				elements.add(property);
+				break;
+			default:
+				final DomainModel model = factory.createDomainModel();
+				elements.add(model);
+			}
+		}
+		return elements;
+	}
+}
@@ -0,0 +1,72 @@
+package com.itemis.xtext.testing;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * <p>
+ * Reads the number of bytes the current thread has allocated so far, using
+ * <code>com.sun.management.ThreadMXBean</code>.
+ * </p>
+ *
+ * <p>
+ * That interface is not available on all JVMs and not exported to bundles,
+ * so it is loaded reflectively from the class loader of the platform MXBean;
+ * if it is missing or disabled, the allocated bytes are reported as -1.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+final class AllocatedBytes {
+
+    private static final ThreadMXBean THREADS = ManagementFactory
+            .getThreadMXBean();
+
+    private static final Method GET_ALLOCATED_BYTES = lookup();
+
+    private AllocatedBytes() {
+    }
+
+    static boolean isSupported() {
+        return GET_ALLOCATED_BYTES != null;
+    }
+
+    /**
+     * the bytes allocated by the current thread, or -1 if not supported
+     */
+    static long currentThread() {
+        if (GET_ALLOCATED_BYTES == null) {
+            return -1;
+        }
+        try {
+            return (Long) GET_ALLOCATED_BYTES.invoke(THREADS,
+                    Thread.currentThread().getId());
+        } catch (final Exception e) {
+            return -1;
+        }
+    }
+
+    private static Method lookup() {
+        try {
+            final Class<?> type = Class.forName(
+                    "com.sun.management.ThreadMXBean", false,
+                    THREADS.getClass().getClassLoader());
+            if (!type.isInstance(THREADS)) {
+                return null;
+            }
+            final boolean supported = (Boolean) type
+                    .getMethod("isThreadAllocatedMemorySupported")
+                    .invoke(THREADS);
+            if (!supported) {
+                return null;
+            }
+            type.getMethod("setThreadAllocatedMemoryEnabled", boolean.class)
+                    .invoke(THREADS, true);
+            return type.getMethod("getThreadAllocatedBytes", long.class);
+        } catch (final Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.itemis.xtext.testing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * <p>
+ * A growable byte buffer holding the raw contents of a model file, so that a
+ * file is read once and the same bytes feed the parser, the content hash and
+ * the comparison with the serialized model.
+ * </p>
+ *
+ * <p>
+ * The buffer is meant to be reused for many files by the same thread, see
+ * {@link #forCurrentThread(ThreadLocal)}. A buffer that grew beyond
+ * {@link #MAX_RETAINED_BYTES} for a large file is dropped after use, see
+ * {@link #release(ThreadLocal)}, so that it doesn't stay allocated for the
+ * rest of the run.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+class ContentBuffer extends ByteArrayOutputStream {
+
+    /* the largest capacity of a buffer that is kept for reuse */
+    static final int MAX_RETAINED_BYTES = 1024 * 1024;
+
+    ContentBuffer() {
+        super(8192);
+    }
+
+    static ContentBuffer forCurrentThread(
+            final ThreadLocal<ContentBuffer> buffers) {
+        ContentBuffer buffer = buffers.get();
+        if (buffer == null) {
+            buffer = new ContentBuffer();
+            buffers.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * drops the buffer of the current thread if it grew too large to be kept
+     */
+    static void release(final ThreadLocal<ContentBuffer> buffers) {
+        final ContentBuffer buffer = buffers.get();
+        if (buffer != null && buffer.isOversized()) {
+            buffers.remove();
+        }
+    }
+
+    /**
+     * drops the buffers that grew too large to be kept, and all but the first
+     * <code>max</code> ones
+     */
+    static void release(final List<ContentBuffer> buffers, final int max) {
+        for (final Iterator<ContentBuffer> i = buffers.iterator(); i
+                .hasNext();) {
+            if (i.next().isOversized()) {
+                i.remove();
+            }
+        }
+        while (buffers.size() > max) {
+            buffers.remove(buffers.size() - 1);
+        }
+    }
+
+    boolean isOversized() {
+        return buf.length > MAX_RETAINED_BYTES;
+    }
+
+    /**
+     * replaces the contents of this buffer with everything read from the
+     * stream, and closes the stream
+     */
+    void readFrom(final InputStream in) throws IOException {
+        reset();
+        try {
+            int n;
+            while ((n = in.read(buf, count, buf.length - count)) >= 0) {
+                count += n;
+                if (count == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * a stream over the current contents, without copying them
+     */
+    InputStream newInputStream() {
+        return new ByteArrayInputStream(buf, 0, count);
+    }
+
+    @Override
+    public synchronized String toString(final String encoding)
+            throws UnsupportedEncodingException {
+        return new String(buf, 0, count, encoding);
+    }
+
+    /**
+     * the SHA-1 hash of the current contents as hex string
+     */
+    String sha1() {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(buf, 0, count);
+            final StringBuilder sb = new StringBuilder();
+            for (final byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.itemis.xtext.testing;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * The directory of model files {@link XtextCorpusRunner} generates a test
+ * for each of, e.g.
+ * </p>
+ *
+ * <pre>
+ * &#64;RunWith(XtextCorpusRunner.class)
+ * &#64;InjectWith(DomainmodelInjectorProvider.class)
+ * &#64;Corpus(directory = "regression", references = "common.dmodel")
+ * &#64;ParallelExecution(threads = 4)
+ * public class RegressionTest extends XtextTest {
+ *     public RegressionTest() {
+ *         super("ModelFileTest");
+ *     }
+ * }
+ * </pre>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Inherited
+public @interface Corpus {
+
+    /**
+     * the directory relative to the resource root of the test class, its
+     * subdirectories are included
+     */
+    String directory();
+
+    /**
+     * the resources the files reference, relative to the resource root; they
+     * are loaded once per worker thread and are not tested themselves
+     */
+    String[] references() default {};
+
+    /**
+     * the extensions of the files to test, all files if empty
+     */
+    String[] fileExtensions() default {};
+}
@@ -0,0 +1,117 @@
+package com.itemis.xtext.testing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.URIConverter;
+
+/**
+ * <p>
+ * Lists the model files of a corpus directory below the resource root of a
+ * test, in a directory on disk or in a jar on the classpath. Directories and
+ * jars are listed once per JVM, see {@link UriCache}.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+final class CorpusFiles {
+
+    private CorpusFiles() {
+    }
+
+    /**
+     * Returns the files below the directory, recursively and sorted, as paths
+     * relative to the resource root like the ones passed to
+     * {@link XtextTestBase#testFile(String, String...)}. Only files with one
+     * of the extensions are listed, all if there are none.
+     *
+     * @param context
+     *            the class whose class loader resolves classpath URIs
+     */
+    static List<String> list(final Class<?> context,
+            final String resourceRoot, final String directory,
+            final Collection<String> fileExtensions) {
+        final String dir = trimSlashes(directory);
+        URI uri = URI.createURI(trimSlashes(resourceRoot)
+                + (dir.length() == 0 ? "" : "/" + dir));
+        uri = UriCache.getInstance().resolve(context, uri);
+        uri = URIConverter.INSTANCE.normalize(uri);
+
+        final List<String> files = new ArrayList<String>();
+        final String prefix = dir.length() == 0 ? "" : dir + "/";
+        if (uri.isFile()) {
+            final File root = new File(uri.toFileString());
+            if (!root.isDirectory()) {
+                throw new IllegalArgumentException(
+                        "corpus directory not found: " + uri);
+            }
+            listDirectory(root, prefix, fileExtensions, files);
+        } else if (uri.isArchive()) {
+            listArchive(uri, prefix, fileExtensions, files);
+        } else {
+            throw new IllegalArgumentException(
+                    "can't list corpus directory " + uri);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static void listDirectory(final File dir, final String prefix,
+            final Collection<String> fileExtensions,
+            final List<String> files) {
+        for (final String name : UriCache.getInstance().directoryFiles(dir)) {
+            if (matches(name, fileExtensions)) {
+                files.add(prefix + name);
+            }
+        }
+    }
+
+    /**
+     * lists the entries of a <code>jar:file:/x.jar!/path</code> URI
+     */
+    private static void listArchive(final URI uri, final String prefix,
+            final Collection<String> fileExtensions,
+            final List<String> files) {
+        final String authority = uri.authority();
+        final URI jar = URI
+                .createURI(authority.substring(0, authority.length() - 1));
+        final String path = trimSlashes(uri.path()) + "/";
+        try {
+            for (final String name : UriCache.getInstance()
+                    .archiveEntries(new File(jar.toFileString()))) {
+                if (name.startsWith(path) && matches(name, fileExtensions)) {
+                    files.add(prefix + name.substring(path.length()));
+                }
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean matches(final String name,
+            final Collection<String> fileExtensions) {
+        if (fileExtensions.isEmpty()) {
+            return true;
+        }
+        final int dot = name.lastIndexOf('.');
+        return dot >= 0 && fileExtensions.contains(name.substring(dot + 1));
+    }
+
+    private static String trimSlashes(final String path) {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(start, end);
+    }
+}
@@ -0,0 +1,142 @@
+package com.itemis.xtext.testing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <p>
+ * The outcome of testing a directory of model files, see
+ * {@link XtextTestBase#testDirectory(int, String, String...)}: per file
+ * whether it passed, the reason if not, and its timings.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class CorpusResult {
+
+    /* the number of slowest files listed by #toString */
+    private static final int SLOWEST = 10;
+
+    /**
+     * The outcome of one file.
+     */
+    public static class FileResult {
+
+        private final String file;
+        private final long nanos;
+        private final PhaseMetrics metrics;
+        private final String failure;
+
+        FileResult(final String file, final long nanos,
+                final PhaseMetrics metrics, final String failure) {
+            this.file = file;
+            this.nanos = nanos;
+            this.metrics = metrics;
+            this.failure = failure;
+        }
+
+        /**
+         * the path of the file relative to the resource root
+         */
+        public String getFile() {
+            return file;
+        }
+
+        /**
+         * the wall-clock time of testing the file, including borrowing its
+         * referenced resources
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * the timings of the phases, see
+         * {@link XtextTestBase#getPhaseMetrics()}
+         */
+        public PhaseMetrics getPhaseMetrics() {
+            return metrics;
+        }
+
+        public boolean isPassed() {
+            return failure == null;
+        }
+
+        /**
+         * why the file failed, null if it passed
+         */
+        public String getFailure() {
+            return failure;
+        }
+    }
+
+    private final List<FileResult> files;
+    private final int threads;
+    private final long nanos;
+
+    CorpusResult(final List<FileResult> files, final int threads,
+            final long nanos) {
+        this.files = files;
+        this.threads = threads;
+        this.nanos = nanos;
+    }
+
+    /**
+     * the results in the order of the file names
+     */
+    public List<FileResult> getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+    public FileResult getFile(final String file) {
+        for (final FileResult result : files) {
+            if (result.file.equals(file)) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    public List<FileResult> getFailures() {
+        final List<FileResult> failures = new ArrayList<FileResult>();
+        for (final FileResult result : files) {
+            if (!result.isPassed()) {
+                failures.add(result);
+            }
+        }
+        return failures;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * the wall-clock time of testing all files
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(String.format(
+                "tested %d files with %d threads in %.1fms, %d failed",
+                files.size(), threads, nanos / 1e6, getFailures().size()));
+        final List<FileResult> slowest = new ArrayList<FileResult>(files);
+        Collections.sort(slowest, new Comparator<FileResult>() {
+            public int compare(final FileResult a, final FileResult b) {
+                return a.nanos > b.nanos ? -1 : a.nanos < b.nanos ? 1 : 0;
+            }
+        });
+        for (int i = 0; i < Math.min(SLOWEST, slowest.size()); i++) {
+            final FileResult result = slowest.get(i);
+            sb.append(String.format("%n%10.1fms %s", result.nanos / 1e6,
+                    result.file));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,31 @@
+package com.itemis.xtext.testing;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates numbered daemon threads for the worker pools of the test helpers,
+ * named <code>&lt;prefix&gt;-&lt;pool&gt;-worker-&lt;thread&gt;</code>.
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+class DaemonThreadFactory implements ThreadFactory {
+
+    private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+    private final String prefix;
+    private final int poolNumber = POOL_COUNT.incrementAndGet();
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    DaemonThreadFactory(final String prefix) {
+        this.prefix = prefix;
+    }
+
+    public Thread newThread(final Runnable r) {
+        final Thread t = new Thread(r, prefix + "-" + poolNumber + "-worker-"
+                + threadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    }
+}
@@ -3,29 +3,32 @@ package com.itemis.xtext.testing;
 import static com.itemis.xtext.testing.XtextUtils.ancestor;
 import static com.itemis.xtext.testing.XtextUtils.eString;
 import static com.itemis.xtext.testing.XtextUtils.egetAndResolve;
-import static com.itemis.xtext.testing.XtextUtils.getEObject;
 import static com.itemis.xtext.testing.XtextUtils.name;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
-import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.xtext.diagnostics.Severity;
 import org.eclipse.xtext.validation.Issue;
 
-import com.google.common.collect.Iterables;
-
 /**
  * Offers a fluent way of asserting Xtext Issues (Validation Warnings and
  * Errors).
  *
+ * <p>
+ * All collections derived from one validation run share an index of its
+ * issues. Filters are lazy views, they are evaluated by combining the indexed
+ * positions when the issues of the collection are first needed.
+ * </p>
+ *
  * @author Markus Voelter - Initial Contribution and API
  * @author Karsten Thoms
  * @author Lars Corneliussen
@@ -35,111 +38,196 @@ public class FluentIssueCollection implements Iterable<Issue> {
     private static Logger LOGGER = Logger
             .getLogger(FluentIssueCollection.class);
 
-    private final List<Issue> issues;
+    private final IssueIndex index;
     private final List<String> messages;
     private final Resource resource;
 
+    /* a view is evaluated by applying its filter to its source */
+    private FluentIssueCollection source;
+    private Filter filter;
+    private BitSet selection;
+    private List<Issue> selectedIssues;
+
     private boolean state;
     private boolean stateIsSet;
 
     public FluentIssueCollection(final Resource res, final List<Issue> issues,
             final List<String> messages) {
         resource = res;
-        this.issues = issues;
+        index = new IssueIndex(res, issues);
+        selection = index.all();
         this.messages = messages;
     }
 
     public FluentIssueCollection(final Resource res,
             final List<String> messages) {
-        issues = new ArrayList<Issue>();
-        resource = res;
-        this.messages = messages;
+        this(res, new ArrayList<Issue>(), messages);
+    }
+
+    private FluentIssueCollection(final FluentIssueCollection source,
+            final Filter filter) {
+        resource = source.resource;
+        index = source.index;
+        messages = source.messages;
+        this.source = source;
+        this.filter = filter;
+    }
+
+    private BitSet selection() {
+        if (selection == null) {
+            selection = filter.select(source.selection());
+            source = null;
+            filter = null;
+        }
+        return selection;
     }
 
     private void addMessage(final String m) {
         messages.add(m);
     }
 
+    /**
+     * Adds an issue to this collection.
+     *
+     * <p>
+     * The issue is stored in the index shared by all collections of the
+     * validation run, but only this collection and the views derived from it
+     * that are evaluated afterwards select it. The collection this one was
+     * derived from doesn't.
+     * </p>
+     */
     public void addIssue(final Issue issue) {
-        issues.add(issue);
+        selection().set(index.add(issue));
+        selectedIssues = null;
     }
 
     public FluentIssueCollection forType(final Class<? extends EObject> cls) {
-        final FluentIssueCollection res = new FluentIssueCollection(resource,
-                messages);
-        for (final Issue i : issues) {
-            final URI uri = i.getUriToProblem();
-            final EObject eObject = resource.getEObject(uri.fragment());
-            if (cls.isInstance(eObject)) {
-                res.addIssue(i);
+        return new FluentIssueCollection(this, new Filter() {
+            @Override
+            BitSet select(final BitSet from) {
+                final BitSet res = index.forType(cls);
+                res.and(from);
+                if (res.isEmpty()) {
+                    addMessage("No issues found for type " + cls.getName());
+                }
+                return res;
             }
-        }
-        if (res.getIssueCount() == 0) {
-            res.addMessage("No issues found for type " + cls.getName());
-        }
-        return res;
+        });
     }
 
-    public FluentIssueCollection get(final int index) {
-        final FluentIssueCollection res = new FluentIssueCollection(resource,
-                messages);
-        if (index >= getIssueCount()) {
-            res.addMessage("trying to get element at " + index
-                    + ", but only have " + getIssueCount()
-                    + " elements -> creating empty collection!");
-        } else {
-            res.addIssue(getIssues().get(index));
-        }
-        return res;
+    public FluentIssueCollection get(final int position) {
+        return new FluentIssueCollection(this, new Filter() {
+            @Override
+            BitSet select(final BitSet from) {
+                final BitSet res = new BitSet();
+                int i = from.nextSetBit(0);
+                for (int n = 0; n < position && i >= 0; n++) {
+                    i = from.nextSetBit(i + 1);
+                }
+                if (i < 0) {
+                    addMessage("trying to get element at " + position
+                            + ", but only have " + from.cardinality()
+                            + " elements -> creating empty collection!");
+                } else {
+                    res.set(i);
+                }
+                return res;
+            }
+        });
     }
 
     public FluentIssueCollection inLine(final int lineNo) {
-        final FluentIssueCollection res = new FluentIssueCollection(resource,
-                messages);
-        int rc = 0;
-        for (final Issue i : issues) {
-            if (i.getLineNumber() == lineNo) {
-                res.addIssue(i);
-                rc++;
+        return new FluentIssueCollection(this, new Filter() {
+            @Override
+            BitSet select(final BitSet from) {
+                final BitSet res = copy(index.inLine(lineNo));
+                res.and(from);
+                if (res.isEmpty()) {
+                    addMessage("no issues found for line number " + lineNo);
+                }
+                return res;
             }
-        }
-        if (rc == 0) {
-            res.addMessage("no issues found for line number " + lineNo);
-        }
-        return res;
+        });
     }
 
     public FluentIssueCollection withStringFeatureValue(
             final String featureName, final String value) {
-        final FluentIssueCollection res = new FluentIssueCollection(resource,
-                messages);
-        for (final Issue i : issues) {
-            final EObject eObject = getEObject(i, resource);
-            final String v = eString(egetAndResolve(eObject, featureName,
-                    resource.getResourceSet()));
-            if (v.contains(value)) {
-                res.addIssue(i);
+        return new FluentIssueCollection(this, new Filter() {
+            @Override
+            BitSet select(final BitSet from) {
+                final BitSet res = new BitSet();
+                for (int i = from.nextSetBit(0); i >= 0; i = from
+                        .nextSetBit(i + 1)) {
+                    final EObject eObject = index.getEObject(i);
+                    final String v = eString(egetAndResolve(eObject,
+                            featureName, resource.getResourceSet()));
+                    if (v.contains(value)) {
+                        res.set(i);
+                    }
+                }
+                if (res.isEmpty()) {
+                    addMessage("no elements found with feature " + featureName
+                            + " valued '" + value + "'");
+                }
+                return res;
             }
-        }
-        if (res.getIssueCount() == 0) {
-            res.addMessage("no elements found with feature " + featureName
-                    + " valued '" + value + "'");
-        }
-        return res;
+        });
     }
 
     public FluentIssueCollection except(final Set<Issue> toBeRemoved) {
-        final FluentIssueCollection res = new FluentIssueCollection(resource,
-                messages);
-
-        if (toBeRemoved != null) {
-            for (final Issue i : issues) {
-                if (!toBeRemoved.contains(i)) {
-                    res.addIssue(i);
+        return new FluentIssueCollection(this, new Filter() {
+            @Override
+            BitSet select(final BitSet from) {
+                final BitSet res = new BitSet();
+                if (toBeRemoved != null) {
+                    for (int i = from.nextSetBit(0); i >= 0; i = from
+                            .nextSetBit(i + 1)) {
+                        if (!toBeRemoved.contains(index.get(i))) {
+                            res.set(i);
+                        }
+                    }
                 }
+                return res;
+            }
+        });
+    }
+
+    /**
+     * Filters the issues that are not asserted yet, i.e. not part of a
+     * collection passed to one of the <code>assertConstraints</code> methods
+     * of {@link XtextTestBase}.
+     */
+    public FluentIssueCollection unasserted() {
+        return new FluentIssueCollection(this, new Filter() {
+            @Override
+            BitSet select(final BitSet from) {
+                final BitSet res = index.unasserted();
+                res.and(from);
+                return res;
+            }
+        });
+    }
+
+    /**
+     * Marks the issues of the given collection as asserted. The collection is
+     * normally derived from this one, issues of other collections are matched
+     * by identity.
+     */
+    void markAsserted(final FluentIssueCollection coll) {
+        if (coll.index == index) {
+            index.markAsserted(coll.selection());
+            return;
+        }
+        for (final Issue issue : coll.getIssues()) {
+            final int i = index.indexOf(issue);
+            if (i >= 0) {
+                index.markAsserted(i);
             }
         }
-        return res;
+    }
+
+    void resetAsserted() {
+        index.clearAsserted();
     }
 
     public FluentIssueCollection errorsOnly() {
@@ -155,54 +243,63 @@ public class FluentIssueCollection implements Iterable<Issue> {
     }
 
     public FluentIssueCollection withSeverity(final Severity... severities) {
-        final FluentIssueCollection res = new FluentIssueCollection(resource,
-                messages);
-        for (final Issue i : issues) {
-            if (Iterables.contains(Arrays.asList(severities),
-                    i.getSeverity())) {
-                res.addIssue(i);
+        return new FluentIssueCollection(this, new Filter() {
+            @Override
+            BitSet select(final BitSet from) {
+                final BitSet res = new BitSet();
+                for (final Severity severity : severities) {
+                    res.or(index.withSeverity(severity));
+                }
+                res.and(from);
+                return res;
             }
-        }
-        return res;
+        });
     }
 
     public FluentIssueCollection named(final String expectedName) {
-        final FluentIssueCollection res = new FluentIssueCollection(resource,
-                messages);
-        for (final Issue i : issues) {
-            final EObject eObject = getEObject(i, resource);
-            final String name = name(eObject);
-            if (name.contains(expectedName)) {
-                res.addIssue(i);
+        return new FluentIssueCollection(this, new Filter() {
+            @Override
+            BitSet select(final BitSet from) {
+                final BitSet res = new BitSet();
+                for (int i = from.nextSetBit(0); i >= 0; i = from
+                        .nextSetBit(i + 1)) {
+                    final String name = name(index.getEObject(i));
+                    if (name.contains(expectedName)) {
+                        res.set(i);
+                    }
+                }
+                if (res.isEmpty()) {
+                    addMessage("no elements found with name " + expectedName);
+                }
+                return res;
             }
-        }
-        if (res.getIssueCount() == 0) {
-            res.addMessage("no elements found with name " + expectedName);
-        }
-        return res;
+        });
     }
 
     public FluentIssueCollection forElement(final Class<? extends EObject> cls,
             final String name) {
-        final FluentIssueCollection res = new FluentIssueCollection(resource,
-                messages);
-        for (final Issue i : issues) {
-            final EObject eObject = getEObject(i, resource);
-            if (cls.isInstance(eObject)) {
-                if (name.equalsIgnoreCase(name(eObject))) {
-                    res.addIssue(i);
+        return new FluentIssueCollection(this, new Filter() {
+            @Override
+            BitSet select(final BitSet from) {
+                final BitSet res = index.forType(cls);
+                res.and(from);
+                for (int i = res.nextSetBit(0); i >= 0; i = res
+                        .nextSetBit(i + 1)) {
+                    if (!name.equalsIgnoreCase(name(index.getEObject(i)))) {
+                        res.clear(i);
+                    }
+                }
+                if (res.isEmpty()) {
+                    addMessage("no elements of type " + cls.getName()
+                            + " named '" + name + "' found");
                 }
+                return res;
             }
-        }
-        if (res.getIssueCount() == 0) {
-            res.addMessage("no elements of type " + cls.getName() + " named '"
-                    + name + "' found");
-        }
-        return res;
+        });
     }
 
     private int getIssueCount() {
-        return issues.size();
+        return selection().cardinality();
     }
 
     public FluentIssueCollection under(final Class<? extends EObject> cls) {
@@ -211,35 +308,38 @@ public class FluentIssueCollection implements Iterable<Issue> {
 
     public FluentIssueCollection under(final Class<? extends EObject> cls,
             final String name) {
-        final FluentIssueCollection res = new FluentIssueCollection(resource,
-                messages);
-        for (final Issue i : issues) {
-            final URI uri = i.getUriToProblem();
-            final EObject eObject = resource.getEObject(uri.fragment());
-            final EObject p = ancestor(eObject, cls);
-            if (p != null) {
-                if (name != null) {
-                    if (name.equals(name(p))) {
-                        res.addIssue(i);
+        return new FluentIssueCollection(this, new Filter() {
+            @Override
+            BitSet select(final BitSet from) {
+                final BitSet res = new BitSet();
+                for (int i = from.nextSetBit(0); i >= 0; i = from
+                        .nextSetBit(i + 1)) {
+                    final EObject p = ancestor(index.getEObject(i), cls);
+                    if (p != null) {
+                        if (name != null) {
+                            if (name.equals(name(p))) {
+                                res.set(i);
+                            }
+                        } else {
+                            res.set(i);
+                        }
                     }
-                } else {
-                    res.addIssue(i);
                 }
+                if (res.isEmpty()) {
+                    addMessage("did not find issues under a " + cls.getName()
+                            + " named '" + name + "'");
+                }
+                return res;
             }
-        }
-        if (res.getIssueCount() == 0) {
-            res.addMessage("did not find issues under a " + cls.getName()
-                    + " named '" + name + "'");
-        }
-        return res;
+        });
     }
 
     public FluentIssueCollection sizeIs(final int i) {
-        if (issues.size() == i) {
+        if (getIssueCount() == i) {
             state = true;
         } else {
             addMessage(
-                    "failed size: expected " + i + ", actual " + issues.size());
+                    "failed size: expected " + i + ", actual " + getIssueCount());
             state = false;
         }
         return this;
@@ -247,7 +347,7 @@ public class FluentIssueCollection implements Iterable<Issue> {
 
     public FluentIssueCollection oneOfThemContains(final String substring) {
         boolean found = false;
-        for (final Issue i : issues) {
+        for (final Issue i : getIssues()) {
             if (i.getMessage().toLowerCase()
                     .contains(substring.toLowerCase())) {
                 found = true;
@@ -267,7 +367,7 @@ public class FluentIssueCollection implements Iterable<Issue> {
     public FluentIssueCollection nOfThemContain(final int n,
             final String substring) {
         int count = 0;
-        for (final Issue i : issues) {
+        for (final Issue i : getIssues()) {
             if (i.getMessage().toLowerCase()
                     .contains(substring.toLowerCase())) {
                 count++;
@@ -285,7 +385,7 @@ public class FluentIssueCollection implements Iterable<Issue> {
     }
 
     public FluentIssueCollection allOfThemContain(final String substring) {
-        for (final Issue i : issues) {
+        for (final Issue i : getIssues()) {
             if (!i.getMessage().toLowerCase()
                     .contains(substring.toLowerCase())) {
                 reportError();
@@ -299,12 +399,12 @@ public class FluentIssueCollection implements Iterable<Issue> {
     }
 
     public FluentIssueCollection theOneAndOnlyContains(final String substring) {
-        if (issues.size() > 1) {
+        if (getIssueCount() > 1) {
             reportError();
             addMessage(
                     "failed theOneAndOnlyContains: expecting a single issue (theSingleOneReads) but found: "
-                            + issues.size());
-            for (final Issue issue : issues) {
+                            + getIssueCount());
+            for (final Issue issue : getIssues()) {
                 LOGGER.debug("  line " + issue.getLineNumber() + ": "
                         + issue.getMessage() + " / " + issue.getUriToProblem());
             }
@@ -321,18 +421,18 @@ public class FluentIssueCollection implements Iterable<Issue> {
      * @return A new instance containing the issues with the given code.
      */
     public FluentIssueCollection withCode(final String code) {
-        final FluentIssueCollection res = new FluentIssueCollection(resource,
-                messages);
-        for (final Issue i : issues) {
-            if (i.getCode().equals(code)) {
-                res.addIssue(i);
+        return new FluentIssueCollection(this, new Filter() {
+            @Override
+            BitSet select(final BitSet from) {
+                final BitSet res = copy(index.withCode(code));
+                res.and(from);
+                if (res.isEmpty()) {
+                    addMessage("failed withCode: no issues found with code '"
+                            + code + "'");
+                }
+                return res;
             }
-        }
-        if (res.getIssueCount() == 0) {
-            res.addMessage("failed withCode: no issues found with code '" + code
-                    + "'");
-        }
-        return res;
+        });
     }
 
     public boolean evaluate() {
@@ -367,8 +467,35 @@ public class FluentIssueCollection implements Iterable<Issue> {
         stateIsSet = true;
     }
 
+    /**
+     * Returns the issues of this collection in the order they were reported.
+     * The list can't be modified and is not updated by later calls of
+     * {@link #addIssue(Issue)}; call this again to see them.
+     */
     public List<Issue> getIssues() {
-        return issues;
+        if (selectedIssues == null) {
+            final BitSet bits = selection();
+            final List<Issue> list = new ArrayList<Issue>(bits.cardinality());
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits
+                    .nextSetBit(i + 1)) {
+                list.add(index.get(i));
+            }
+            selectedIssues = Collections.unmodifiableList(list);
+        }
+        return selectedIssues;
+    }
+
+    /**
+     * the timings and allocations of the
+     * {@link XtextTestBase#testFile(String, String...)} call that produced the
+     * issues, or null
+     */
+    public PhaseMetrics getPhaseMetrics() {
+        return index.getPhaseMetrics();
+    }
+
+    void setPhaseMetrics(final PhaseMetrics metrics) {
+        index.setPhaseMetrics(metrics);
     }
 
     public Resource getResource() {
@@ -376,10 +503,13 @@ public class FluentIssueCollection implements Iterable<Issue> {
     }
 
     public List<String> getMessages() {
+        // messages of the filters are added when they are evaluated
+        selection();
         return messages;
     }
 
     public String getMessageString() {
+        selection();
         final StringBuffer sb = new StringBuffer();
         for (final String m : messages) {
             sb.append("\n  - " + m);
@@ -389,38 +519,62 @@ public class FluentIssueCollection implements Iterable<Issue> {
 
     public void dumpIssues() {
         LOGGER.debug("--- Issues ---");
-        for (final Issue i : issues) {
-            dumpIssue(resource, i);
+        final BitSet bits = selection();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            LOGGER.debug(getIssueSummary(i));
         }
     }
 
     public String getSummary() {
-        if (issues.size() == 0) {
+        if (getIssueCount() == 0) {
             return "No issues";
         }
 
         final StringBuffer sb = new StringBuffer();
         sb.append("Issues:");
-        for (final Issue i : issues) {
-            sb.append("\n  - " + getIssueSummary(resource, i));
+        final BitSet bits = selection();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            sb.append("\n  - " + getIssueSummary(i));
         }
         return sb.toString();
     }
 
+    /**
+     * the element of the resource with the given URI fragment, resolved at
+     * most once for all collections of the same validation run
+     */
+    EObject getEObject(final String fragment) {
+        return index.getEObject(fragment);
+    }
+
+    private String getIssueSummary(final int i) {
+        final Issue issue = index.get(i);
+        if (!isValidFragment(issue)) {
+            return getIssueSummary(issue, null);
+        }
+        return getIssueSummary(issue, index.getEObject(i));
+    }
+
     public static void dumpIssue(final Resource resource, final Issue issue) {
         LOGGER.debug(getIssueSummary(resource, issue));
     }
 
     public static String getIssueSummary(final Resource resource,
             final Issue issue) {
-        boolean validFragment = true;
-        if ("//".equals(issue.getUriToProblem().fragment())) {
-            validFragment = false;
+        if (!isValidFragment(issue)) {
+            return getIssueSummary(issue, null);
         }
+        return getIssueSummary(issue,
+                resource.getEObject(issue.getUriToProblem().fragment()));
+    }
+
+    private static boolean isValidFragment(final Issue issue) {
+        return !"//".equals(issue.getUriToProblem().fragment());
+    }
 
-        if (validFragment) {
-            final EObject eObject = resource
-                    .getEObject(issue.getUriToProblem().fragment());
+    private static String getIssueSummary(final Issue issue,
+            final EObject eObject) {
+        if (eObject != null) {
             final EClass cls = eObject.eClass();
             return issue.getSeverity() + " at " + cls.getName() + "( line "
                     + issue.getLineNumber() + "): " + issue.getMessage();
@@ -432,7 +586,19 @@ public class FluentIssueCollection implements Iterable<Issue> {
 
     @Override
     public Iterator<Issue> iterator() {
-        return issues.iterator();
+        return getIssues().iterator();
+    }
+
+    private static BitSet copy(final BitSet bits) {
+        return (BitSet) bits.clone();
+    }
+
+    /**
+     * selects a subset of the positions of the source collection
+     */
+    private abstract static class Filter {
+
+        abstract BitSet select(BitSet from);
     }
 
 }
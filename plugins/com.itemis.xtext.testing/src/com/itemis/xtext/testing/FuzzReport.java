@@ -0,0 +1,153 @@
+package com.itemis.xtext.testing;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ * The outcome of a {@link ParserFuzzer} run: how many mutated inputs were
+ * parsed and the inputs that were too slow or made the parser throw.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class FuzzReport {
+
+    public enum Kind {
+        /** the parse took longer than the limit, or didn't end at all */
+        SLOW,
+        /** the parser threw an exception or error */
+        EXCEPTION
+    }
+
+    /**
+     * An input the parser failed on, with its minimized reproducer.
+     */
+    public static class Finding {
+
+        private final Kind kind;
+        private final String source;
+        private final String input;
+        private final String reproducer;
+        private final long millis;
+        private final Throwable error;
+        private final File file;
+
+        Finding(final Kind kind, final String source, final String input,
+                final String reproducer, final long millis,
+                final Throwable error, final File file) {
+            this.kind = kind;
+            this.source = source;
+            this.input = input;
+            this.reproducer = reproducer;
+            this.millis = millis;
+            this.error = error;
+            this.file = file;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * the corpus file the input was mutated from
+         */
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * the mutated input as it was found
+         */
+        public String getInput() {
+            return input;
+        }
+
+        /**
+         * the smallest part of the input found to fail the same way
+         */
+        public String getReproducer() {
+            return reproducer;
+        }
+
+        /**
+         * the parse time of the input, at least the limit if it timed out
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * the exception thrown by the parser, or null
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * the file the reproducer was saved to, or null
+         */
+        public File getFile() {
+            return file;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " from " + source + (kind == Kind.SLOW
+                    ? " (" + millis + "ms)" : " (" + error + ")")
+                    + ", reproducer of " + reproducer.length() + " chars"
+                    + (file == null ? "" : " in " + file.getPath());
+        }
+    }
+
+    private final List<Finding> findings = new ArrayList<Finding>();
+    private int parsedInputs;
+    private String stopReason;
+
+    void add(final Finding finding) {
+        findings.add(finding);
+    }
+
+    void parsed() {
+        parsedInputs++;
+    }
+
+    void stop(final String reason) {
+        stopReason = reason;
+    }
+
+    public List<Finding> getFindings() {
+        return Collections.unmodifiableList(findings);
+    }
+
+    public int getParsedInputs() {
+        return parsedInputs;
+    }
+
+    /**
+     * why the run stopped before all mutations were parsed, or null
+     */
+    public String getStopReason() {
+        return stopReason;
+    }
+
+    public boolean isClean() {
+        return findings.isEmpty() && stopReason == null;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("parsed " + parsedInputs
+                + " fuzzed inputs, " + findings.size() + " failed");
+        if (stopReason != null) {
+            sb.append(", stopped early: ").append(stopReason);
+        }
+        for (final Finding finding : findings) {
+            sb.append("\n  ").append(finding);
+        }
+        return sb.toString();
+    }
+}
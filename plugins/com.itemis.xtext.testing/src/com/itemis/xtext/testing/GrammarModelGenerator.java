@@ -0,0 +1,729 @@
+package com.itemis.xtext.testing;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.xtext.AbstractElement;
+import org.eclipse.xtext.AbstractRule;
+import org.eclipse.xtext.Action;
+import org.eclipse.xtext.Alternatives;
+import org.eclipse.xtext.Assignment;
+import org.eclipse.xtext.CharacterRange;
+import org.eclipse.xtext.CompoundElement;
+import org.eclipse.xtext.CrossReference;
+import org.eclipse.xtext.EOF;
+import org.eclipse.xtext.EcoreUtil2;
+import org.eclipse.xtext.EnumLiteralDeclaration;
+import org.eclipse.xtext.EnumRule;
+import org.eclipse.xtext.GrammarUtil;
+import org.eclipse.xtext.Group;
+import org.eclipse.xtext.IGrammarAccess;
+import org.eclipse.xtext.Keyword;
+import org.eclipse.xtext.NegatedToken;
+import org.eclipse.xtext.ParserRule;
+import org.eclipse.xtext.RuleCall;
+import org.eclipse.xtext.TerminalRule;
+import org.eclipse.xtext.UntilToken;
+import org.eclipse.xtext.Wildcard;
+
+/**
+ * <p>
+ * Generates models of a language by walking the rules of its grammar, e.g.
+ * large inputs for stress tests and benchmarks of the parser and serializer.
+ * The output only depends on the seed and the size, and is written as it is
+ * generated, so models of many megabytes don't have to be kept in memory.
+ * </p>
+ *
+ * <p>
+ * The last repetition of the entry rule (e.g.
+ * <code>elements+=Element*</code>) is repeated until the target size is
+ * reached; everything else is chosen randomly, limited to a nesting
+ * depth computed from the minimal depth of each rule. Identifiers are fresh
+ * names that are no keywords, the values of other terminals are generated
+ * from their terminal rules. A name assigned to the <code>name</code> feature
+ * is remembered for the type of its rule, and cross references to that type
+ * use one of the names generated before.
+ * </p>
+ *
+ * <p>
+ * The models are syntactically valid for most grammars; semantic constraints,
+ * references to elements not generated by the grammar (e.g. JVM types) and
+ * terminals needing special values can be handled by
+ * {@link #setTerminalValues(TerminalValues)} and
+ * {@link #setCrossReferenceNames(CrossReferenceNames)}.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class GrammarModelGenerator implements ModelGenerator {
+
+    /**
+     * Provides values for terminal rules.
+     */
+    public interface TerminalValues {
+
+        /**
+         * returns the text of a token of the rule, or null to generate it
+         * from the rule
+         */
+        String getValue(TerminalRule rule, Random random);
+    }
+
+    /**
+     * Provides the names used in cross references.
+     */
+    public interface CrossReferenceNames {
+
+        /**
+         * Returns the text of a reference to an element of the given type, or
+         * null to use a name generated for the type before.
+         *
+         * @param generated
+         *            the names generated for the type so far, may be empty
+         */
+        String getName(EClassifier type, List<String> generated,
+                Random random);
+    }
+
+    private static final int INFINITE = Integer.MAX_VALUE / 2;
+    private static final int MAX_REPEAT = 3;
+    private static final int MAX_NAMES = 1000;
+
+    private final ParserRule entryRule;
+    /* the repetition of the entry rule that makes the model grow */
+    private final AbstractElement growing;
+    private final Set<String> keywords;
+    private final long seed;
+    private int extraDepth = 8;
+    private TerminalValues terminalValues;
+    private CrossReferenceNames crossReferenceNames;
+
+    private final Map<AbstractRule, Integer> minDepths = new HashMap<AbstractRule, Integer>();
+    private final Map<AbstractRule, Boolean> identifierRules = new HashMap<AbstractRule, Boolean>();
+
+    /* state of one generation */
+    private Random random;
+    private Appendable out;
+    private long written;
+    private long targetSize;
+    private boolean tokenWritten;
+    /* inside a rule without hidden tokens, which needs no spaces */
+    private boolean glued;
+    private int nameCounter;
+    private final Map<EClassifier, List<String>> names = new HashMap<EClassifier, List<String>>();
+    private final Map<EClassifier, List<List<String>>> compatibleNames = new HashMap<EClassifier, List<List<String>>>();
+
+    /**
+     * a generator for the first rule of the grammar
+     */
+    public GrammarModelGenerator(final IGrammarAccess grammar,
+            final long seed) {
+        this(grammar, (ParserRule) grammar.getGrammar().getRules().get(0),
+                seed);
+    }
+
+    public GrammarModelGenerator(final IGrammarAccess grammar,
+            final String entryRuleName, final long seed) {
+        this(grammar, (ParserRule) XtextUtils.rule(grammar.getGrammar(),
+                entryRuleName), seed);
+    }
+
+    private GrammarModelGenerator(final IGrammarAccess grammar,
+            final ParserRule entryRule, final long seed) {
+        if (entryRule == null) {
+            throw new IllegalArgumentException("no such parser rule");
+        }
+        this.entryRule = entryRule;
+        this.seed = seed;
+        growing = lastRepetition(entryRule);
+        if (growing == null) {
+            throw new IllegalArgumentException("the rule "
+                    + entryRule.getName() + " contains no repetition");
+        }
+        keywords = GrammarUtil.getAllKeywords(grammar.getGrammar());
+        computeMinDepths(grammar);
+    }
+
+    /**
+     * How much deeper than necessary rules may be nested, 8 by default.
+     * Deeper models contain more of the optional parts of the grammar.
+     */
+    public GrammarModelGenerator setExtraDepth(final int extraDepth) {
+        this.extraDepth = extraDepth;
+        return this;
+    }
+
+    public GrammarModelGenerator setTerminalValues(
+            final TerminalValues terminalValues) {
+        this.terminalValues = terminalValues;
+        return this;
+    }
+
+    public GrammarModelGenerator setCrossReferenceNames(
+            final CrossReferenceNames crossReferenceNames) {
+        this.crossReferenceNames = crossReferenceNames;
+        return this;
+    }
+
+    /**
+     * generates a model of at least the given number of characters
+     */
+    @Override
+    public CharSequence generate(final int size) {
+        final StringBuilder sb = new StringBuilder(size + 1024);
+        try {
+            generate(sb, size);
+        } catch (final IOException e) {
+            // can't happen for a StringBuilder
+            throw new RuntimeException(e);
+        }
+        return sb;
+    }
+
+    /**
+     * Writes a model of at least the given number of characters. The output
+     * is not buffered, use a buffered writer for files.
+     */
+    public void generate(final Appendable out, final long size)
+            throws IOException {
+        random = new Random(seed);
+        this.out = out;
+        written = 0;
+        targetSize = size;
+        tokenWritten = false;
+        glued = false;
+        nameCounter = 0;
+        names.clear();
+        compatibleNames.clear();
+        try {
+            generateRule(entryRule, 0);
+            newline();
+        } finally {
+            this.out = null;
+        }
+    }
+
+    private void generateRule(final AbstractRule rule, final int depth)
+            throws IOException {
+        if (rule instanceof TerminalRule) {
+            token(terminalValue((TerminalRule) rule));
+        } else if (rule instanceof EnumRule) {
+            final List<EnumLiteralDeclaration> literals = new ArrayList<EnumLiteralDeclaration>();
+            collectLiterals(rule.getAlternatives(), literals);
+            final EnumLiteralDeclaration literal = literals
+                    .get(random.nextInt(literals.size()));
+            token(literal.getLiteral() != null
+                    ? literal.getLiteral().getValue()
+                    : literal.getEnumLiteral().getName());
+        } else if (isIdentifierRule(rule)) {
+            token(nextName());
+        } else if (((ParserRule) rule).isDefinesHiddenTokens()
+                && ((ParserRule) rule).getHiddenTokens().isEmpty()) {
+            // e.g. numbers made of several tokens, written as one
+            final Appendable outer = out;
+            final long outerWritten = written;
+            final boolean outerTokenWritten = tokenWritten;
+            final boolean outerGlued = glued;
+            final StringBuilder sb = new StringBuilder();
+            out = sb;
+            glued = true;
+            try {
+                generate(rule.getAlternatives(), depth + 1, rule);
+            } finally {
+                out = outer;
+                written = outerWritten;
+                tokenWritten = outerTokenWritten;
+                glued = outerGlued;
+            }
+            token(sb.toString());
+        } else {
+            generate(rule.getAlternatives(), depth + 1, rule);
+        }
+    }
+
+    /**
+     * generates the element with its cardinality
+     */
+    private void generate(final AbstractElement element, final int depth,
+            final AbstractRule rule) throws IOException {
+        final int remaining = maxDepth() - depth;
+        final boolean fits = minDepth(element) <= remaining;
+        int count;
+        if (GrammarUtil.isOneOrMoreCardinality(element)) {
+            count = 1;
+        } else if (GrammarUtil.isOptionalCardinality(element)) {
+            count = 0;
+        } else {
+            generateOnce(element, depth, rule);
+            return;
+        }
+        if (element == growing) {
+            // the top level repetition makes the model grow to its size,
+            // once at least, as a + requires and even if the text before it
+            // already has the size
+            do {
+                generateOnce(element, depth, rule);
+            } while (written < targetSize);
+            return;
+        }
+        if (fits && random.nextInt(maxDepth() + 1) < remaining) {
+            count += GrammarUtil.isMultipleCardinality(element)
+                    ? 1 + random.nextInt(MAX_REPEAT) : 1;
+        }
+        for (int i = 0; i < count; i++) {
+            generateOnce(element, depth, rule);
+        }
+    }
+
+    /**
+     * the last element of the rule repeated with <code>*</code> or
+     * <code>+</code>, so that everything before it is written once
+     */
+    private static AbstractElement lastRepetition(final ParserRule rule) {
+        AbstractElement last = null;
+        final Iterator<EObject> it = EcoreUtil2
+                .eAll(rule.getAlternatives());
+        while (it.hasNext()) {
+            final EObject element = it.next();
+            if (element instanceof AbstractElement && GrammarUtil
+                    .isMultipleCardinality((AbstractElement) element)) {
+                last = (AbstractElement) element;
+            }
+        }
+        return last;
+    }
+
+    private void generateOnce(final AbstractElement element, final int depth,
+            final AbstractRule rule) throws IOException {
+        if (element instanceof Keyword) {
+            token(((Keyword) element).getValue());
+            if (isLineEnd(((Keyword) element).getValue())) {
+                newline();
+            }
+        } else if (element instanceof RuleCall) {
+            generateRule(((RuleCall) element).getRule(), depth);
+        } else if (element instanceof Assignment) {
+            final Assignment assignment = (Assignment) element;
+            if ("name".equals(assignment.getFeature())
+                    && isIdentifier(assignment.getTerminal())) {
+                final String name = nextName();
+                remember(rule, name);
+                token(name);
+            } else {
+                generate(assignment.getTerminal(), depth, rule);
+            }
+        } else if (element instanceof CrossReference) {
+            final CrossReference reference = (CrossReference) element;
+            final String name = referenceName(
+                    reference.getType().getClassifier());
+            if (name != null && isIdentifier(reference.getTerminal())) {
+                token(name);
+            } else {
+                generate(reference.getTerminal(), depth, rule);
+            }
+        } else if (element instanceof Alternatives) {
+            final AbstractElement choice = choose(
+                    ((Alternatives) element).getElements(),
+                    maxDepth() - depth);
+            generate(choice, depth, rule);
+        } else if (element instanceof Group
+                && ((Group) element).getGuardCondition() != null) {
+            // parameterized rules are not supported, guarded parts are left
+            // out
+        } else if (element instanceof CompoundElement) {
+            // groups and unordered groups
+            for (final AbstractElement e : ((CompoundElement) element)
+                    .getElements()) {
+                generate(e, depth, rule);
+            }
+        } else if (!(element instanceof Action)) {
+            throw new IllegalStateException(
+                    "unexpected element " + element.eClass().getName());
+        }
+    }
+
+    /**
+     * chooses randomly among the alternatives that fit into the depth, or the
+     * shallowest one
+     */
+    private AbstractElement choose(final List<AbstractElement> alternatives,
+            final int remaining) {
+        final List<AbstractElement> fitting = new ArrayList<AbstractElement>();
+        AbstractElement shallowest = alternatives.get(0);
+        for (final AbstractElement e : alternatives) {
+            if (minDepth(e) <= remaining) {
+                fitting.add(e);
+            }
+            if (minDepth(e) < minDepth(shallowest)) {
+                shallowest = e;
+            }
+        }
+        if (fitting.isEmpty()) {
+            return shallowest;
+        }
+        return fitting.get(random.nextInt(fitting.size()));
+    }
+
+    private String referenceName(final EClassifier type) {
+        final List<String> generated = namesOf(type);
+        if (crossReferenceNames != null) {
+            final String name = crossReferenceNames.getName(type, generated,
+                    random);
+            if (name != null) {
+                return name;
+            }
+        }
+        if (generated.isEmpty()) {
+            return null;
+        }
+        return generated.get(random.nextInt(generated.size()));
+    }
+
+    /**
+     * the names generated for the type or its subtypes
+     */
+    private List<String> namesOf(final EClassifier type) {
+        List<List<String>> lists = compatibleNames.get(type);
+        if (lists == null) {
+            lists = new ArrayList<List<String>>();
+            for (final Map.Entry<EClassifier, List<String>> entry : names
+                    .entrySet()) {
+                if (entry.getKey() == type || type instanceof EClass
+                        && entry.getKey() instanceof EClass
+                        && ((EClass) type)
+                                .isSuperTypeOf((EClass) entry.getKey())) {
+                    lists.add(entry.getValue());
+                }
+            }
+            compatibleNames.put(type, lists);
+        }
+        return new ConcatenatedList(lists);
+    }
+
+    /**
+     * remembers the name for references, keeps a random sample of
+     * {@value #MAX_NAMES} names per type
+     */
+    private void remember(final AbstractRule rule, final String name) {
+        final EClassifier type = rule.getType().getClassifier();
+        List<String> list = names.get(type);
+        if (list == null) {
+            list = new ArrayList<String>();
+            names.put(type, list);
+            compatibleNames.clear();
+        }
+        if (list.size() < MAX_NAMES) {
+            list.add(name);
+        } else {
+            list.set(random.nextInt(MAX_NAMES), name);
+        }
+    }
+
+    private String nextName() {
+        String name;
+        do {
+            name = "n" + nameCounter++;
+        } while (keywords.contains(name));
+        return name;
+    }
+
+    private String terminalValue(final TerminalRule rule) {
+        if (terminalValues != null) {
+            final String value = terminalValues.getValue(rule, random);
+            if (value != null) {
+                return value;
+            }
+        }
+        if (isIdentifierRule(rule)) {
+            return nextName();
+        }
+        if ("STRING".equals(rule.getName())) {
+            return "\"s" + random.nextInt(1000) + "\"";
+        }
+        final StringBuilder sb = new StringBuilder();
+        terminal(rule.getAlternatives(), sb);
+        return sb.toString();
+    }
+
+    /**
+     * generates the text matched by an element of a terminal rule, choosing
+     * the shortest options
+     */
+    private void terminal(final AbstractElement element,
+            final StringBuilder sb) {
+        int count = GrammarUtil.isOptionalCardinality(element) ? 0 : 1;
+        if (GrammarUtil.isMultipleCardinality(element) && count == 1) {
+            count += random.nextInt(MAX_REPEAT);
+        }
+        for (int i = 0; i < count; i++) {
+            if (element instanceof Keyword) {
+                sb.append(((Keyword) element).getValue());
+            } else if (element instanceof CharacterRange) {
+                final char left = ((CharacterRange) element).getLeft()
+                        .getValue().charAt(0);
+                final char right = ((CharacterRange) element).getRight()
+                        .getValue().charAt(0);
+                sb.append((char) (left + random.nextInt(right - left + 1)));
+            } else if (element instanceof RuleCall) {
+                terminal(((RuleCall) element).getRule().getAlternatives(), sb);
+            } else if (element instanceof Alternatives) {
+                final List<AbstractElement> elements = ((Alternatives) element)
+                        .getElements();
+                terminal(elements.get(random.nextInt(elements.size())), sb);
+            } else if (element instanceof CompoundElement) {
+                for (final AbstractElement e : ((CompoundElement) element)
+                        .getElements()) {
+                    terminal(e, sb);
+                }
+            } else if (element instanceof NegatedToken) {
+                sb.append(notMatching(((NegatedToken) element).getTerminal()));
+            } else if (element instanceof UntilToken) {
+                terminal(((UntilToken) element).getTerminal(), sb);
+            } else if (element instanceof Wildcard) {
+                sb.append('x');
+            } else if (!(element instanceof EOF)) {
+                throw new IllegalStateException(
+                        "unexpected element " + element.eClass().getName());
+            }
+        }
+    }
+
+    /**
+     * a letter or digit not matched by the negated element
+     */
+    private static char notMatching(final AbstractElement negated) {
+        final List<EObject> excluded = new ArrayList<EObject>();
+        excluded.add(negated);
+        for (final Iterator<EObject> it = negated.eAllContents(); it
+                .hasNext();) {
+            excluded.add(it.next());
+        }
+        for (final char c : "xa0_".toCharArray()) {
+            boolean matches = false;
+            for (final EObject o : excluded) {
+                if (o instanceof CharacterRange) {
+                    final CharacterRange range = (CharacterRange) o;
+                    matches |= range.getLeft().getValue().charAt(0) <= c
+                            && c <= range.getRight().getValue().charAt(0);
+                } else if (o instanceof Keyword
+                        && !(o.eContainer() instanceof CharacterRange)) {
+                    matches |= ((Keyword) o).getValue()
+                            .equals(String.valueOf(c));
+                }
+            }
+            if (!matches) {
+                return c;
+            }
+        }
+        return 'x';
+    }
+
+    private void token(final String text) throws IOException {
+        if (tokenWritten && !glued) {
+            write(" ");
+        }
+        write(text);
+        tokenWritten = true;
+    }
+
+    private void newline() throws IOException {
+        if (!glued) {
+            write("\n");
+            tokenWritten = false;
+        }
+    }
+
+    private void write(final String text) throws IOException {
+        out.append(text);
+        written += text.length();
+    }
+
+    private static boolean isLineEnd(final String keyword) {
+        return "{".equals(keyword) || "}".equals(keyword)
+                || ";".equals(keyword);
+    }
+
+    private static void collectLiterals(final AbstractElement element,
+            final List<EnumLiteralDeclaration> literals) {
+        if (element instanceof EnumLiteralDeclaration) {
+            literals.add((EnumLiteralDeclaration) element);
+        } else if (element instanceof Alternatives) {
+            for (final AbstractElement e : ((Alternatives) element)
+                    .getElements()) {
+                collectLiterals(e, literals);
+            }
+        }
+    }
+
+    private boolean isIdentifier(final AbstractElement terminal) {
+        return terminal instanceof RuleCall
+                && isIdentifierRule(((RuleCall) terminal).getRule());
+    }
+
+    /**
+     * True for the ID terminal and data type rules accepting a single ID,
+     * such as qualified names; generated as fresh names.
+     */
+    private boolean isIdentifierRule(final AbstractRule rule) {
+        final Boolean known = identifierRules.get(rule);
+        if (known != null) {
+            return known;
+        }
+        // assume no for recursive rules
+        identifierRules.put(rule, false);
+        boolean result = false;
+        if (rule instanceof TerminalRule) {
+            result = "ID".equals(rule.getName());
+        } else if (rule instanceof ParserRule
+                && GrammarUtil.isDatatypeRule((ParserRule) rule)) {
+            result = acceptsIdentifier(rule.getAlternatives());
+        }
+        identifierRules.put(rule, result);
+        return result;
+    }
+
+    private boolean acceptsIdentifier(final AbstractElement element) {
+        if (element instanceof RuleCall) {
+            return isIdentifierRule(((RuleCall) element).getRule());
+        }
+        if (element instanceof Alternatives) {
+            for (final AbstractElement e : ((Alternatives) element)
+                    .getElements()) {
+                if (!GrammarUtil.isOptionalCardinality(e)
+                        && acceptsIdentifier(e)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (element instanceof Group) {
+            // the first element takes the identifier, the rest is optional
+            final List<AbstractElement> elements = ((Group) element)
+                    .getElements();
+            for (int i = 1; i < elements.size(); i++) {
+                if (!GrammarUtil.isOptionalCardinality(elements.get(i))) {
+                    return false;
+                }
+            }
+            return !GrammarUtil.isOptionalCardinality(elements.get(0))
+                    && acceptsIdentifier(elements.get(0));
+        }
+        return false;
+    }
+
+    private int maxDepth() {
+        return minDepth(entryRule) + extraDepth;
+    }
+
+    /**
+     * the minimal depth of parser rule calls needed to generate the rule,
+     * computed as a fixpoint to handle recursion
+     */
+    private void computeMinDepths(final IGrammarAccess grammar) {
+        final List<AbstractRule> rules = GrammarUtil
+                .allRules(grammar.getGrammar());
+        for (final AbstractRule rule : rules) {
+            minDepths.put(rule,
+                    rule instanceof ParserRule ? INFINITE : 0);
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (final AbstractRule rule : rules) {
+                if (!(rule instanceof ParserRule)) {
+                    continue;
+                }
+                final int depth = Math.min(INFINITE,
+                        1 + minDepth(rule.getAlternatives()));
+                if (depth < minDepths.get(rule)) {
+                    minDepths.put(rule, depth);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private int minDepth(final AbstractRule rule) {
+        final Integer depth = minDepths.get(rule);
+        return depth == null ? 0 : depth;
+    }
+
+    private int minDepth(final AbstractElement element) {
+        if (GrammarUtil.isOptionalCardinality(element)) {
+            return 0;
+        }
+        if (element instanceof RuleCall) {
+            return minDepth(((RuleCall) element).getRule());
+        }
+        if (element instanceof Assignment) {
+            return minDepth(((Assignment) element).getTerminal());
+        }
+        if (element instanceof CrossReference) {
+            return minDepth(((CrossReference) element).getTerminal());
+        }
+        if (element instanceof Alternatives) {
+            int min = INFINITE;
+            for (final AbstractElement e : ((Alternatives) element)
+                    .getElements()) {
+                min = Math.min(min, minDepth(e));
+            }
+            return min;
+        }
+        if (element instanceof Group
+                && ((Group) element).getGuardCondition() != null) {
+            return 0;
+        }
+        if (element instanceof CompoundElement) {
+            int max = 0;
+            for (final AbstractElement e : ((CompoundElement) element)
+                    .getElements()) {
+                max = Math.max(max, minDepth(e));
+            }
+            return max;
+        }
+        return 0;
+    }
+
+    /**
+     * a read-only view of several lists as one
+     */
+    private static class ConcatenatedList extends AbstractList<String> {
+
+        private final List<List<String>> lists;
+
+        ConcatenatedList(final List<List<String>> lists) {
+            this.lists = lists;
+        }
+
+        @Override
+        public String get(int index) {
+            for (final List<String> list : lists) {
+                if (index < list.size()) {
+                    return list.get(index);
+                }
+                index -= list.size();
+            }
+            throw new IndexOutOfBoundsException();
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (final List<String> list : lists) {
+                size += list.size();
+            }
+            return size;
+        }
+    }
+}
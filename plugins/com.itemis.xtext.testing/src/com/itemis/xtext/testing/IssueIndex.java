@@ -0,0 +1,257 @@
+package com.itemis.xtext.testing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.xtext.diagnostics.Severity;
+import org.eclipse.xtext.validation.Issue;
+
+/**
+ * <p>
+ * The issues of one validation run, shared by a {@link FluentIssueCollection}
+ * and all collections derived from it. Issues are addressed by their position;
+ * a collection is a {@link BitSet} of positions.
+ * </p>
+ *
+ * <p>
+ * The indexes by line, severity, code and EClass of the issue's element are
+ * built on first use and rebuilt if issues are added. The element of an issue
+ * is resolved from its URI fragment at most once, and so is every fragment.
+ * </p>
+ *
+ * <p>
+ * The index also records which issues have been asserted by a test.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+class IssueIndex {
+
+    private static final BitSet NONE = new BitSet();
+
+    private final Resource resource;
+    private final List<Issue> issues;
+
+    private Map<Integer, BitSet> byLine;
+    private Map<Severity, BitSet> bySeverity;
+    private Map<String, BitSet> byCode;
+    private Map<EClass, BitSet> byEClass;
+    /* one element per EClass, to check instanceof for all of them */
+    private Map<EClass, EObject> eClassSamples;
+
+    /* the elements of the issues, valid where resolved is set */
+    private EObject[] eObjects = new EObject[0];
+    private final BitSet resolved = new BitSet();
+    /* also remembers fragments that don't resolve, as null */
+    private final Map<String, EObject> byFragment = new HashMap<String, EObject>();
+
+    private final BitSet asserted = new BitSet();
+
+    private PhaseMetrics metrics;
+    /* positions of the issues, to map issues of other collections */
+    private Map<Issue, Integer> positions;
+
+    IssueIndex(final Resource resource, final List<Issue> issues) {
+        this.resource = resource;
+        this.issues = new ArrayList<Issue>(issues);
+    }
+
+    Resource getResource() {
+        return resource;
+    }
+
+    PhaseMetrics getPhaseMetrics() {
+        return metrics;
+    }
+
+    void setPhaseMetrics(final PhaseMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    int size() {
+        return issues.size();
+    }
+
+    Issue get(final int i) {
+        return issues.get(i);
+    }
+
+    /**
+     * appends an issue and returns its position
+     */
+    int add(final Issue issue) {
+        issues.add(issue);
+        byLine = null;
+        bySeverity = null;
+        byCode = null;
+        byEClass = null;
+        eClassSamples = null;
+        positions = null;
+        return issues.size() - 1;
+    }
+
+    /**
+     * the position of the given issue instance, or -1
+     */
+    int indexOf(final Issue issue) {
+        if (positions == null) {
+            positions = new IdentityHashMap<Issue, Integer>();
+            for (int i = 0; i < issues.size(); i++) {
+                positions.put(issues.get(i), i);
+            }
+        }
+        final Integer i = positions.get(issue);
+        return i == null ? -1 : i;
+    }
+
+    void markAsserted(final BitSet bits) {
+        asserted.or(bits);
+    }
+
+    void markAsserted(final int i) {
+        asserted.set(i);
+    }
+
+    void clearAsserted() {
+        asserted.clear();
+    }
+
+    /**
+     * the positions of the issues not asserted yet, to be modified by the
+     * caller
+     */
+    BitSet unasserted() {
+        final BitSet result = all();
+        result.andNot(asserted);
+        return result;
+    }
+
+    /**
+     * all positions, to be modified by the caller
+     */
+    BitSet all() {
+        final BitSet result = new BitSet(issues.size());
+        result.set(0, issues.size());
+        return result;
+    }
+
+    /**
+     * the positions of the issues in the given line, must not be modified
+     */
+    BitSet inLine(final int line) {
+        if (byLine == null) {
+            byLine = new HashMap<Integer, BitSet>();
+            for (int i = 0; i < issues.size(); i++) {
+                put(byLine, issues.get(i).getLineNumber(), i);
+            }
+        }
+        return lookup(byLine, line);
+    }
+
+    /**
+     * the positions of the issues with the given severity, must not be
+     * modified
+     */
+    BitSet withSeverity(final Severity severity) {
+        if (bySeverity == null) {
+            bySeverity = new HashMap<Severity, BitSet>();
+            for (int i = 0; i < issues.size(); i++) {
+                put(bySeverity, issues.get(i).getSeverity(), i);
+            }
+        }
+        return lookup(bySeverity, severity);
+    }
+
+    /**
+     * the positions of the issues with the given code, must not be modified
+     */
+    BitSet withCode(final String code) {
+        if (byCode == null) {
+            byCode = new HashMap<String, BitSet>();
+            for (int i = 0; i < issues.size(); i++) {
+                put(byCode, issues.get(i).getCode(), i);
+            }
+        }
+        return lookup(byCode, code);
+    }
+
+    /**
+     * the positions of the issues whose element is an instance of the given
+     * type, to be modified by the caller
+     */
+    BitSet forType(final Class<?> cls) {
+        if (byEClass == null) {
+            byEClass = new HashMap<EClass, BitSet>();
+            eClassSamples = new HashMap<EClass, EObject>();
+            for (int i = 0; i < issues.size(); i++) {
+                final EObject eObject = getEObject(i);
+                if (eObject != null) {
+                    put(byEClass, eObject.eClass(), i);
+                    eClassSamples.put(eObject.eClass(), eObject);
+                }
+            }
+        }
+        final BitSet result = new BitSet();
+        for (final Map.Entry<EClass, BitSet> entry : byEClass.entrySet()) {
+            if (cls.isInstance(eClassSamples.get(entry.getKey()))) {
+                result.or(entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * the element the issue at the given position is reported for
+     */
+    EObject getEObject(final int i) {
+        if (!resolved.get(i)) {
+            if (eObjects.length <= i) {
+                eObjects = Arrays.copyOf(eObjects,
+                        Math.max(issues.size(), i + 1));
+            }
+            eObjects[i] = getEObject(
+                    issues.get(i).getUriToProblem().fragment());
+            resolved.set(i);
+        }
+        return eObjects[i];
+    }
+
+    /**
+     * the element of the resource with the given URI fragment, or null
+     */
+    EObject getEObject(final String fragment) {
+        if (byFragment.containsKey(fragment)) {
+            return byFragment.get(fragment);
+        }
+        final EObject eObject = resource.getEObject(fragment);
+        byFragment.put(fragment, eObject);
+        return eObject;
+    }
+
+    private static <K> void put(final Map<K, BitSet> index, final K key,
+            final int i) {
+        if (key == null) {
+            return;
+        }
+        BitSet bits = index.get(key);
+        if (bits == null) {
+            bits = new BitSet();
+            index.put(key, bits);
+        }
+        bits.set(i);
+    }
+
+    private static <K> BitSet lookup(final Map<K, BitSet> index, final K key) {
+        final BitSet bits = index.get(key);
+        return bits == null ? NONE : bits;
+    }
+}
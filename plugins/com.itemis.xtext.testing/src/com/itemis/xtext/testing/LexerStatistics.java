@@ -0,0 +1,181 @@
+package com.itemis.xtext.testing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * The throughput of the lexer over some input, in total and per terminal
+ * rule, see {@link XtextTestBase#measureLexer(String...)}. All keywords are
+ * counted together as <code>keywords</code>.
+ * </p>
+ *
+ * <p>
+ * The time of a rule is the time spent in the <code>nextToken()</code> calls
+ * that returned its tokens. The timer is read around each call, which adds a
+ * little to every token; the total time is measured over the whole input.
+ * Sizes are in characters, which for ASCII input are bytes.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class LexerStatistics {
+
+    public static final String KEYWORDS = "keywords";
+
+    private final Map<Integer, String> tokenDefs;
+    /* per token type */
+    private long[] tokens = new long[0];
+    private long[] chars = new long[0];
+    private long[] nanos = new long[0];
+    private long totalNanos;
+    private int inputs;
+
+    LexerStatistics(final Map<Integer, String> tokenDefs) {
+        this.tokenDefs = tokenDefs;
+    }
+
+    void record(final int type, final int length, final long tokenNanos) {
+        if (type >= tokens.length) {
+            final int size = Math.max(type + 1, tokens.length * 2);
+            tokens = Arrays.copyOf(tokens, size);
+            chars = Arrays.copyOf(chars, size);
+            nanos = Arrays.copyOf(nanos, size);
+        }
+        tokens[type]++;
+        chars[type] += length;
+        nanos[type] += tokenNanos;
+    }
+
+    void finishInput(final long inputNanos) {
+        totalNanos += inputNanos;
+        inputs++;
+    }
+
+    /**
+     * the number of lexed inputs, e.g. files
+     */
+    public int getInputs() {
+        return inputs;
+    }
+
+    public long getTokens() {
+        return sum(tokens);
+    }
+
+    public long getChars() {
+        return sum(chars);
+    }
+
+    public long getNanos() {
+        return totalNanos;
+    }
+
+    public double getTokensPerSecond() {
+        return perSecond(getTokens(), totalNanos);
+    }
+
+    public double getCharsPerSecond() {
+        return perSecond(getChars(), totalNanos);
+    }
+
+    /**
+     * the terminal rules that produced tokens, the slowest first
+     */
+    public List<String> getRules() {
+        final List<String> rules = new ArrayList<String>();
+        for (int type = 0; type < tokens.length; type++) {
+            if (tokens[type] > 0 && !rules.contains(ruleName(type))) {
+                rules.add(ruleName(type));
+            }
+        }
+        Collections.sort(rules, new Comparator<String>() {
+            public int compare(final String a, final String b) {
+                final long na = getNanos(a);
+                final long nb = getNanos(b);
+                return na > nb ? -1 : na < nb ? 1 : a.compareTo(b);
+            }
+        });
+        return rules;
+    }
+
+    public long getTokens(final String rule) {
+        return sum(tokens, rule);
+    }
+
+    public long getChars(final String rule) {
+        return sum(chars, rule);
+    }
+
+    public long getNanos(final String rule) {
+        return sum(nanos, rule);
+    }
+
+    public double getTokensPerSecond(final String rule) {
+        return perSecond(getTokens(rule), getNanos(rule));
+    }
+
+    public double getCharsPerSecond(final String rule) {
+        return perSecond(getChars(rule), getNanos(rule));
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(String.format(
+                "lexed %d tokens, %d chars from %d inputs in %.1fms: "
+                        + "%.0f tokens/s, %.0f chars/s",
+                getTokens(), getChars(), inputs, totalNanos / 1e6,
+                getTokensPerSecond(), getCharsPerSecond()));
+        sb.append(String.format("%n%-20s %10s %12s %10s %14s %14s", "rule",
+                "tokens", "chars", "ms", "tokens/s", "chars/s"));
+        for (final String rule : getRules()) {
+            sb.append(String.format("%n%-20s %10d %12d %10.1f %14.0f %14.0f",
+                    rule, getTokens(rule), getChars(rule),
+                    getNanos(rule) / 1e6, getTokensPerSecond(rule),
+                    getCharsPerSecond(rule)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * the terminal rule of a token type, without the <code>RULE_</code>
+     * prefix
+     */
+    String ruleName(final int type) {
+        final String def = tokenDefs.get(type);
+        if (def == null) {
+            return String.valueOf(type);
+        }
+        if (def.startsWith("'")) {
+            return KEYWORDS;
+        }
+        return def.startsWith("RULE_") ? def.substring(5) : def;
+    }
+
+    private long sum(final long[] values, final String rule) {
+        long sum = 0;
+        for (int type = 0; type < values.length; type++) {
+            if (tokens[type] > 0 && ruleName(type).equals(rule)) {
+                sum += values[type];
+            }
+        }
+        return sum;
+    }
+
+    private static long sum(final long[] values) {
+        long sum = 0;
+        for (final long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    private static double perSecond(final long count, final long nanos) {
+        return nanos == 0 ? 0 : count * 1e9 / nanos;
+    }
+}
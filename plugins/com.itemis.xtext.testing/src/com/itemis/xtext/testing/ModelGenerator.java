@@ -0,0 +1,15 @@
+package com.itemis.xtext.testing;
+
+/**
+ * Creates the text of a model of a given size, for
+ * {@link XtextTestBase#assertLinearScaling(String, ModelGenerator, int...)}.
+ * What the size means, e.g. the number of elements, is up to the generator,
+ * but the model should grow proportionally to it.
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public interface ModelGenerator {
+
+    CharSequence generate(int size);
+}
@@ -0,0 +1,111 @@
+package com.itemis.xtext.testing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.xtext.parser.IEncodingProvider;
+import org.eclipse.xtext.resource.IResourceServiceProvider;
+import org.eclipse.xtext.resource.SaveOptions;
+import org.eclipse.xtext.resource.SaveOptions.Builder;
+import org.eclipse.xtext.resource.XtextResource;
+import org.eclipse.xtext.validation.CheckMode;
+import org.eclipse.xtext.validation.Issue;
+
+import com.google.inject.Inject;
+
+/**
+ * <p>
+ * The steps {@link XtextTestBase#testFile(String, String...)} runs a model
+ * file through, without any assertions or measurements: parsing, linking,
+ * validation and serialization.
+ * </p>
+ *
+ * <p>
+ * Get an instance from the injector of the language, so it uses the same
+ * resource service providers as the tests, e.g. to benchmark the language.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class ModelPipeline {
+
+    private final IResourceServiceProvider.Registry serviceProviderRegistry;
+
+    @Inject
+    public ModelPipeline(
+            final IResourceServiceProvider.Registry serviceProviderRegistry) {
+        this.serviceProviderRegistry = serviceProviderRegistry;
+    }
+
+    public IResourceServiceProvider getResourceServiceProvider(
+            final URI uri) {
+        return serviceProviderRegistry.getResourceServiceProvider(uri);
+    }
+
+    /**
+     * Creates a resource for the URI in the resource set and loads it from
+     * the given contents, without resolving its cross references.
+     */
+    public Resource parse(final ResourceSet rs, final URI uri,
+            final InputStream contents) throws IOException {
+        final Resource resource = rs.createResource(uri);
+        resource.load(contents, null);
+        return resource;
+    }
+
+    /**
+     * resolves all cross references of the resource
+     */
+    public void link(final Resource resource) {
+        EcoreUtil.resolveAll(resource);
+    }
+
+    public List<Issue> validate(final Resource resource) {
+        final IResourceServiceProvider provider = getResourceServiceProvider(
+                resource.getURI());
+        return provider.getResourceValidator().validate(resource,
+                CheckMode.ALL, null);
+    }
+
+    /**
+     * saves the resource to the stream, formatted if requested
+     */
+    public void serialize(final Resource resource, final OutputStream out,
+            final boolean format) throws IOException {
+        final Builder builder = SaveOptions.newBuilder();
+        if (format) {
+            builder.format();
+        }
+        final SaveOptions s = builder.getOptions();
+
+        resource.save(out, s.toOptionsMap());
+    }
+
+    public String getEncoding(final Resource resource) {
+        if (resource instanceof XtextResource) {
+            return ((XtextResource) resource).getEncoding();
+        }
+        return getEncoding(resource.getURI());
+    }
+
+    public String getEncoding(final URI uri) {
+        final IResourceServiceProvider provider = getResourceServiceProvider(
+                uri);
+        if (provider != null) {
+            final IEncodingProvider encodingProvider = provider
+                    .get(IEncodingProvider.class);
+            if (encodingProvider != null) {
+                return encodingProvider.getEncoding(uri);
+            }
+        }
+        return Charset.defaultCharset().name();
+    }
+}
@@ -0,0 +1,35 @@
+package com.itemis.xtext.testing;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Makes {@link XtextRunner2} run the test methods of the annotated class, or
+ * {@link XtextParallelSuite} the classes of the annotated suite, on a pool of
+ * worker threads.
+ * </p>
+ *
+ * <p>
+ * Every test method gets its own test instance and thereby its own injected
+ * <code>ResourceSet</code>, <code>Lexer</code> and <code>IParser</code>; the
+ * injector and the EMF registries are set up once before the workers start
+ * and shared read-only between them.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Inherited
+public @interface ParallelExecution {
+
+    /**
+     * the number of worker threads, 0 means one per available processor
+     */
+    int threads() default 0;
+}
@@ -0,0 +1,68 @@
+package com.itemis.xtext.testing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.runners.model.RunnerScheduler;
+
+/**
+ * <p>
+ * Runs the children of a JUnit runner on a fixed pool of worker threads and
+ * waits for all of them in {@link #finished()}.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class ParallelScheduler implements RunnerScheduler {
+
+    /**
+     * System property with the default number of worker threads for
+     * {@link XtextRunner2}; test classes run serially if it is not set.
+     */
+    public static final String THREADS_PROPERTY = "xtext.testing.threads";
+
+    private final ExecutorService executor;
+    private final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+    public ParallelScheduler(final int threads) {
+        executor = Executors.newFixedThreadPool(threads,
+                new DaemonThreadFactory("xtext-test"));
+    }
+
+    /**
+     * Returns the number of threads for the given value of
+     * {@link ParallelExecution#threads()}, 0 means one per processor.
+     */
+    public static int threadCount(final int threads) {
+        return threads > 0 ? threads
+                : Runtime.getRuntime().availableProcessors();
+    }
+
+    public synchronized void schedule(final Runnable childStatement) {
+        futures.add(executor.submit(childStatement));
+    }
+
+    public void finished() {
+        try {
+            for (final Future<?> future : snapshot()) {
+                future.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private synchronized List<Future<?>> snapshot() {
+        return new ArrayList<Future<?>>(futures);
+    }
+}
@@ -0,0 +1,116 @@
+package com.itemis.xtext.testing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * The parse times of a batch of texts per parser rule, see
+ * {@link XtextTestBase#testParserRules(ParserRuleCases, int)}. With several
+ * threads the times of the rules add up to more than the wall-clock time of
+ * the batch.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class ParseStatistics {
+
+    private static final int COUNT = 0;
+    private static final int CHARS = 1;
+    private static final int NANOS = 2;
+    private static final int MAX_NANOS = 3;
+
+    /* count, chars, nanos and max nanos per rule */
+    private final Map<String, long[]> rules = new LinkedHashMap<String, long[]>();
+
+    void record(final String rule, final int chars, final long nanos) {
+        final long[] values = values(rule);
+        values[COUNT]++;
+        values[CHARS] += chars;
+        values[NANOS] += nanos;
+        values[MAX_NANOS] = Math.max(values[MAX_NANOS], nanos);
+    }
+
+    void add(final ParseStatistics other) {
+        for (final Map.Entry<String, long[]> entry : other.rules.entrySet()) {
+            final long[] values = values(entry.getKey());
+            values[COUNT] += entry.getValue()[COUNT];
+            values[CHARS] += entry.getValue()[CHARS];
+            values[NANOS] += entry.getValue()[NANOS];
+            values[MAX_NANOS] = Math.max(values[MAX_NANOS],
+                    entry.getValue()[MAX_NANOS]);
+        }
+    }
+
+    /**
+     * the parsed rules, the one with the most parse time first
+     */
+    public List<String> getRules() {
+        final List<String> result = new ArrayList<String>(rules.keySet());
+        Collections.sort(result, new Comparator<String>() {
+            public int compare(final String a, final String b) {
+                final long na = getNanos(a);
+                final long nb = getNanos(b);
+                return na > nb ? -1 : na < nb ? 1 : 0;
+            }
+        });
+        return result;
+    }
+
+    public long getCount(final String rule) {
+        return get(rule, COUNT);
+    }
+
+    public long getChars(final String rule) {
+        return get(rule, CHARS);
+    }
+
+    /**
+     * the total parse time of the texts of the rule
+     */
+    public long getNanos(final String rule) {
+        return get(rule, NANOS);
+    }
+
+    public long getMaxNanos(final String rule) {
+        return get(rule, MAX_NANOS);
+    }
+
+    public long getMeanNanos(final String rule) {
+        final long count = getCount(rule);
+        return count == 0 ? 0 : getNanos(rule) / count;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(
+                String.format("%-30s %8s %10s %10s %10s %10s", "rule",
+                        "texts", "chars", "total ms", "mean ms", "max ms"));
+        for (final String rule : getRules()) {
+            sb.append(String.format("%n%-30s %8d %10d %10.2f %10.3f %10.3f",
+                    rule, getCount(rule), getChars(rule),
+                    getNanos(rule) / 1e6, getMeanNanos(rule) / 1e6,
+                    getMaxNanos(rule) / 1e6));
+        }
+        return sb.toString();
+    }
+
+    private long get(final String rule, final int index) {
+        final long[] values = rules.get(rule);
+        return values == null ? 0 : values[index];
+    }
+
+    private long[] values(final String rule) {
+        long[] values = rules.get(rule);
+        if (values == null) {
+            values = new long[4];
+            rules.put(rule, values);
+        }
+        return values;
+    }
+}
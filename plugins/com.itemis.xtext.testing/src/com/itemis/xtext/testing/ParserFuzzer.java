@@ -0,0 +1,551 @@
+package com.itemis.xtext.testing;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.Token;
+import org.apache.log4j.Logger;
+import org.eclipse.xtext.parser.IParser;
+import org.eclipse.xtext.parser.antlr.Lexer;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.itemis.xtext.testing.FuzzReport.Finding;
+import com.itemis.xtext.testing.FuzzReport.Kind;
+
+/**
+ * <p>
+ * Looks for inputs that make the parser slow or throw, e.g. malformed input
+ * making the backtracking of the ANTLR parser explode. The tokens of the
+ * corpus files are mutated randomly (deleted, inserted from elsewhere in the
+ * corpus, or duplicated in runs) and the results are parsed in parallel, each
+ * with a time limit, see
+ * {@link XtextTestBase#fuzzParser(ParserFuzzer, String...)}.
+ * </p>
+ *
+ * <p>
+ * Each failing input is checked again on its own, then minimized by delta
+ * debugging over its tokens to a part that still fails the same way, and
+ * saved as a reproducer file. The mutations only depend on the seed.
+ * </p>
+ *
+ * <p>
+ * A parse running over the limit is abandoned, not stopped: ANTLR doesn't
+ * react to interrupts. The daemon threads of such parses run on, so fuzzing
+ * stops early if more of them are running than there are workers.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class ParserFuzzer {
+
+    private static Logger LOGGER = Logger.getLogger(ParserFuzzer.class);
+
+    /* the longest run of tokens duplicated by one mutation */
+    private static final int MAX_DUPLICATED = 8;
+    /* untimed parses of each corpus file before fuzzing */
+    private static final int WARMUP_RUNS = 3;
+    private static final long IDLE_WAIT_NANOS = 1000 * 1000000L;
+
+    private final Provider<IParser> parserProvider;
+    private final Provider<Lexer> lexerProvider;
+    private final ThreadLocal<IParser> parsers = new ThreadLocal<IParser>();
+
+    private long seed = 1;
+    private int mutations = 200;
+    private int mutationsPerInput = 3;
+    private long limitNanos = 1000 * 1000000L;
+    private int threads;
+    private int minimizationRuns = 200;
+    private File reproducerDirectory = new File("target/fuzz");
+    private String encoding = "UTF-8";
+
+    /* state of one run */
+    private ExecutorService executor;
+    private int workers;
+    private final AtomicInteger running = new AtomicInteger();
+
+    @Inject
+    public ParserFuzzer(final Provider<IParser> parserProvider,
+            final Provider<Lexer> lexerProvider) {
+        this.parserProvider = parserProvider;
+        this.lexerProvider = lexerProvider;
+    }
+
+    public ParserFuzzer seed(final long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * the number of mutated inputs parsed per corpus file, 200 by default
+     */
+    public ParserFuzzer mutations(final int count) {
+        mutations = count;
+        return this;
+    }
+
+    /**
+     * the maximal number of mutations applied to one input, 3 by default
+     */
+    public ParserFuzzer mutationsPerInput(final int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException(
+                    "mutationsPerInput must be >= 1");
+        }
+        mutationsPerInput = count;
+        return this;
+    }
+
+    /**
+     * the time limit for parsing one input, 1 second by default
+     */
+    public ParserFuzzer millis(final long millis) {
+        limitNanos = millis * 1000000;
+        return this;
+    }
+
+    /**
+     * the number of parallel parses, 0 (the default) means one per processor
+     */
+    public ParserFuzzer threads(final int count) {
+        threads = count;
+        return this;
+    }
+
+    /**
+     * the maximal number of parses used to minimize one failing input
+     */
+    public ParserFuzzer minimizationRuns(final int count) {
+        minimizationRuns = count;
+        return this;
+    }
+
+    /**
+     * where reproducers are saved, <code>target/fuzz</code> by default; null
+     * doesn't save them
+     */
+    public ParserFuzzer reproducerDirectory(final File directory) {
+        reproducerDirectory = directory;
+        return this;
+    }
+
+    /**
+     * the encoding of the saved reproducers
+     */
+    public ParserFuzzer encoding(final String encoding) {
+        this.encoding = encoding;
+        return this;
+    }
+
+    /**
+     * Mutates and parses the corpus.
+     *
+     * @param corpus
+     *            the contents of the corpus files by their names
+     */
+    public FuzzReport fuzz(final Map<String, String> corpus) {
+        workers = ParallelScheduler.threadCount(threads);
+        final Random random = new Random(seed);
+        final FuzzReport report = new FuzzReport();
+        final List<String> names = new ArrayList<String>(corpus.keySet());
+        final List<List<String>> tokens = new ArrayList<List<String>>();
+        final List<String> pool = new ArrayList<String>();
+        final Set<String> pooled = new HashSet<String>();
+        for (final String name : names) {
+            final List<String> t = tokenize(corpus.get(name));
+            tokens.add(t);
+            for (final String token : t) {
+                if (isSignificant(token) && pooled.add(token)) {
+                    pool.add(token);
+                }
+            }
+        }
+        if (pool.isEmpty()) {
+            return report;
+        }
+
+        executor = newExecutor();
+        try {
+            // let the JIT compile the parser, cold parses would be too slow
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                for (final String name : names) {
+                    get(submit(corpus.get(name)));
+                }
+            }
+            final List<Run> pending = new ArrayList<Run>();
+            final List<Run> failed = new ArrayList<Run>();
+            fuzzing: for (int m = 0; m < mutations; m++) {
+                for (int f = 0; f < names.size(); f++) {
+                    while (pending.size() >= workers) {
+                        collect(pending, failed, report);
+                    }
+                    if (running.get() - pending.size() > workers) {
+                        report.stop(running.get() - pending.size()
+                                + " parses are still running past the limit");
+                        break fuzzing;
+                    }
+                    final String input = mutate(tokens.get(f), pool, random);
+                    pending.add(new Run(names.get(f), input, submit(input)));
+                }
+            }
+            while (!pending.isEmpty()) {
+                collect(pending, failed, report);
+            }
+
+            final Set<String> reproducers = new HashSet<String>();
+            for (final Run run : failed) {
+                final Finding finding = analyze(run, reproducers);
+                if (finding != null) {
+                    report.add(finding);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            executor = null;
+        }
+        LOGGER.info(report);
+        return report;
+    }
+
+    /**
+     * Moves the finished and the timed out runs from pending, the failed
+     * ones to failed. Waits for the oldest run if none is done.
+     */
+    private void collect(final List<Run> pending, final List<Run> failed,
+            final FuzzReport report) {
+        boolean removed = false;
+        for (final Iterator<Run> it = pending.iterator(); it.hasNext();) {
+            final Run run = it.next();
+            if (run.future.isDone() || run.isOverdue()) {
+                final Outcome outcome = run.future.isDone() ? get(run.future)
+                        : Outcome.timedOut(limitNanos);
+                if (outcome.isFailure(limitNanos)) {
+                    failed.add(run);
+                }
+                report.parsed();
+                it.remove();
+                removed = true;
+            }
+        }
+        if (!removed && !pending.isEmpty()) {
+            final Run oldest = pending.get(0);
+            try {
+                oldest.future.get(Math.max(1,
+                        limitNanos - (System.nanoTime() - oldest.started)),
+                        TimeUnit.NANOSECONDS);
+            } catch (final TimeoutException e) {
+                // overdue now
+            } catch (final ExecutionException e) {
+                // can't happen, parse errors are part of the outcome
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * confirms the failure on its own and minimizes the input, null if it
+     * is not reproducible or the reproducer was found before
+     */
+    private Finding analyze(final Run run, final Set<String> reproducers) {
+        awaitIdle();
+        final Outcome original = parseAlone(run.input);
+        if (!original.isFailure(limitNanos)) {
+            LOGGER.debug("not reproducible alone: failure of input from "
+                    + run.source);
+            return null;
+        }
+        final List<String> minimal = minimize(tokenize(run.input), original);
+        final StringBuilder reproducer = new StringBuilder();
+        for (final String token : minimal) {
+            reproducer.append(token);
+        }
+        if (!reproducers.add(reproducer.toString())) {
+            return null;
+        }
+        final Kind kind = original.error != null ? Kind.EXCEPTION : Kind.SLOW;
+        final File file = save(run.source, kind, reproducers.size(),
+                reproducer.toString());
+        return new Finding(kind, run.source, run.input,
+                reproducer.toString(), original.nanos / 1000000,
+                original.error, file);
+    }
+
+    /**
+     * delta debugging: removes ever smaller chunks of tokens as long as the
+     * rest fails like the original
+     */
+    private List<String> minimize(final List<String> input,
+            final Outcome original) {
+        List<String> current = input;
+        int chunks = 2;
+        int runs = 0;
+        while (current.size() >= 2 && runs < minimizationRuns
+                && !hasRunaways()) {
+            final int chunkSize = (current.size() + chunks - 1) / chunks;
+            boolean reduced = false;
+            for (int start = 0; start < current.size()
+                    && runs < minimizationRuns; start += chunkSize) {
+                final List<String> complement = new ArrayList<String>(
+                        current.subList(0, start));
+                complement.addAll(current.subList(
+                        Math.min(current.size(), start + chunkSize),
+                        current.size()));
+                runs++;
+                if (original.isSameFailure(parseAlone(join(complement)),
+                        limitNanos)) {
+                    current = complement;
+                    chunks = Math.max(chunks - 1, 2);
+                    reduced = true;
+                    break;
+                }
+            }
+            if (!reduced) {
+                if (chunks >= current.size()) {
+                    break;
+                }
+                chunks = Math.min(chunks * 2, current.size());
+            }
+        }
+        return current;
+    }
+
+    /**
+     * waits a while for the parses past the limit to end, so that they don't
+     * slow down the parses that are timed
+     */
+    private void awaitIdle() {
+        final long deadline = System.nanoTime()
+                + Math.max(IDLE_WAIT_NANOS, 10 * limitNanos);
+        while (running.get() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * true if more parses run past the limit than there are workers
+     */
+    private boolean hasRunaways() {
+        return running.get() > workers;
+    }
+
+    private File save(final String source, final Kind kind, final int number,
+            final String reproducer) {
+        if (reproducerDirectory == null) {
+            return null;
+        }
+        String name = new File(source).getName();
+        String extension = "";
+        final int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            extension = name.substring(dot);
+            name = name.substring(0, dot);
+        }
+        final File file = new File(reproducerDirectory, name + "-"
+                + kind.name().toLowerCase() + "-" + number + extension);
+        reproducerDirectory.mkdirs();
+        try {
+            final Writer out = new OutputStreamWriter(
+                    new FileOutputStream(file), encoding);
+            try {
+                out.write(reproducer);
+            } finally {
+                out.close();
+            }
+        } catch (final IOException e) {
+            LOGGER.error("could not save reproducer " + file, e);
+            return null;
+        }
+        return file;
+    }
+
+    private String mutate(final List<String> tokens, final List<String> pool,
+            final Random random) {
+        final List<String> result = new ArrayList<String>(tokens);
+        final int count = 1 + random.nextInt(mutationsPerInput);
+        for (int i = 0; i < count; i++) {
+            final int at = random.nextInt(result.size() + 1);
+            switch (random.nextInt(3)) {
+            case 0:
+                // delete the next significant token
+                for (int j = at; j < result.size(); j++) {
+                    if (isSignificant(result.get(j))) {
+                        result.remove(j);
+                        break;
+                    }
+                }
+                break;
+            case 1:
+                result.add(at, " " + pool.get(random.nextInt(pool.size()))
+                        + " ");
+                break;
+            default:
+                final int end = Math.min(result.size(),
+                        at + 1 + random.nextInt(MAX_DUPLICATED));
+                result.addAll(end, new ArrayList<String>(
+                        result.subList(at, end)));
+            }
+            if (result.isEmpty()) {
+                result.add(" ");
+            }
+        }
+        return join(result);
+    }
+
+    private List<String> tokenize(final String input) {
+        final Lexer lexer = lexerProvider.get();
+        lexer.setCharStream(new ANTLRStringStream(input));
+        final List<String> tokens = new ArrayList<String>();
+        for (Token token = lexer.nextToken(); token
+                .getType() != Token.EOF; token = lexer.nextToken()) {
+            tokens.add(token.getText());
+        }
+        return tokens;
+    }
+
+    private static boolean isSignificant(final String token) {
+        return token != null && token.trim().length() > 0;
+    }
+
+    private static String join(final List<String> tokens) {
+        final StringBuilder sb = new StringBuilder();
+        for (final String token : tokens) {
+            sb.append(token);
+        }
+        return sb.toString();
+    }
+
+    private Future<Outcome> submit(final String input) {
+        return executor.submit(new Callable<Outcome>() {
+            public Outcome call() {
+                running.incrementAndGet();
+                try {
+                    return parse(input);
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    private Outcome parseAlone(final String input) {
+        final Future<Outcome> future = submit(input);
+        try {
+            return future.get(limitNanos, TimeUnit.NANOSECONDS);
+        } catch (final TimeoutException e) {
+            return Outcome.timedOut(limitNanos);
+        } catch (final ExecutionException e) {
+            return new Outcome(0, e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Outcome parse(final String input) {
+        IParser parser = parsers.get();
+        if (parser == null) {
+            parser = parserProvider.get();
+            parsers.set(parser);
+        }
+        final long start = System.nanoTime();
+        try {
+            parser.parse(new StringReader(input));
+            return new Outcome(System.nanoTime() - start, null);
+        } catch (final Throwable e) {
+            // stack overflows and the like are findings, too
+            return new Outcome(System.nanoTime() - start, e);
+        }
+    }
+
+    private static Outcome get(final Future<Outcome> future) {
+        try {
+            return future.get();
+        } catch (final ExecutionException e) {
+            return new Outcome(0, e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static ExecutorService newExecutor() {
+        return Executors
+                .newCachedThreadPool(new DaemonThreadFactory("xtext-fuzz"));
+    }
+
+    /**
+     * a mutated input being parsed
+     */
+    private class Run {
+        final String source;
+        final String input;
+        final Future<Outcome> future;
+        final long started = System.nanoTime();
+
+        Run(final String source, final String input,
+                final Future<Outcome> future) {
+            this.source = source;
+            this.input = input;
+            this.future = future;
+        }
+
+        boolean isOverdue() {
+            return System.nanoTime() - started > limitNanos;
+        }
+    }
+
+    private static class Outcome {
+        final long nanos;
+        final Throwable error;
+
+        Outcome(final long nanos, final Throwable error) {
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        static Outcome timedOut(final long limitNanos) {
+            return new Outcome(limitNanos + 1, null);
+        }
+
+        boolean isFailure(final long limitNanos) {
+            return error != null || nanos > limitNanos;
+        }
+
+        boolean isSameFailure(final Outcome other, final long limitNanos) {
+            if (error != null) {
+                return other.error != null
+                        && other.error.getClass() == error.getClass();
+            }
+            return other.error == null && other.nanos > limitNanos;
+        }
+    }
+}
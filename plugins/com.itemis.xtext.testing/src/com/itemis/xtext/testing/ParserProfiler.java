@@ -0,0 +1,179 @@
+package com.itemis.xtext.testing;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.xtext.ParserRule;
+import org.eclipse.xtext.RuleCall;
+import org.eclipse.xtext.nodemodel.ICompositeNode;
+import org.eclipse.xtext.nodemodel.INode;
+import org.eclipse.xtext.parser.IParseResult;
+import org.eclipse.xtext.parser.IParser;
+import org.eclipse.xtext.parser.ParseException;
+
+/**
+ * Builds a {@link RuleProfile} from the node models of a corpus and from
+ * parsing samples of the texts of each rule again.
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+class ParserProfiler {
+
+    /* texts parsed again per rule */
+    static final int SAMPLES = 100;
+    /* parses per sample, the fastest is used */
+    private static final int REPEATS = 3;
+
+    private final IParser parser;
+    private final Random random = new Random(1);
+
+    private final Map<ParserRule, RuleProfile.Rule> rules = new LinkedHashMap<ParserRule, RuleProfile.Rule>();
+    private final Map<ParserRule, List<String>> samples = new HashMap<ParserRule, List<String>>();
+    /* the rules called directly, and how often, per rule */
+    private final Map<ParserRule, Map<ParserRule, Long>> calls = new HashMap<ParserRule, Map<ParserRule, Long>>();
+
+    ParserProfiler(final IParser parser) {
+        this.parser = parser;
+    }
+
+    RuleProfile profile(final List<String> inputs) {
+        for (final String input : inputs) {
+            // warms up the parser
+            parser.parse(new StringReader(input));
+        }
+        long parseNanos = 0;
+        for (final String input : inputs) {
+            final long start = System.nanoTime();
+            final IParseResult result = parser.parse(new StringReader(input));
+            parseNanos += System.nanoTime() - start;
+            if (result.getRootNode() != null) {
+                visit(result.getRootNode(), null);
+            }
+        }
+        for (final Map.Entry<ParserRule, RuleProfile.Rule> entry : rules
+                .entrySet()) {
+            final RuleProfile.Rule rule = entry.getValue();
+            final List<String> texts = samples.get(entry.getKey());
+            long sum = 0;
+            try {
+                // the cost of a parse call of the rule without any input
+                final long overhead = time(entry.getKey(), "");
+                for (final String text : texts) {
+                    sum += Math.max(0, time(entry.getKey(), text) - overhead);
+                    rule.samples++;
+                }
+            } catch (final ParseException e) {
+                // the generated parser has no entry point for this rule
+                rule.samples = 0;
+            }
+            rule.inclusiveNanos = rule.samples == 0 ? 0
+                    : sum / rule.samples * rule.entries;
+        }
+        for (final Map.Entry<ParserRule, RuleProfile.Rule> entry : rules
+                .entrySet()) {
+            long self = entry.getValue().inclusiveNanos;
+            final Map<ParserRule, Long> called = calls.get(entry.getKey());
+            if (called != null) {
+                for (final Map.Entry<ParserRule, Long> call : called
+                        .entrySet()) {
+                    final RuleProfile.Rule callee = rules.get(call.getKey());
+                    self -= callee.inclusiveNanos / callee.entries
+                            * call.getValue();
+                }
+            }
+            entry.getValue().selfNanos = Math.max(0, self);
+        }
+        return new RuleProfile(new ArrayList<RuleProfile.Rule>(rules.values()),
+                inputs.size(), parseNanos);
+    }
+
+    /**
+     * records the node if it is the node of a rule, and the nodes below it
+     */
+    private void visit(final INode node, final ParserRule caller) {
+        if (!(node instanceof ICompositeNode)) {
+            return;
+        }
+        final ICompositeNode composite = (ICompositeNode) node;
+        final ParserRule rule = ruleOf(composite);
+        if (rule != null) {
+            record(rule, composite);
+            if (caller != null) {
+                recordCall(caller, rule);
+            }
+        }
+        final ParserRule next = rule != null ? rule : caller;
+        for (final INode child : composite.getChildren()) {
+            visit(child, next);
+        }
+    }
+
+    private void record(final ParserRule parserRule,
+            final ICompositeNode node) {
+        RuleProfile.Rule rule = rules.get(parserRule);
+        if (rule == null) {
+            rule = new RuleProfile.Rule(parserRule.getName());
+            rules.put(parserRule, rule);
+            samples.put(parserRule, new ArrayList<String>());
+        }
+        rule.entries++;
+        final int lookAhead = node.getLookAhead();
+        rule.lookAheadSum += lookAhead;
+        rule.maxLookAhead = Math.max(rule.maxLookAhead, lookAhead);
+        if (lookAhead > 1) {
+            rule.lookAheadAbove1++;
+        }
+        // reservoir sampling keeps a uniform sample of the texts
+        final List<String> texts = samples.get(parserRule);
+        if (texts.size() < SAMPLES) {
+            texts.add(node.getText());
+        } else {
+            final long i = (long) (random.nextDouble() * rule.entries);
+            if (i < SAMPLES) {
+                texts.set((int) i, node.getText());
+            }
+        }
+    }
+
+    private void recordCall(final ParserRule caller, final ParserRule rule) {
+        Map<ParserRule, Long> called = calls.get(caller);
+        if (called == null) {
+            called = new HashMap<ParserRule, Long>();
+            calls.put(caller, called);
+        }
+        final Long count = called.get(rule);
+        called.put(rule, count == null ? 1 : count + 1);
+    }
+
+    private long time(final ParserRule rule, final String text) {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < REPEATS; i++) {
+            final long start = System.nanoTime();
+            parser.parse(rule, new StringReader(text));
+            min = Math.min(min, System.nanoTime() - start);
+        }
+        return min;
+    }
+
+    /**
+     * the parser rule the node was created for, null for nodes of actions
+     */
+    private static ParserRule ruleOf(final ICompositeNode node) {
+        final EObject element = node.getGrammarElement();
+        if (element instanceof RuleCall
+                && ((RuleCall) element).getRule() instanceof ParserRule) {
+            return (ParserRule) ((RuleCall) element).getRule();
+        }
+        if (element instanceof ParserRule) {
+            return (ParserRule) element;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,51 @@
+package com.itemis.xtext.testing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * A table of texts to parse with parser rules, run by
+ * {@link XtextTestBase#testParserRules(ParserRuleCases, int)} which reports
+ * all failing cases together and the parse times per rule, e.g.
+ * </p>
+ *
+ * <pre>
+ * testParserRules(new ParserRuleCases()
+ *         .add("foo.bar", "QualifiedName")
+ *         .add("foo.*", "QualifiedNameWithWildCard"), 4);
+ * </pre>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class ParserRuleCases {
+
+    static class Case {
+        final String text;
+        final String ruleName;
+
+        Case(final String text, final String ruleName) {
+            this.text = text;
+            this.ruleName = ruleName;
+        }
+    }
+
+    private final List<Case> cases = new ArrayList<Case>();
+
+    /**
+     * the text is parsed by the rule without syntax errors
+     */
+    public ParserRuleCases add(final String text, final String ruleName) {
+        cases.add(new Case(text, ruleName));
+        return this;
+    }
+
+    public int size() {
+        return cases.size();
+    }
+
+    List<Case> getCases() {
+        return cases;
+    }
+}
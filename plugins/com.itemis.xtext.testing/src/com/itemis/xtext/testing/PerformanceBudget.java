@@ -0,0 +1,147 @@
+package com.itemis.xtext.testing;
+
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+
+/**
+ * <p>
+ * The time and allocated bytes a phase of the test pipeline may take for one
+ * model file, see
+ * {@link XtextTestBase#assertPhaseWithin(TestPhase, PerformanceBudget, String, String...)}.
+ * </p>
+ *
+ * <p>
+ * The phase is run <code>warmup</code> times without measuring, then
+ * <code>iterations</code> times measured. The budget is met if the median of
+ * the measurements is within the limits, e.g.
+ * </p>
+ *
+ * <pre>
+ * assertParsesWithin(new PerformanceBudget().millis(200).warmup(5).iterations(9),
+ *         "large.dmodel");
+ * </pre>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class PerformanceBudget {
+
+    private static Logger LOGGER = Logger.getLogger(PerformanceBudget.class);
+
+    private long maxNanos = -1;
+    private long maxAllocatedBytes = -1;
+    private int warmup = 3;
+    private int iterations = 5;
+
+    /**
+     * the maximal median wall-clock time
+     */
+    public PerformanceBudget millis(final long millis) {
+        maxNanos = millis * 1000000;
+        return this;
+    }
+
+    /**
+     * the maximal median number of bytes allocated by the test thread
+     */
+    public PerformanceBudget allocatedBytes(final long bytes) {
+        maxAllocatedBytes = bytes;
+        return this;
+    }
+
+    public PerformanceBudget warmup(final int runs) {
+        if (runs < 0) {
+            throw new IllegalArgumentException("warmup must be >= 0");
+        }
+        warmup = runs;
+        return this;
+    }
+
+    public PerformanceBudget iterations(final int runs) {
+        if (runs < 1) {
+            throw new IllegalArgumentException("iterations must be >= 1");
+        }
+        iterations = runs;
+        return this;
+    }
+
+    public int getWarmup() {
+        return warmup;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Fails if the median of the measurements exceeds the budget.
+     *
+     * @param what
+     *            describes what was measured, for the failure message
+     * @param nanos
+     *            the measured wall-clock times
+     * @param allocatedBytes
+     *            the measured allocations, -1 if they could not be measured
+     */
+    void assertMet(final String what, final long[] nanos,
+            final long[] allocatedBytes) {
+        final StringBuilder failure = new StringBuilder();
+        final long medianNanos = median(nanos);
+        if (maxNanos >= 0 && medianNanos > maxNanos) {
+            failure.append("\n  time: median " + formatMillis(medianNanos)
+                    + "ms > budget " + formatMillis(maxNanos)
+                    + "ms, measured (ms) " + formatMillis(nanos));
+        }
+        if (maxAllocatedBytes >= 0) {
+            if (allocatedBytes[0] < 0) {
+                LOGGER.warn("allocated bytes can't be measured on this JVM, "
+                        + "the allocation budget of " + what
+                        + " is not checked");
+            } else {
+                final long medianBytes = median(allocatedBytes);
+                if (medianBytes > maxAllocatedBytes) {
+                    failure.append("\n  allocated: median " + medianBytes
+                            + " bytes > budget " + maxAllocatedBytes
+                            + " bytes, measured (bytes) "
+                            + Arrays.toString(sorted(allocatedBytes)));
+                }
+            }
+        }
+        if (failure.length() > 0) {
+            Assert.fail(what + " exceeded its budget (" + iterations
+                    + " iterations after " + warmup + " warmup runs):"
+                    + failure);
+        }
+        LOGGER.info(what + " within budget: median "
+                + formatMillis(medianNanos) + "ms"
+                + (allocatedBytes[0] < 0 ? ""
+                        : ", " + median(allocatedBytes) + " bytes allocated"));
+    }
+
+    static long median(final long[] values) {
+        final long[] s = sorted(values);
+        final int mid = s.length / 2;
+        return s.length % 2 == 1 ? s[mid] : (s[mid - 1] + s[mid]) / 2;
+    }
+
+    private static long[] sorted(final long[] values) {
+        final long[] s = values.clone();
+        Arrays.sort(s);
+        return s;
+    }
+
+    private static String formatMillis(final long nanos) {
+        return String.format("%.1f", nanos / 1e6);
+    }
+
+    private static String formatMillis(final long[] nanos) {
+        final long[] s = sorted(nanos);
+        final StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < s.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append(formatMillis(s[i]));
+        }
+        return sb.append("]").toString();
+    }
+}
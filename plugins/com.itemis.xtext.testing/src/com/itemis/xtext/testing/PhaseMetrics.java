@@ -0,0 +1,196 @@
+package com.itemis.xtext.testing;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * <p>
+ * Wall-clock time, CPU time and allocated bytes of the individual steps of
+ * testing one model file, i.e. of one
+ * {@link XtextTestBase#testFile(String, String...)} call including the
+ * referenced resources it loads.
+ * </p>
+ *
+ * <p>
+ * CPU time and allocated bytes are only recorded if the JVM supports
+ * measuring them for the current thread, otherwise they are reported as -1.
+ * </p>
+ *
+ * <p>
+ * {@link #NONE} measures nothing; it stands in for the metrics outside of
+ * testing a model file, so that these steps don't end up in the reports.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class PhaseMetrics {
+
+    public enum Step {
+        /** parsing the model file into a resource */
+        LOAD,
+        /** resolving all cross references */
+        RESOLVE,
+        /** running the resource validator */
+        VALIDATE,
+        /** saving the model without formatting */
+        SERIALIZE,
+        /** saving the model with formatting, includes the serialization */
+        FORMAT,
+        /** comparing the serialized model to the input file */
+        COMPARE
+    }
+
+    private static final ThreadMXBean THREADS = ManagementFactory
+            .getThreadMXBean();
+
+    /**
+     * metrics whose stopwatches don't measure anything
+     */
+    public static final PhaseMetrics NONE = new PhaseMetrics(null, null, "-",
+            false);
+
+    private final String testClass;
+    private final String testMethod;
+    private final String file;
+    private final long[] wallNanos = new long[Step.values().length];
+    private final long[] cpuNanos = new long[Step.values().length];
+    private final long[] allocatedBytes = new long[Step.values().length];
+    private final boolean[] measured = new boolean[Step.values().length];
+    private final boolean measuring;
+
+    public PhaseMetrics(final String testClass, final String testMethod,
+            final String file) {
+        this(testClass, testMethod, file, true);
+    }
+
+    private PhaseMetrics(final String testClass, final String testMethod,
+            final String file, final boolean measuring) {
+        this.testClass = testClass;
+        this.testMethod = testMethod;
+        this.file = file;
+        this.measuring = measuring;
+    }
+
+    /**
+     * Starts measuring the given step on the current thread. Measurements of
+     * the same step are added up.
+     */
+    public Stopwatch start(final Step step) {
+        return new Stopwatch(step);
+    }
+
+    public String getTestClass() {
+        return testClass;
+    }
+
+    public String getTestMethod() {
+        return testMethod;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public boolean isMeasured(final Step step) {
+        return measured[step.ordinal()];
+    }
+
+    public long getWallNanos(final Step step) {
+        return wallNanos[step.ordinal()];
+    }
+
+    /**
+     * returns the CPU time of the step, or -1 if it can't be measured
+     */
+    public long getCpuNanos(final Step step) {
+        return cpuTimeSupported() ? cpuNanos[step.ordinal()] : -1;
+    }
+
+    /**
+     * returns the bytes allocated by the step, or -1 if they can't be
+     * measured
+     */
+    public long getAllocatedBytes(final Step step) {
+        return AllocatedBytes.isSupported() ? allocatedBytes[step.ordinal()]
+                : -1;
+    }
+
+    public long getTotalAllocatedBytes() {
+        if (!AllocatedBytes.isSupported()) {
+            return -1;
+        }
+        long total = 0;
+        for (final long bytes : allocatedBytes) {
+            total += bytes;
+        }
+        return total;
+    }
+
+    public long getTotalWallNanos() {
+        long total = 0;
+        for (final long nanos : wallNanos) {
+            total += nanos;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(file).append(":");
+        for (final Step step : Step.values()) {
+            if (isMeasured(step)) {
+                sb.append(" ").append(step).append(" ")
+                        .append(getWallNanos(step) / 1000000).append("ms");
+                if (cpuTimeSupported()) {
+                    sb.append(" (cpu ").append(getCpuNanos(step) / 1000000)
+                            .append("ms)");
+                }
+                if (AllocatedBytes.isSupported()) {
+                    sb.append(" ").append(getAllocatedBytes(step) / 1024)
+                            .append("KB");
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean cpuTimeSupported() {
+        return THREADS.isCurrentThreadCpuTimeSupported();
+    }
+
+    private static long currentThreadCpuTime() {
+        return cpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    /**
+     * A running measurement of one step, must be stopped on the thread that
+     * started it.
+     */
+    public class Stopwatch {
+
+        private final Step step;
+        private final long wallStart;
+        private final long cpuStart;
+        private final long allocatedStart;
+
+        private Stopwatch(final Step step) {
+            this.step = step;
+            allocatedStart = measuring ? AllocatedBytes.currentThread() : 0;
+            cpuStart = measuring ? currentThreadCpuTime() : 0;
+            wallStart = measuring ? System.nanoTime() : 0;
+        }
+
+        public void stop() {
+            if (!measuring) {
+                return;
+            }
+            final int i = step.ordinal();
+            wallNanos[i] += System.nanoTime() - wallStart;
+            cpuNanos[i] += currentThreadCpuTime() - cpuStart;
+            allocatedBytes[i] += AllocatedBytes.currentThread()
+                    - allocatedStart;
+            measured[i] = true;
+        }
+    }
+}
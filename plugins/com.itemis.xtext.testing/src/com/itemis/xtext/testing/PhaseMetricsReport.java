@@ -0,0 +1,253 @@
+package com.itemis.xtext.testing;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.itemis.xtext.testing.PhaseMetrics.Step;
+
+/**
+ * <p>
+ * Collects the {@link PhaseMetrics} of all tested model files per test class
+ * and writes them as one JSON file per test class, named
+ * <code>&lt;qualified test class name&gt;.json</code>.
+ * </p>
+ *
+ * <p>
+ * The reports are written to the directory given by the system property
+ * {@value #REPORT_DIR_PROPERTY}, <code>target/xtext-testing-reports</code> by
+ * default. Writing is idempotent, each write contains all metrics recorded so
+ * far for the class.
+ * </p>
+ *
+ * <p>
+ * Besides the totals, the report and the log contain a summary per step over
+ * all model files of the class: the mean and maximum wall-clock time and
+ * allocated bytes.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class PhaseMetricsReport {
+
+    public static final String REPORT_DIR_PROPERTY = "xtext.testing.reportDir";
+
+    private static Logger LOGGER = Logger.getLogger(PhaseMetricsReport.class);
+
+    private static final Map<String, List<PhaseMetrics>> METRICS = new LinkedHashMap<String, List<PhaseMetrics>>();
+    /* the number of metrics per class when its summary was last logged */
+    private static final Map<String, Integer> LOGGED = new HashMap<String, Integer>();
+
+    private PhaseMetricsReport() {
+    }
+
+    public static synchronized void record(final PhaseMetrics metrics) {
+        List<PhaseMetrics> list = METRICS.get(metrics.getTestClass());
+        if (list == null) {
+            list = new ArrayList<PhaseMetrics>();
+            METRICS.put(metrics.getTestClass(), list);
+        }
+        list.add(metrics);
+    }
+
+    public static synchronized List<PhaseMetrics> getMetrics(
+            final String testClass) {
+        final List<PhaseMetrics> list = METRICS.get(testClass);
+        return list == null ? new ArrayList<PhaseMetrics>()
+                : new ArrayList<PhaseMetrics>(list);
+    }
+
+    /**
+     * writes the reports of all test classes with recorded metrics
+     */
+    public static synchronized void writeAll() {
+        final File dir = new File(System.getProperty(REPORT_DIR_PROPERTY,
+                "target/xtext-testing-reports"));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            LOGGER.warn("could not create report directory " + dir);
+            return;
+        }
+        for (final Map.Entry<String, List<PhaseMetrics>> entry : METRICS
+                .entrySet()) {
+            final File file = new File(dir, entry.getKey() + ".json");
+            try {
+                final Writer w = new OutputStreamWriter(
+                        new FileOutputStream(file), "UTF-8");
+                try {
+                    write(w, entry.getKey(), entry.getValue());
+                } finally {
+                    w.close();
+                }
+            } catch (final IOException e) {
+                LOGGER.warn("could not write phase metrics to " + file, e);
+            }
+        }
+    }
+
+    /**
+     * logs the summaries of all test classes with metrics recorded since
+     * their summary was last logged
+     */
+    public static synchronized void logSummaries() {
+        for (final Map.Entry<String, List<PhaseMetrics>> entry : METRICS
+                .entrySet()) {
+            final Integer logged = LOGGED.get(entry.getKey());
+            if (logged == null || logged != entry.getValue().size()) {
+                LOGGER.info(getSummary(entry.getKey()));
+                LOGGED.put(entry.getKey(), entry.getValue().size());
+            }
+        }
+    }
+
+    public static synchronized String getSummary(final String testClass) {
+        final List<PhaseMetrics> metrics = getMetrics(testClass);
+        final StringBuilder sb = new StringBuilder(
+                "phase summary of " + testClass + " (" + metrics.size()
+                        + " files):");
+        for (final Step step : Step.values()) {
+            final Summary summary = new Summary(metrics, step);
+            if (summary.count > 0) {
+                sb.append("\n  ").append(step).append(": mean ")
+                        .append(summary.meanWallNanos() / 1000000)
+                        .append("ms, max ")
+                        .append(summary.maxWallNanos / 1000000).append("ms");
+                if (summary.totalAllocatedBytes >= 0) {
+                    sb.append(", mean ")
+                            .append(summary.meanAllocatedBytes() / 1024)
+                            .append("KB, max ")
+                            .append(summary.maxAllocatedBytes / 1024)
+                            .append("KB allocated");
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    static void write(final Writer w, final String testClass,
+            final List<PhaseMetrics> metrics) throws IOException {
+        w.write("{\n  \"testClass\": " + quote(testClass) + ",\n");
+        w.write("  \"tests\": [");
+        final long[] totalWall = new long[Step.values().length];
+        final long[] totalCpu = new long[Step.values().length];
+        final long[] totalAllocated = new long[Step.values().length];
+        String sep = "\n";
+        for (final PhaseMetrics m : metrics) {
+            w.write(sep + "    {\"method\": " + quote(m.getTestMethod())
+                    + ", \"file\": " + quote(m.getFile())
+                    + ", \"phases\": {");
+            String stepSep = "";
+            for (final Step step : Step.values()) {
+                if (m.isMeasured(step)) {
+                    w.write(stepSep);
+                    writeStep(w, step, m.getWallNanos(step),
+                            m.getCpuNanos(step), m.getAllocatedBytes(step));
+                    totalWall[step.ordinal()] += m.getWallNanos(step);
+                    totalCpu[step.ordinal()] += m.getCpuNanos(step);
+                    totalAllocated[step.ordinal()] += m
+                            .getAllocatedBytes(step);
+                    stepSep = ", ";
+                }
+            }
+            w.write("}}");
+            sep = ",\n";
+        }
+        w.write("\n  ],\n  \"totals\": {");
+        String stepSep = "";
+        for (final Step step : Step.values()) {
+            w.write(stepSep);
+            writeStep(w, step, totalWall[step.ordinal()],
+                    totalCpu[step.ordinal()], totalAllocated[step.ordinal()]);
+            stepSep = ", ";
+        }
+        w.write("},\n  \"summary\": {");
+        stepSep = "";
+        for (final Step step : Step.values()) {
+            final Summary summary = new Summary(metrics, step);
+            w.write(stepSep + "\"" + step + "\": {\"files\": " + summary.count
+                    + ", \"meanWallNanos\": " + summary.meanWallNanos()
+                    + ", \"maxWallNanos\": " + summary.maxWallNanos
+                    + ", \"meanAllocatedBytes\": "
+                    + summary.meanAllocatedBytes()
+                    + ", \"maxAllocatedBytes\": " + summary.maxAllocatedBytes
+                    + "}");
+            stepSep = ", ";
+        }
+        w.write("}\n}\n");
+    }
+
+    private static void writeStep(final Writer w, final Step step,
+            final long wallNanos, final long cpuNanos,
+            final long allocatedBytes) throws IOException {
+        w.write("\"" + step + "\": {\"wallNanos\": " + wallNanos
+                + ", \"cpuNanos\": " + Math.max(cpuNanos, -1)
+                + ", \"allocatedBytes\": " + Math.max(allocatedBytes, -1)
+                + "}");
+    }
+
+    /**
+     * one step over all model files it was measured for, allocations are -1
+     * if they can't be measured
+     */
+    private static class Summary {
+
+        int count;
+        long totalWallNanos;
+        long maxWallNanos;
+        long totalAllocatedBytes;
+        long maxAllocatedBytes;
+
+        Summary(final List<PhaseMetrics> metrics, final Step step) {
+            for (final PhaseMetrics m : metrics) {
+                if (m.isMeasured(step)) {
+                    count++;
+                    totalWallNanos += m.getWallNanos(step);
+                    maxWallNanos = Math.max(maxWallNanos, m.getWallNanos(step));
+                    if (m.getAllocatedBytes(step) < 0) {
+                        totalAllocatedBytes = -1;
+                        maxAllocatedBytes = -1;
+                    } else if (totalAllocatedBytes >= 0) {
+                        totalAllocatedBytes += m.getAllocatedBytes(step);
+                        maxAllocatedBytes = Math.max(maxAllocatedBytes,
+                                m.getAllocatedBytes(step));
+                    }
+                }
+            }
+        }
+
+        long meanWallNanos() {
+            return count == 0 ? 0 : totalWallNanos / count;
+        }
+
+        long meanAllocatedBytes() {
+            if (totalAllocatedBytes < 0) {
+                return -1;
+            }
+            return count == 0 ? 0 : totalAllocatedBytes / count;
+        }
+    }
+
+    private static String quote(final String s) {
+        final StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,221 @@
+package com.itemis.xtext.testing;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.runtime.CharStream;
+
+/**
+ * <p>
+ * An ANTLR <code>CharStream</code> reading from a <code>Reader</code> into a
+ * sliding window, so that inputs of any size can be lexed in constant
+ * memory, unlike <code>ANTLRStringStream</code> which needs all characters in
+ * one array.
+ * </p>
+ *
+ * <p>
+ * The window keeps the characters from the position passed to
+ * {@link #discardBefore(int)} or from the oldest mark, whichever is earlier;
+ * {@link #substring(int, int)} and looking back with <code>LA(-i)</code> only
+ * work within it. {@link #size()} is the number of characters read so far.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+final class ReaderCharStream implements CharStream {
+
+    private static final int CHUNK = 8192;
+
+    private final Reader reader;
+    private final String sourceName;
+
+    private char[] buffer = new char[2 * CHUNK];
+    /* absolute index of buffer[0] */
+    private int bufferStart;
+    /* absolute index after the last character read */
+    private int bufferEnd;
+    private boolean eof;
+    /* the characters before it may be dropped */
+    private int discardable;
+
+    private int p;
+    private int line = 1;
+    private int charPositionInLine;
+
+    /* index, line and char position in line of the marks, from 1 */
+    private final List<int[]> markers = new ArrayList<int[]>();
+    private int markDepth;
+    private int lastMarker;
+
+    ReaderCharStream(final Reader reader, final String sourceName) {
+        this.reader = reader;
+        this.sourceName = sourceName;
+        markers.add(null);
+    }
+
+    /**
+     * allows dropping the characters before the index from the window
+     */
+    void discardBefore(final int index) {
+        discardable = Math.max(discardable, index);
+    }
+
+    public void consume() {
+        final int c = LA(1);
+        if (c == EOF) {
+            return;
+        }
+        p++;
+        charPositionInLine++;
+        if (c == '\n') {
+            line++;
+            charPositionInLine = 0;
+        }
+    }
+
+    public int LA(int i) {
+        if (i == 0) {
+            return 0;
+        }
+        if (i < 0) {
+            i++;
+        }
+        final int index = p + i - 1;
+        if (index < bufferStart) {
+            return EOF;
+        }
+        if (!ensure(index)) {
+            return EOF;
+        }
+        return buffer[index - bufferStart];
+    }
+
+    public int LT(final int i) {
+        return LA(i);
+    }
+
+    public int mark() {
+        markDepth++;
+        final int[] state = new int[] { p, line, charPositionInLine };
+        if (markDepth >= markers.size()) {
+            markers.add(state);
+        } else {
+            markers.set(markDepth, state);
+        }
+        lastMarker = markDepth;
+        return markDepth;
+    }
+
+    public void rewind(final int marker) {
+        final int[] state = markers.get(marker);
+        seek(state[0]);
+        line = state[1];
+        charPositionInLine = state[2];
+        release(marker);
+    }
+
+    public void rewind() {
+        rewind(lastMarker);
+    }
+
+    public void release(final int marker) {
+        markDepth = marker - 1;
+    }
+
+    public void seek(final int index) {
+        if (index <= p) {
+            p = index;
+            return;
+        }
+        while (p < index && LA(1) != EOF) {
+            consume();
+        }
+    }
+
+    public int index() {
+        return p;
+    }
+
+    public int size() {
+        return bufferEnd;
+    }
+
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    public String substring(final int start, final int stop) {
+        if (start < bufferStart) {
+            throw new IllegalStateException("characters from " + start
+                    + " are no longer buffered");
+        }
+        ensure(stop);
+        final int end = Math.min(stop + 1, bufferEnd);
+        return new String(buffer, start - bufferStart,
+                Math.max(0, end - start));
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public void setLine(final int line) {
+        this.line = line;
+    }
+
+    public void setCharPositionInLine(final int pos) {
+        charPositionInLine = pos;
+    }
+
+    public int getCharPositionInLine() {
+        return charPositionInLine;
+    }
+
+    /**
+     * reads until the character at the index is buffered, false at the end
+     * of the input
+     */
+    private boolean ensure(final int index) {
+        while (index >= bufferEnd) {
+            if (eof) {
+                return false;
+            }
+            if (bufferEnd - bufferStart > buffer.length - CHUNK) {
+                compact();
+            }
+            try {
+                final int n = reader.read(buffer, bufferEnd - bufferStart,
+                        buffer.length - (bufferEnd - bufferStart));
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    bufferEnd += n;
+                }
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * drops the characters no longer needed, grows the buffer if that isn't
+     * enough
+     */
+    private void compact() {
+        int keep = Math.min(discardable, p);
+        for (int i = 1; i <= markDepth; i++) {
+            keep = Math.min(keep, markers.get(i)[0]);
+        }
+        keep = Math.max(keep, bufferStart);
+        final int length = bufferEnd - keep;
+        final char[] target = length > buffer.length - CHUNK
+                ? new char[buffer.length * 2] : buffer;
+        System.arraycopy(buffer, keep - bufferStart, target, 0, length);
+        buffer = target;
+        bufferStart = keep;
+    }
+}
@@ -0,0 +1,252 @@
+package com.itemis.xtext.testing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.util.InternalEList;
+
+/**
+ * <p>
+ * A JVM wide pool of loaded and fully resolved referenced resources, see
+ * {@link XtextTestBase#reuseReferencedResources()}.
+ * </p>
+ *
+ * <p>
+ * The referenced resources of one <code>testFile</code> call are cached
+ * together, because their cross references were resolved against each
+ * other. Such a set is lent to one test at a time: acquiring it removes it
+ * from the pool, the test adds the resources to its own resource set, and
+ * after the test releasing it removes them from there again. The resources
+ * of the test's resource set they got to refer to meanwhile, e.g. the
+ * <code>java:/</code> resources of the types used by Xbase models, are lent
+ * together with them, so that a pooled entry doesn't keep the resource set
+ * of an earlier test alive. An entry that got to refer to the resource under
+ * test isn't pooled at all.
+ * </p>
+ *
+ * <p>
+ * Entries are keyed by the URIs of the resources, the hashes of their
+ * contents and the injector (i.e. the language) that loaded them; an entry
+ * whose content hashes do not match anymore is discarded. At most
+ * {@value #DEFAULT_MAX_IDLE} entries are kept, or the number given by the
+ * system property {@value #MAX_IDLE_PROPERTY}; the longest idle one is
+ * evicted first.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class ReferencedResourceCache {
+
+    /**
+     * System property with the maximum number of entries kept in the pool.
+     */
+    public static final String MAX_IDLE_PROPERTY = "xtext.testing.referencedResources.maxIdle";
+
+    public static final int DEFAULT_MAX_IDLE = 16;
+
+    private static final ReferencedResourceCache INSTANCE = new ReferencedResourceCache(
+            Integer.getInteger(MAX_IDLE_PROPERTY, DEFAULT_MAX_IDLE));
+
+    private final int maxIdle;
+
+    /* longest idle first */
+    private final LinkedList<Entry> idle = new LinkedList<Entry>();
+
+    private int hits;
+    private int misses;
+    private int invalidations;
+    private int evictions;
+
+    ReferencedResourceCache(final int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    public static ReferencedResourceCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Takes the cached resources with the given URIs out of the pool, or
+     * returns null if there are none matching the content hashes and owner.
+     * Entries with resources whose URIs are already used in the resource set
+     * they are lent to stay in the pool.
+     */
+    synchronized Entry acquire(final List<URI> uris,
+            final List<String> contentHashes, final Object owner,
+            final ResourceSet rs) {
+        for (final Iterator<Entry> it = idle.iterator(); it.hasNext();) {
+            final Entry entry = it.next();
+            if (entry.owner != owner || !entry.uris.equals(uris)) {
+                continue;
+            }
+            if (!entry.contentHashes.equals(contentHashes)) {
+                it.remove();
+                invalidations++;
+                continue;
+            }
+            if (conflicts(entry, rs)) {
+                continue;
+            }
+            it.remove();
+            hits++;
+            return entry;
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Removes the lent resources and the resources of the set they refer to
+     * from the set, and returns them to the pool, unless they refer to the
+     * excluded resource.
+     *
+     * @param excluded
+     *            the resource under test, or null
+     */
+    void release(final Entry entry, final ResourceSet rs,
+            final Resource excluded) {
+        final Set<Resource> closure = referencedResources(entry.resources,
+                rs);
+        if (excluded != null && closure.contains(excluded)) {
+            rs.getResources().removeAll(entry.resources);
+            return;
+        }
+        rs.getResources().removeAll(closure);
+        closure.removeAll(entry.resources);
+        entry.dependencies.clear();
+        entry.dependencies.addAll(closure);
+        synchronized (this) {
+            idle.add(entry);
+            while (idle.size() > maxIdle) {
+                idle.removeFirst();
+                evictions++;
+            }
+        }
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    public synchronized int getInvalidations() {
+        return invalidations;
+    }
+
+    public synchronized int getEvictions() {
+        return evictions;
+    }
+
+    public synchronized void clear() {
+        idle.clear();
+        hits = 0;
+        misses = 0;
+        invalidations = 0;
+        evictions = 0;
+    }
+
+    public synchronized String getStatistics() {
+        return "referenced resource cache: " + hits + " hits, " + misses
+                + " misses (" + invalidations + " invalidated by changes), "
+                + evictions + " evicted";
+    }
+
+    private static boolean conflicts(final Entry entry, final ResourceSet rs) {
+        for (final Resource resource : entry.allResources()) {
+            if (rs.getResource(resource.getURI(), false) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * the resources and all resources of the set they refer to, directly or
+     * indirectly; proxies aren't resolved
+     */
+    private static Set<Resource> referencedResources(
+            final List<Resource> resources, final ResourceSet rs) {
+        final Set<Resource> result = new LinkedHashSet<Resource>(resources);
+        final LinkedList<Resource> pending = new LinkedList<Resource>(
+                resources);
+        while (!pending.isEmpty()) {
+            for (final TreeIterator<EObject> it = pending.removeFirst()
+                    .getAllContents(); it.hasNext();) {
+                final EObject eObject = it.next();
+                for (final EReference reference : eObject.eClass()
+                        .getEAllReferences()) {
+                    if (reference.isContainment() || reference.isContainer()
+                            || reference.isDerived()) {
+                        continue;
+                    }
+                    for (final EObject target : targets(eObject, reference)) {
+                        final Resource resource = target.eResource();
+                        if (!target.eIsProxy() && resource != null
+                                && resource.getResourceSet() == rs
+                                && result.add(resource)) {
+                            pending.add(resource);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<EObject> targets(final EObject eObject,
+            final EReference reference) {
+        final Object value = eObject.eGet(reference, false);
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        if (!reference.isMany()) {
+            return Collections.singletonList((EObject) value);
+        }
+        final List<EObject> result = new ArrayList<EObject>();
+        for (final Iterator<EObject> it = ((InternalEList<EObject>) value)
+                .basicIterator(); it.hasNext();) {
+            result.add(it.next());
+        }
+        return result;
+    }
+
+    static class Entry {
+
+        final List<URI> uris;
+        final List<Resource> resources;
+        final List<String> contentHashes;
+        final Object owner;
+        /* the other resources the resources referred to when released */
+        final List<Resource> dependencies = new ArrayList<Resource>();
+
+        Entry(final List<URI> uris, final List<Resource> resources,
+                final List<String> contentHashes, final Object owner) {
+            this.uris = uris;
+            this.resources = resources;
+            this.contentHashes = contentHashes;
+            this.owner = owner;
+        }
+
+        List<Resource> allResources() {
+            final List<Resource> result = new ArrayList<Resource>(resources);
+            result.addAll(dependencies);
+            return result;
+        }
+    }
+}
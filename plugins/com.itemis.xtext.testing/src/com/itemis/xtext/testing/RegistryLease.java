@@ -0,0 +1,79 @@
+package com.itemis.xtext.testing;
+
+import org.eclipse.xtext.junit4.IRegistryConfigurator;
+
+/**
+ * <p>
+ * Coordinates the global EMF registries between test classes that run at the
+ * same time. The registries are set up by the first class of a language and
+ * restored when the last class sharing that setup is done; classes of another
+ * language wait until then.
+ * </p>
+ *
+ * <p>
+ * The state after the setup is kept as a {@link RegistrySnapshot}, so that
+ * changes a test makes to the registries can be undone before the next test
+ * without setting them up again.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+class RegistryLease {
+
+    private static final Object LOCK = new Object();
+
+    private static IRegistryConfigurator holder;
+    private static int count;
+    private static RegistrySnapshot snapshot;
+
+    private RegistryLease() {
+    }
+
+    static void acquire(final IRegistryConfigurator configurator)
+            throws InterruptedException {
+        synchronized (LOCK) {
+            while (count > 0 && holder != configurator) {
+                LOCK.wait();
+            }
+            if (count == 0) {
+                holder = configurator;
+                configurator.setupRegistry();
+                snapshot = RegistrySnapshot.take();
+            }
+            count++;
+        }
+    }
+
+    static void release(final IRegistryConfigurator configurator) {
+        synchronized (LOCK) {
+            if (holder != configurator || count == 0) {
+                throw new IllegalStateException(
+                        "registry lease is not held by " + configurator);
+            }
+            count--;
+            if (count == 0) {
+                holder = null;
+                snapshot = null;
+                configurator.restoreRegistry();
+                LOCK.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Undoes the changes to the registries since they were set up for the
+     * configurator; returns whether there were any. Only allowed while no
+     * tests run concurrently.
+     */
+    static boolean restoreIfChanged(
+            final IRegistryConfigurator configurator) {
+        synchronized (LOCK) {
+            if (holder != configurator || count == 0) {
+                throw new IllegalStateException(
+                        "registry lease is not held by " + configurator);
+            }
+            return snapshot.restoreIfChanged();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.itemis.xtext.testing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EValidator;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.xtext.resource.IResourceServiceProvider;
+
+/**
+ * <p>
+ * A copy of the global EMF and Xtext registries, the same ones
+ * <code>GlobalRegistries</code> saves, that can tell cheaply whether a test
+ * changed them and only then puts them back.
+ * </p>
+ *
+ * <p>
+ * A package or validator descriptor that was replaced by the package or
+ * validator it describes is not a change, EMF does that on first use.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+final class RegistrySnapshot {
+
+    private final List<Map<Object, Object>> registries;
+    private final List<Map<Object, Object>> copies = new ArrayList<Map<Object, Object>>();
+
+    private RegistrySnapshot(final List<Map<Object, Object>> registries) {
+        this.registries = registries;
+        for (final Map<Object, Object> registry : registries) {
+            copies.add(new HashMap<Object, Object>(registry));
+        }
+    }
+
+    /**
+     * copies the current state of the registries
+     */
+    static RegistrySnapshot take() {
+        return new RegistrySnapshot(globalRegistries());
+    }
+
+    /**
+     * Puts the registries back to the state of the snapshot, if they
+     * changed; returns whether they did.
+     */
+    boolean restoreIfChanged() {
+        boolean changed = false;
+        for (int i = 0; i < registries.size(); i++) {
+            final Map<Object, Object> registry = registries.get(i);
+            final Map<Object, Object> copy = copies.get(i);
+            if (copy.equals(registry)) {
+                continue;
+            }
+            acceptResolvedDescriptors(copy, registry);
+            if (!copy.equals(registry)) {
+                registry.clear();
+                registry.putAll(copy);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * takes the resolved values of descriptors into the copy
+     */
+    private static void acceptResolvedDescriptors(
+            final Map<Object, Object> copy,
+            final Map<Object, Object> registry) {
+        for (final Map.Entry<Object, Object> entry : copy.entrySet()) {
+            final Object value = entry.getValue();
+            final Object current = registry.get(entry.getKey());
+            if (current == value || current == null) {
+                continue;
+            }
+            if (value instanceof EPackage.Descriptor
+                    && ((EPackage.Descriptor) value).getEPackage() == current
+                    || value instanceof EValidator.Descriptor
+                            && ((EValidator.Descriptor) value)
+                                    .getEValidator() == current) {
+                entry.setValue(current);
+            }
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static List<Map<Object, Object>> globalRegistries() {
+        final List<Map<Object, Object>> registries = new ArrayList<Map<Object, Object>>();
+        registries.add((Map) EPackage.Registry.INSTANCE);
+        registries.add((Map) EValidator.Registry.INSTANCE);
+        final Resource.Factory.Registry factories = Resource.Factory.Registry.INSTANCE;
+        registries.add((Map) factories.getProtocolToFactoryMap());
+        registries.add((Map) factories.getExtensionToFactoryMap());
+        registries.add((Map) factories.getContentTypeToFactoryMap());
+        final IResourceServiceProvider.Registry providers = IResourceServiceProvider.Registry.INSTANCE;
+        registries.add((Map) providers.getProtocolToFactoryMap());
+        registries.add((Map) providers.getExtensionToFactoryMap());
+        registries.add((Map) providers.getContentTypeToFactoryMap());
+        return registries;
+    }
+}
@@ -0,0 +1,240 @@
+package com.itemis.xtext.testing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.xtext.resource.persistence.IResourceStorageFacade;
+import org.eclipse.xtext.resource.persistence.StorageAwareResource;
+
+/**
+ * <p>
+ * Binary snapshots of parsed and linked referenced resources, see
+ * {@link XtextTestBase#snapshotReferencedResources()}. A snapshot is written
+ * with the resource storage of Xtext (EMF binary resources) the first time a
+ * referenced model is loaded and read instead of the text by later tests and
+ * later runs.
+ * </p>
+ *
+ * <p>
+ * Snapshots are keyed like the entries of the {@link ResultCache}: by the
+ * contents of all referenced resources of the test and the fingerprint of
+ * the language. They are stored in the directory given by the system
+ * property {@value #DIR_PROPERTY}, by default {@value #DEFAULT_DIR}, and
+ * emptied at the start of a run by {@value #CLEAR_PROPERTY}. Only
+ * languages whose resources are <code>StorageAwareResource</code>s, e.g.
+ * all Xbase languages, can be snapshotted; the others are parsed as usual.
+ * </p>
+ *
+ * <p>
+ * Each snapshot remembers how long parsing and linking the text took, so the
+ * statistics show the startup time saved.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class ResourceSnapshots {
+
+    /**
+     * System property that makes all tests use snapshots.
+     */
+    public static final String ENABLED_PROPERTY = "xtext.testing.snapshots";
+
+    /**
+     * System property with the directory of the snapshots.
+     */
+    public static final String DIR_PROPERTY = "xtext.testing.snapshotDir";
+
+    public static final String DEFAULT_DIR = "target/xtext-testing-snapshots";
+
+    /**
+     * System property that deletes all snapshots before they are first used.
+     */
+    public static final String CLEAR_PROPERTY =
+            "xtext.testing.snapshots.clear";
+
+    private static final Logger LOGGER = Logger
+            .getLogger(ResourceSnapshots.class);
+
+    private static final ResourceSnapshots INSTANCE = new ResourceSnapshots(
+            new File(System.getProperty(DIR_PROPERTY, DEFAULT_DIR)),
+            Boolean.getBoolean(CLEAR_PROPERTY));
+
+    private final File directory;
+    private boolean clearPending;
+
+    private int loaded;
+    private int stored;
+    /* the time of loading the snapshots, and of parsing their texts */
+    private long snapshotNanos;
+    private long textNanos;
+
+    ResourceSnapshots(final File directory, final boolean clear) {
+        this.directory = directory;
+        clearPending = clear;
+    }
+
+    public static ResourceSnapshots getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Loads the resource from the snapshot with the key into the resource
+     * set, or returns null if there is none.
+     */
+    Resource load(final ResourceSet rs, final URI uri, final String key) {
+        final File file = file(key);
+        synchronized (this) {
+            clearIfPending();
+            if (!file.isFile()) {
+                return null;
+            }
+        }
+        final long start = System.nanoTime();
+        final Resource resource = rs.createResource(uri);
+        if (!(resource instanceof StorageAwareResource)
+                || ((StorageAwareResource) resource)
+                        .getResourceStorageFacade() == null) {
+            rs.getResources().remove(resource);
+            return null;
+        }
+        final StorageAwareResource storageAware = (StorageAwareResource) resource;
+        final long nanos;
+        try {
+            final DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            try {
+                nanos = in.readLong();
+                storageAware.loadFromStorage(storageAware
+                        .getResourceStorageFacade()
+                        .createResourceStorageLoadable(in));
+            } finally {
+                in.close();
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("ignoring unreadable snapshot " + file, e);
+            resource.unload();
+            rs.getResources().remove(resource);
+            return null;
+        }
+        synchronized (this) {
+            loaded++;
+            snapshotNanos += System.nanoTime() - start;
+            textNanos += nanos;
+        }
+        return resource;
+    }
+
+    /**
+     * Writes a snapshot of the loaded and linked resource, if its language
+     * supports it.
+     *
+     * @param nanos
+     *            the time it took to parse and link the resource
+     */
+    void store(final Resource resource, final String key, final long nanos) {
+        if (!(resource instanceof StorageAwareResource)) {
+            return;
+        }
+        final IResourceStorageFacade facade = ((StorageAwareResource) resource)
+                .getResourceStorageFacade();
+        if (facade == null) {
+            return;
+        }
+        final File file = file(key);
+        synchronized (this) {
+            clearIfPending();
+        }
+        file.getParentFile().mkdirs();
+        try {
+            final File tmp = File.createTempFile(key, ".tmp",
+                    file.getParentFile());
+            final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeLong(nanos);
+                facade.createResourceStorageWritable(out)
+                        .writeResource((StorageAwareResource) resource);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    tmp.delete();
+                }
+            }
+            synchronized (this) {
+                stored++;
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("can't write snapshot of " + resource.getURI(), e);
+        }
+    }
+
+    /**
+     * deletes all snapshots
+     */
+    public synchronized void clear() {
+        clearPending = false;
+        delete(directory);
+        loaded = 0;
+        stored = 0;
+        snapshotNanos = 0;
+        textNanos = 0;
+    }
+
+    public synchronized int getLoaded() {
+        return loaded;
+    }
+
+    public synchronized int getStored() {
+        return stored;
+    }
+
+    /**
+     * the time parsing and linking the loaded snapshots from their text took
+     * when they were stored, minus the time loading them took
+     */
+    public synchronized long getSavedNanos() {
+        return textNanos - snapshotNanos;
+    }
+
+    public synchronized String getStatistics() {
+        return String.format(
+                "resource snapshots: %d loaded, %d stored; loading took %.1fms"
+                        + " instead of %.1fms from text, %.1fms saved",
+                loaded, stored, snapshotNanos / 1e6, textNanos / 1e6,
+                getSavedNanos() / 1e6);
+    }
+
+    private void clearIfPending() {
+        if (clearPending) {
+            clear();
+        }
+    }
+
+    private File file(final String key) {
+        return new File(new File(directory, key.substring(0, 2)), key);
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,460 @@
+package com.itemis.xtext.testing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.Manifest;
+
+import org.apache.log4j.Logger;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EValidator;
+import org.eclipse.xtext.Grammar;
+import org.eclipse.xtext.GrammarUtil;
+import org.eclipse.xtext.IGrammarAccess;
+import org.eclipse.xtext.diagnostics.Severity;
+import org.eclipse.xtext.formatting.IFormatter;
+import org.eclipse.xtext.formatting2.IFormatter2;
+import org.eclipse.xtext.resource.IResourceServiceProvider;
+import org.eclipse.xtext.serializer.ISerializer;
+import org.eclipse.xtext.util.EmfFormatter;
+import org.eclipse.xtext.validation.CheckType;
+import org.eclipse.xtext.validation.CompositeEValidator;
+import org.eclipse.xtext.validation.Issue;
+
+import com.google.common.collect.MapMaker;
+import com.google.common.io.ByteStreams;
+import com.google.inject.Binding;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+
+/**
+ * <p>
+ * An on-disk cache of the outcome of
+ * {@link XtextTestBase#testFile(String, String...)}, so that unchanged model
+ * files aren't linked, validated and serialized again in every build. It is
+ * enabled by setting the system property {@value #DIR_PROPERTY} to a
+ * directory, and emptied once per JVM if {@value #CLEAR_PROPERTY} is
+ * <code>true</code>.
+ * </p>
+ *
+ * <p>
+ * An entry holds the validation issues of a file whose serialization matched
+ * (or wasn't compared); failing files are always tested again. It is keyed
+ * by the contents of the file and its referenced resources, the settings of
+ * the test and a fingerprint of the language: its grammars, and the bundle
+ * versions and class files of the grammar access, the validators, the
+ * serializer and the formatter.
+ * </p>
+ *
+ * <p>
+ * Changes to other classes the language depends on are not noticed; clear
+ * the cache when in doubt. On a hit the file and its referenced resources
+ * are still loaded and linked, so the model looks the same to the test as
+ * without the cache; only the validation and serialization are skipped.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class ResultCache {
+
+    /**
+     * System property with the directory of the cache, the cache is off if
+     * it is not set.
+     */
+    public static final String DIR_PROPERTY = "xtext.testing.resultCache";
+
+    /**
+     * System property that empties the cache before it is used first.
+     */
+    public static final String CLEAR_PROPERTY = "xtext.testing.resultCache.clear";
+
+    /* changed whenever the format of the entries or the keys changes */
+    private static final int FORMAT = 1;
+
+    private static Logger LOGGER = Logger.getLogger(ResultCache.class);
+
+    private static final ResultCache INSTANCE = new ResultCache(
+            System.getProperty(DIR_PROPERTY),
+            Boolean.getBoolean(CLEAR_PROPERTY));
+
+    /* the language fingerprint per resource service provider */
+    private static final ConcurrentMap<IResourceServiceProvider, String> FINGERPRINTS = new MapMaker()
+            .weakKeys().makeMap();
+
+    private final File directory;
+    private boolean clearPending;
+
+    private int hits;
+    private int misses;
+
+    ResultCache(final String directory, final boolean clear) {
+        this.directory = directory == null || directory.length() == 0 ? null
+                : new File(directory);
+        clearPending = clear;
+    }
+
+    public static ResultCache getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Returns the issues stored for the key, or null if there are none.
+     */
+    List<Issue> get(final String key) {
+        final File file = file(key);
+        synchronized (this) {
+            clearIfPending();
+            if (!file.isFile()) {
+                misses++;
+                return null;
+            }
+        }
+        try {
+            final DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            try {
+                final List<Issue> issues = readIssues(in);
+                synchronized (this) {
+                    hits++;
+                }
+                return issues;
+            } finally {
+                in.close();
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("ignoring unreadable result cache entry " + file, e);
+            synchronized (this) {
+                misses++;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Stores the issues for the key; the file is written next to its final
+     * name and renamed, so concurrent readers never see a partial entry.
+     */
+    void put(final String key, final List<Issue> issues) {
+        final File file = file(key);
+        synchronized (this) {
+            clearIfPending();
+        }
+        file.getParentFile().mkdirs();
+        try {
+            final File tmp = File.createTempFile(key, ".tmp",
+                    file.getParentFile());
+            final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                writeIssues(out, issues);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    tmp.delete();
+                }
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("can't write result cache entry " + file, e);
+        }
+    }
+
+    /**
+     * deletes all entries of the cache
+     */
+    public synchronized void clear() {
+        clearPending = false;
+        if (directory != null) {
+            delete(directory);
+        }
+        hits = 0;
+        misses = 0;
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    public synchronized String getStatistics() {
+        return "result cache " + directory + ": " + hits + " hits, " + misses
+                + " misses";
+    }
+
+    private void clearIfPending() {
+        if (clearPending) {
+            clear();
+        }
+    }
+
+    private File file(final String key) {
+        return new File(new File(directory, key.substring(0, 2)), key);
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Returns the hash of the parts, which are separated so that different
+     * splits don't give the same key.
+     */
+    static String key(final List<String> parts) {
+        final StringBuilder sb = new StringBuilder("format " + FORMAT);
+        for (final String part : parts) {
+            sb.append('\0').append(part);
+        }
+        try {
+            return sha1(sb.toString().getBytes("UTF-8"));
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * the fingerprint of everything of the language that affects the
+     * issues and the serialization of a model, computed once per language
+     */
+    static String fingerprint(final IResourceServiceProvider provider) {
+        String fingerprint = FINGERPRINTS.get(provider);
+        if (fingerprint == null) {
+            fingerprint = computeFingerprint(provider);
+            FINGERPRINTS.put(provider, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    private static String computeFingerprint(
+            final IResourceServiceProvider provider) {
+        final List<String> parts = new ArrayList<String>();
+        final IGrammarAccess grammarAccess = provider
+                .get(IGrammarAccess.class);
+        final Grammar grammar = grammarAccess.getGrammar();
+        final List<Grammar> grammars = new ArrayList<Grammar>();
+        grammars.add(grammar);
+        grammars.addAll(GrammarUtil.allUsedGrammars(grammar));
+        for (final Grammar g : grammars) {
+            parts.add(EmfFormatter.objToStr(g));
+        }
+
+        final Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+        classes.add(grammarAccess.getClass());
+        classes.add(provider.getResourceValidator().getClass());
+        final Injector injector = provider.get(Injector.class);
+        addBoundClass(injector, ISerializer.class, classes);
+        addBoundClass(injector, IFormatter2.class, classes);
+        addBoundClass(injector, IFormatter.class, classes);
+        for (final EPackage ePackage : GrammarUtil
+                .allEPackagesToValidate(grammar)) {
+            final EValidator validator = EValidator.Registry.INSTANCE
+                    .getEValidator(ePackage);
+            if (validator instanceof CompositeEValidator) {
+                for (final CompositeEValidator.EValidatorEqualitySupport support : ((CompositeEValidator) validator)
+                        .getContents()) {
+                    classes.add(support.getDelegate().getClass());
+                }
+            } else if (validator != null) {
+                classes.add(validator.getClass());
+            }
+        }
+        final Set<String> versions = new TreeSet<String>();
+        for (final Class<?> c : classes) {
+            for (Class<?> s = c; s != null && s != Object.class; s = s
+                    .getSuperclass()) {
+                versions.add(version(s));
+            }
+        }
+        parts.addAll(versions);
+        return key(parts);
+    }
+
+    private static void addBoundClass(final Injector injector,
+            final Class<?> type, final Set<Class<?>> classes) {
+        final Binding<?> binding = injector.getExistingBinding(Key.get(type));
+        if (binding != null) {
+            classes.add(binding.getProvider().get().getClass());
+        }
+    }
+
+    /**
+     * the class name, the bundle version of the jar or directory it was
+     * loaded from and the hash of its class file
+     */
+    private static String version(final Class<?> c) {
+        final String path = c.getName().replace('.', '/') + ".class";
+        final ClassLoader loader = c.getClassLoader() != null
+                ? c.getClassLoader() : ClassLoader.getSystemClassLoader();
+        final URL url = loader.getResource(path);
+        if (url == null) {
+            return c.getName();
+        }
+        String bundleVersion = null;
+        String hash = null;
+        try {
+            hash = sha1(read(url));
+            final String location = url.toString();
+            final URL manifestUrl = new URL(
+                    location.substring(0, location.length() - path.length())
+                            + "META-INF/MANIFEST.MF");
+            final InputStream in = manifestUrl.openStream();
+            try {
+                bundleVersion = new Manifest(in).getMainAttributes()
+                        .getValue("Bundle-Version");
+            } finally {
+                in.close();
+            }
+        } catch (final IOException e) {
+            // no manifest, e.g. a class folder of a project
+        }
+        return c.getName() + " " + bundleVersion + " " + hash;
+    }
+
+    private static byte[] read(final URL url) throws IOException {
+        final InputStream in = url.openStream();
+        try {
+            return ByteStreams.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String sha1(final byte[] bytes) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            final StringBuilder sb = new StringBuilder();
+            for (final byte b : digest.digest(bytes)) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void writeIssues(final DataOutputStream out,
+            final List<Issue> issues) throws IOException {
+        out.writeInt(issues.size());
+        for (final Issue issue : issues) {
+            writeString(out, issue.getSeverity() == null ? null
+                    : issue.getSeverity().name());
+            writeString(out, issue.getCode());
+            writeString(out, issue.getMessage());
+            writeString(out,
+                    issue.getType() == null ? null : issue.getType().name());
+            writeString(out, issue.getUriToProblem() == null ? null
+                    : issue.getUriToProblem().toString());
+            writeInteger(out, issue.getLineNumber());
+            writeInteger(out, issue.getColumn());
+            writeInteger(out, issue.getOffset());
+            writeInteger(out, issue.getLength());
+            out.writeBoolean(issue.isSyntaxError());
+            final String[] data = issue.getData();
+            out.writeInt(data == null ? -1 : data.length);
+            if (data != null) {
+                for (final String s : data) {
+                    writeString(out, s);
+                }
+            }
+        }
+    }
+
+    private static List<Issue> readIssues(final DataInputStream in)
+            throws IOException {
+        final int size = in.readInt();
+        final List<Issue> issues = new ArrayList<Issue>(size);
+        for (int i = 0; i < size; i++) {
+            final Issue.IssueImpl issue = new Issue.IssueImpl();
+            final String severity = readString(in);
+            issue.setSeverity(
+                    severity == null ? null : Severity.valueOf(severity));
+            issue.setCode(readString(in));
+            issue.setMessage(readString(in));
+            final String type = readString(in);
+            issue.setType(type == null ? null : CheckType.valueOf(type));
+            final String uri = readString(in);
+            issue.setUriToProblem(uri == null ? null : URI.createURI(uri));
+            issue.setLineNumber(readInteger(in));
+            issue.setColumn(readInteger(in));
+            issue.setOffset(readInteger(in));
+            issue.setLength(readInteger(in));
+            issue.setSyntaxError(in.readBoolean());
+            final int dataLength = in.readInt();
+            if (dataLength >= 0) {
+                final String[] data = new String[dataLength];
+                for (int j = 0; j < dataLength; j++) {
+                    data[j] = readString(in);
+                }
+                issue.setData(data);
+            }
+            issues.add(issue);
+        }
+        return issues;
+    }
+
+    /* strings are written as length and chars, messages may exceed 64KB */
+    private static void writeString(final DataOutputStream out,
+            final String s) throws IOException {
+        out.writeInt(s == null ? -1 : s.length());
+        if (s != null) {
+            out.writeChars(s);
+        }
+    }
+
+    private static String readString(final DataInputStream in)
+            throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = in.readChar();
+        }
+        return new String(chars);
+    }
+
+    private static void writeInteger(final DataOutputStream out,
+            final Integer i) throws IOException {
+        out.writeBoolean(i != null);
+        if (i != null) {
+            out.writeInt(i);
+        }
+    }
+
+    private static Integer readInteger(final DataInputStream in)
+            throws IOException {
+        return in.readBoolean() ? Integer.valueOf(in.readInt()) : null;
+    }
+}
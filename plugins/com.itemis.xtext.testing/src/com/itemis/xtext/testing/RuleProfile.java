@@ -0,0 +1,174 @@
+package com.itemis.xtext.testing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <p>
+ * How much the parser rules of a grammar cost for a corpus of model files,
+ * ranked by their estimated own parse time, see
+ * {@link XtextTestBase#profileParser(String...)}.
+ * </p>
+ *
+ * <p>
+ * The counts come from the node model: every composite node of a rule is one
+ * entry into the rule, its lookahead is the number of tokens the parser
+ * looked at to decide for it. A lookahead above 1 means the parser had to
+ * look further than the next token, through backtracking, syntactic
+ * predicates or a deep LL(*) decision.
+ * </p>
+ *
+ * <p>
+ * The times are estimates: a sample of the texts of each rule is parsed again
+ * with that rule on its own, the mean time minus the fixed cost of a parse
+ * call is multiplied by the number of entries. The own time of a rule is its
+ * time minus the estimated times of the rules it called. Rules the generated
+ * parser has no entry point for can't be parsed on their own and have no
+ * time.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class RuleProfile {
+
+    /**
+     * The profile of one parser rule.
+     */
+    public static class Rule {
+
+        private final String name;
+        long entries;
+        long lookAheadSum;
+        int maxLookAhead;
+        long lookAheadAbove1;
+        long inclusiveNanos;
+        long selfNanos;
+        int samples;
+
+        Rule(final String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * the number of times the rule was entered
+         */
+        public long getEntries() {
+            return entries;
+        }
+
+        public double getMeanLookAhead() {
+            return entries == 0 ? 0 : (double) lookAheadSum / entries;
+        }
+
+        public int getMaxLookAhead() {
+            return maxLookAhead;
+        }
+
+        /**
+         * the number of entries that needed more than one token of lookahead
+         */
+        public long getLookAheadAbove1() {
+            return lookAheadAbove1;
+        }
+
+        /**
+         * the estimated time spent in the rule, including the rules it called
+         */
+        public long getInclusiveNanos() {
+            return inclusiveNanos;
+        }
+
+        /**
+         * the estimated time spent in the rule itself
+         */
+        public long getSelfNanos() {
+            return selfNanos;
+        }
+
+        /**
+         * the number of texts parsed again to estimate the times
+         */
+        public int getSamples() {
+            return samples;
+        }
+    }
+
+    private final List<Rule> rules;
+    private final int files;
+    private final long parseNanos;
+
+    RuleProfile(final List<Rule> rules, final int files,
+            final long parseNanos) {
+        this.rules = new ArrayList<Rule>(rules);
+        Collections.sort(this.rules, new Comparator<Rule>() {
+            public int compare(final Rule a, final Rule b) {
+                return a.selfNanos > b.selfNanos ? -1
+                        : a.selfNanos < b.selfNanos ? 1
+                                : a.name.compareTo(b.name);
+            }
+        });
+        this.files = files;
+        this.parseNanos = parseNanos;
+    }
+
+    /**
+     * the rules, the one with the most own time first
+     */
+    public List<Rule> getRules() {
+        return Collections.unmodifiableList(rules);
+    }
+
+    /**
+     * the profile of the named rule, or null if it wasn't entered
+     */
+    public Rule getRule(final String name) {
+        for (final Rule rule : rules) {
+            if (rule.name.equals(name)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    /**
+     * the time of parsing all files once
+     */
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    @Override
+    public String toString() {
+        return toString(rules.size());
+    }
+
+    /**
+     * the report for the first <code>top</code> rules
+     */
+    public String toString(final int top) {
+        final StringBuilder sb = new StringBuilder(String.format(
+                "parsed %d files in %.1fms%n%-30s %10s %10s %10s %8s %8s %10s",
+                files, parseNanos / 1e6, "rule", "self ms", "incl ms",
+                "entries", "mean la", "max la", "la > 1"));
+        for (int i = 0; i < Math.min(top, rules.size()); i++) {
+            final Rule rule = rules.get(i);
+            sb.append(String.format("%n%-30s %10.2f %10.2f %10d %8.2f %8d %10d",
+                    rule.name, rule.selfNanos / 1e6,
+                    rule.inclusiveNanos / 1e6, rule.entries,
+                    rule.getMeanLookAhead(), rule.maxLookAhead,
+                    rule.lookAheadAbove1));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,144 @@
+package com.itemis.xtext.testing;
+
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+
+/**
+ * <p>
+ * The median times of the pipeline phases for models of increasing size, see
+ * {@link XtextTestBase#assertScaling(double, String, ModelGenerator, int...)}.
+ * </p>
+ *
+ * <p>
+ * The growth exponent of a phase is the slope of the least squares line
+ * through the points <code>(log size, log time)</code>: about 1 for linear,
+ * about 2 for quadratic growth.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+class Scaling {
+
+    static final double DEFAULT_MAX_EXPONENT = 1.5;
+    static final long MIN_MILLIS = 20;
+    /* measured runs per size, the median is used */
+    static final int RUNS = 3;
+
+    private static Logger LOGGER = Logger.getLogger(Scaling.class);
+
+    private final String name;
+    private final int[] sizes;
+    /* per phase and size, -1 if not measured */
+    private final long[][] nanos;
+
+    Scaling(final String name, final int[] sizes) {
+        if (sizes.length < 2) {
+            throw new IllegalArgumentException(
+                    "at least two sizes are needed to fit a curve");
+        }
+        for (int i = 0; i < sizes.length; i++) {
+            if (sizes[i] <= 0 || i > 0 && sizes[i] <= sizes[i - 1]) {
+                throw new IllegalArgumentException(
+                        "sizes must be positive and increasing");
+            }
+        }
+        this.name = name;
+        this.sizes = sizes.clone();
+        nanos = new long[TestPhase.values().length][sizes.length];
+        for (final long[] phase : nanos) {
+            Arrays.fill(phase, -1);
+        }
+    }
+
+    void record(final TestPhase phase, final int sizeIndex,
+            final long medianNanos) {
+        nanos[phase.ordinal()][sizeIndex] = medianNanos;
+    }
+
+    boolean isMeasured(final TestPhase phase) {
+        return nanos[phase.ordinal()][0] >= 0;
+    }
+
+    /**
+     * true if the phase took long enough for the largest model to be judged
+     */
+    boolean isSignificant(final TestPhase phase) {
+        return nanos[phase.ordinal()][sizes.length - 1] >= MIN_MILLIS
+                * 1000000;
+    }
+
+    double exponent(final TestPhase phase) {
+        final long[] times = nanos[phase.ordinal()];
+        double sumX = 0;
+        double sumY = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            sumX += Math.log(sizes[i]);
+            sumY += Math.log(Math.max(times[i], 1));
+        }
+        final double meanX = sumX / sizes.length;
+        final double meanY = sumY / sizes.length;
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            final double dx = Math.log(sizes[i]) - meanX;
+            covariance += dx * (Math.log(Math.max(times[i], 1)) - meanY);
+            variance += dx * dx;
+        }
+        return covariance / variance;
+    }
+
+    void assertExponentAtMost(final double maxExponent) {
+        final StringBuilder failure = new StringBuilder();
+        for (final TestPhase phase : TestPhase.values()) {
+            if (isMeasured(phase) && isSignificant(phase)
+                    && exponent(phase) > maxExponent) {
+                failure.append("\n  " + phase + " grows with exponent "
+                        + format(exponent(phase)) + " > " + maxExponent);
+            }
+        }
+        if (failure.length() > 0) {
+            Assert.fail("scaling of " + name + " is super-linear:" + failure
+                    + "\n" + getTable());
+        }
+        LOGGER.info("scaling of " + name + ":\n" + getTable());
+    }
+
+    /**
+     * the median milliseconds per phase and size, and the exponents
+     */
+    String getTable() {
+        final StringBuilder sb = new StringBuilder(
+                String.format("%12s", "size"));
+        for (final TestPhase phase : TestPhase.values()) {
+            if (isMeasured(phase)) {
+                sb.append(String.format("%12s", phase));
+            }
+        }
+        for (int i = 0; i < sizes.length; i++) {
+            sb.append(String.format("%n%12d", sizes[i]));
+            for (final TestPhase phase : TestPhase.values()) {
+                if (isMeasured(phase)) {
+                    sb.append(String.format("%10.1fms",
+                            nanos[phase.ordinal()][i] / 1e6));
+                }
+            }
+        }
+        sb.append(String.format("%n%12s", "exponent"));
+        for (final TestPhase phase : TestPhase.values()) {
+            if (isMeasured(phase)) {
+                sb.append(String.format("%12s", format(exponent(phase))
+                        + (isSignificant(phase) ? "" : "*")));
+            }
+        }
+        sb.append(String.format("%n(* too fast to judge, below %dms)",
+                MIN_MILLIS));
+        return sb.toString();
+    }
+
+    private static String format(final double exponent) {
+        return String.format("%.2f", exponent);
+    }
+}
@@ -0,0 +1,278 @@
+package com.itemis.xtext.testing;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import org.junit.ComparisonFailure;
+
+/**
+ * <p>
+ * An output stream the serializer writes into, which compares the written
+ * text with the expected text while it is written, instead of building the
+ * complete serialized text first.
+ * </p>
+ *
+ * <p>
+ * Like comparing the trimmed texts, leading and trailing whitespace is
+ * ignored; optionally all newlines are harmonized to Unix style. The stream
+ * stops accepting input shortly after the first difference and
+ * {@link #finish()} reports only a few lines around it.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+class StreamingComparator extends OutputStream {
+
+    private static final int CONTEXT_LINES = 2;
+    private static final int MAX_CONTEXT_CHARS = 500;
+
+    private final String name;
+    private final CharSequence expected;
+    private final boolean normalizeNewlines;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes = ByteBuffer.allocate(8192);
+    private final CharBuffer chars = CharBuffer.allocate(8192);
+
+    /* the next char to compare in expected */
+    private int expectedPos;
+    private boolean actualStarted;
+    private boolean actualAfterCr;
+    private final StringBuilder pendingWhitespace = new StringBuilder();
+
+    /* the position of the first difference in expected, or -1 */
+    private int mismatchPos = -1;
+    /* the actual text starting at the first difference */
+    private final StringBuilder actualTail = new StringBuilder();
+    private int actualTailLines;
+    private boolean aborted;
+
+    StreamingComparator(final String name, final CharSequence expected,
+            final String encoding, final boolean normalizeNewlines) {
+        this.name = name;
+        this.expected = expected;
+        this.normalizeNewlines = normalizeNewlines;
+        decoder = Charset.forName(encoding).newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        while (expectedPos < expected.length()
+                && expected.charAt(expectedPos) <= ' ') {
+            expectedPos++;
+        }
+    }
+
+    /**
+     * true if a difference was found, the rest of the input is then ignored
+     */
+    boolean hasMismatch() {
+        return mismatchPos >= 0;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        if (aborted) {
+            throw new Abort();
+        }
+        while (len > 0) {
+            final int n = Math.min(len, bytes.remaining());
+            bytes.put(b, off, n);
+            off += n;
+            len -= n;
+            decode(false);
+        }
+    }
+
+    /**
+     * Compares the end of the input, must be called after the serializer is
+     * done.
+     *
+     * @throws ComparisonFailure
+     *             if the texts differ
+     */
+    void finish() {
+        if (!hasMismatch()) {
+            try {
+                decode(true);
+                decoder.flush(chars);
+                drain();
+            } catch (final Abort e) {
+                // the difference is reported below
+            }
+        }
+        if (!hasMismatch()) {
+            // the actual text ended, only trailing whitespace may be left
+            final int end = expectedPos;
+            while (expectedPos < expected.length()
+                    && expected.charAt(expectedPos) <= ' ') {
+                expectedPos++;
+            }
+            if (expectedPos < expected.length()) {
+                mismatchPos = end;
+            }
+        }
+        if (hasMismatch()) {
+            throw failure();
+        }
+    }
+
+    private void decode(final boolean endOfInput) throws Abort {
+        bytes.flip();
+        CoderResult result;
+        do {
+            result = decoder.decode(bytes, chars, endOfInput);
+            drain();
+        } while (result.isOverflow());
+        bytes.compact();
+    }
+
+    private void drain() throws Abort {
+        chars.flip();
+        while (chars.hasRemaining()) {
+            accept(chars.get());
+        }
+        chars.clear();
+    }
+
+    private void accept(char c) throws Abort {
+        if (normalizeNewlines) {
+            if (c == '\n' && actualAfterCr) {
+                actualAfterCr = false;
+                return;
+            }
+            actualAfterCr = c == '\r';
+            if (c == '\r') {
+                c = '\n';
+            }
+        }
+        if (hasMismatch()) {
+            collectTail(c);
+            return;
+        }
+        if (c <= ' ') {
+            // only compared if followed by more text, like String#trim
+            if (actualStarted) {
+                pendingWhitespace.append(c);
+            }
+            return;
+        }
+        actualStarted = true;
+        for (int i = 0; i < pendingWhitespace.length(); i++) {
+            compare(pendingWhitespace.charAt(i));
+        }
+        pendingWhitespace.setLength(0);
+        compare(c);
+    }
+
+    private void compare(final char c) throws Abort {
+        if (hasMismatch()) {
+            collectTail(c);
+            return;
+        }
+        final int pos = expectedPos;
+        if (nextExpected() != c) {
+            mismatchPos = pos;
+            collectTail(c);
+        }
+    }
+
+    private int nextExpected() {
+        if (expectedPos >= expected.length()) {
+            return -1;
+        }
+        final char e = expected.charAt(expectedPos++);
+        if (normalizeNewlines && e == '\r') {
+            if (expectedPos < expected.length()
+                    && expected.charAt(expectedPos) == '\n') {
+                expectedPos++;
+            }
+            return '\n';
+        }
+        return e;
+    }
+
+    private void collectTail(final char c) throws Abort {
+        actualTail.append(c);
+        if (c == '\n') {
+            actualTailLines++;
+        }
+        if (actualTailLines > CONTEXT_LINES
+                || actualTail.length() >= MAX_CONTEXT_CHARS) {
+            aborted = true;
+            throw new Abort();
+        }
+    }
+
+    private ComparisonFailure failure() {
+        int line = 1;
+        int column = 1;
+        for (int i = 0; i < mismatchPos; i++) {
+            if (isNewline(i)) {
+                line++;
+                column = 1;
+            } else {
+                column++;
+            }
+        }
+
+        // the text before the difference is the same in both windows
+        int start = mismatchPos;
+        int lines = 0;
+        while (start > 0 && mismatchPos - start < MAX_CONTEXT_CHARS) {
+            if (isNewline(start - 1) && ++lines > CONTEXT_LINES) {
+                break;
+            }
+            start--;
+        }
+        int end = mismatchPos;
+        lines = 0;
+        while (end < expected.length() && end - mismatchPos < MAX_CONTEXT_CHARS
+                && lines <= CONTEXT_LINES) {
+            if (isNewline(end)) {
+                lines++;
+            }
+            end++;
+        }
+        final String prefix = normalize(expected.subSequence(start,
+                mismatchPos));
+        return new ComparisonFailure("serialized model differs from " + name
+                + " at line " + line + ", column " + column,
+                prefix + normalize(expected.subSequence(mismatchPos, end)),
+                prefix + actualTail);
+    }
+
+    private boolean isNewline(final int i) {
+        final char c = expected.charAt(i);
+        return c == '\n' || c == '\r' && (i + 1 == expected.length()
+                || expected.charAt(i + 1) != '\n');
+    }
+
+    private String normalize(final CharSequence s) {
+        final String result = s.toString();
+        return normalizeNewlines ? result.replaceAll("(\r\n|\r)", "\n")
+                : result;
+    }
+
+    /**
+     * thrown at the serializer to stop it once the context after a difference
+     * is collected
+     */
+    private static final class Abort extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        Abort() {
+            super("serialized model differs from the expected text");
+        }
+    }
+}
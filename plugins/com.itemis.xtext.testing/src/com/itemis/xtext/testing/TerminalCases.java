@@ -0,0 +1,73 @@
+package com.itemis.xtext.testing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * A table of lexer checks, run in one pass by
+ * {@link XtextTestBase#testTerminals(TerminalCases)} which reports all
+ * failing cases together, e.g.
+ * </p>
+ *
+ * <pre>
+ * testTerminals(new TerminalCases()
+ *         .add("abc", "ID")
+ *         .add("'x'", "STRING")
+ *         .add("entity", "'entity'")
+ *         .addNot("123", "ID"));
+ * </pre>
+ *
+ * <p>
+ * Expected terminals are written like for
+ * {@link XtextTestBase#testTerminal(String, String...)}: rule names without
+ * the <code>RULE_</code> prefix, keywords in single quotes.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class TerminalCases {
+
+    static class Case {
+        final String input;
+        final String[] terminals;
+        /* the first token must not be of the terminal */
+        final boolean negated;
+
+        Case(final String input, final String[] terminals,
+                final boolean negated) {
+            this.input = input;
+            this.terminals = terminals;
+            this.negated = negated;
+        }
+    }
+
+    private final List<Case> cases = new ArrayList<Case>();
+
+    /**
+     * the input is chopped into exactly the expected terminals
+     */
+    public TerminalCases add(final String input,
+            final String... expectedTerminals) {
+        cases.add(new Case(input, expectedTerminals, false));
+        return this;
+    }
+
+    /**
+     * the first token of the input is not of the terminal
+     */
+    public TerminalCases addNot(final String input,
+            final String unexpectedTerminal) {
+        cases.add(new Case(input, new String[] { unexpectedTerminal }, true));
+        return this;
+    }
+
+    public int size() {
+        return cases.size();
+    }
+
+    List<Case> getCases() {
+        return cases;
+    }
+}
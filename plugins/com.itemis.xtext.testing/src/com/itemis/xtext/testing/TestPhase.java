@@ -0,0 +1,39 @@
+package com.itemis.xtext.testing;
+
+/**
+ * <p>
+ * The phases of the model file pipeline run by
+ * {@link XtextTestBase#testFile(String, String...)}, in execution order.
+ * </p>
+ *
+ * <p>
+ * A test may stop the pipeline after any phase, e.g. a test that only cares
+ * about the grammar does not need to pay for linking, validation and
+ * formatting.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public enum TestPhase {
+
+    /** load the model file and check it for syntax errors */
+    PARSE,
+
+    /** resolve all cross references of the model */
+    LINK,
+
+    /** run all validations ({@link org.eclipse.xtext.validation.CheckMode#ALL}) */
+    VALIDATE,
+
+    /** serialize (and format) the model and compare it to the input file */
+    SERIALIZE;
+
+    /**
+     * returns true if a pipeline that stops after this phase runs the given
+     * phase
+     */
+    public boolean includes(final TestPhase phase) {
+        return compareTo(phase) >= 0;
+    }
+}
@@ -0,0 +1,113 @@
+package com.itemis.xtext.testing;
+
+import java.io.Reader;
+import java.util.Map;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+import org.eclipse.xtext.parser.antlr.Lexer;
+
+/**
+ * <p>
+ * Iterates over the tokens of an input without keeping them, e.g.
+ * </p>
+ *
+ * <pre>
+ * TokenCursor tokens = getTokenCursor(new FileReader("huge.dmodel"));
+ * while (tokens.next()) {
+ *     if (tokens.getType() == ...) { ... tokens.getOffset() ... }
+ * }
+ * </pre>
+ *
+ * <p>
+ * The input is read through a sliding window, so memory use doesn't depend
+ * on its size. Only the text of the current token is available; the lexer
+ * still creates a short-lived token object per token.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class TokenCursor {
+
+    private final Lexer lexer;
+    private final Map<Integer, String> tokenDefs;
+    private final ReaderCharStream stream;
+
+    private int type = Token.INVALID_TOKEN_TYPE;
+    private int offset;
+    private int length;
+    private int line;
+
+    TokenCursor(final Lexer lexer, final Map<Integer, String> tokenDefs,
+            final Reader input) {
+        this.lexer = lexer;
+        this.tokenDefs = tokenDefs;
+        stream = new ReaderCharStream(input, null);
+        lexer.setCharStream(stream);
+    }
+
+    /**
+     * moves to the next token, false at the end of the input
+     */
+    public boolean next() {
+        if (type == Token.EOF) {
+            return false;
+        }
+        stream.discardBefore(stream.index());
+        final Token token = lexer.nextToken();
+        type = token.getType();
+        if (type == Token.EOF) {
+            offset = stream.index();
+            length = 0;
+            return false;
+        }
+        line = token.getLine();
+        if (token instanceof CommonToken) {
+            offset = ((CommonToken) token).getStartIndex();
+            length = ((CommonToken) token).getStopIndex() - offset + 1;
+        } else {
+            // e.g. error tokens created with a text
+            length = token.getText().length();
+            offset = stream.index() - length;
+        }
+        return true;
+    }
+
+    /**
+     * the token type, see the <code>InternalXxxLexer</code> constants
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * the name of the token type, e.g. <code>RULE_ID</code> or
+     * <code>'entity'</code>
+     */
+    public String getTokenDef() {
+        return tokenDefs.get(type);
+    }
+
+    /**
+     * the index of the first character of the token in the input
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * the text of the current token
+     */
+    public String getText() {
+        return stream.substring(offset, offset + length - 1);
+    }
+}
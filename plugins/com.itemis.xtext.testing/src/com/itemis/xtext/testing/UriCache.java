@@ -0,0 +1,534 @@
+package com.itemis.xtext.testing;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.URIConverter;
+import org.eclipse.emf.ecore.resource.URIHandler;
+import org.eclipse.emf.ecore.resource.impl.URIHandlerImpl;
+import org.eclipse.xtext.resource.ClassloaderClasspathUriResolver;
+import org.eclipse.xtext.resource.ClasspathUriUtil;
+import org.eclipse.xtext.resource.XtextResourceSet;
+
+import com.google.common.collect.MapMaker;
+import com.google.common.io.ByteStreams;
+
+/**
+ * <p>
+ * A JVM wide cache of what the test resource sets look up for
+ * <code>classpath:/</code> URIs: the file or jar URI each one resolves to,
+ * the entries of jars and the files below corpus directories, and the
+ * contents of the model files read.
+ * </p>
+ *
+ * <p>
+ * The cache is off unless the system property {@value #MAX_BYTES_PROPERTY}
+ * gives the number of bytes of contents to keep. Then
+ * {@link #install(ResourceSet)} makes a resource set resolve classpath URIs
+ * and read <code>file:</code> and <code>jar:</code> URIs through the cache;
+ * <code>XtextTestBase</code> does that for all resource sets it uses. The
+ * contents are kept, least recently read first out, up to that number of
+ * bytes, and read with the other URI handlers of the resource set.
+ * </p>
+ *
+ * <p>
+ * A cached file, or the jar of a cached entry, is read again when its time
+ * stamp or length changed; writing or deleting it through a resource set
+ * drops it from the cache. Since time stamps are coarse, a file modified
+ * less than {@value #RACY_MILLIS}ms before it is read isn't cached at all,
+ * it could change again without changing its time stamp. Likewise a
+ * directory or jar is listed again when the time stamp of the jar or of any
+ * listed directory changed, e.g. because a test generated files there.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class UriCache {
+
+    /**
+     * System property with the maximum number of bytes of file contents kept.
+     */
+    public static final String MAX_BYTES_PROPERTY = "xtext.testing.uriCache.maxBytes";
+
+    public static final long DEFAULT_MAX_BYTES = 0;
+
+    /*
+     * how long after its last modification a file may still change without
+     * changing its time stamp
+     */
+    static final long RACY_MILLIS = 2000;
+
+    private static final UriCache INSTANCE = new UriCache(
+            Long.getLong(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES));
+
+    private final long maxBytes;
+
+    /* the resolved classpath URIs per class loader */
+    private final ConcurrentMap<ClassLoader, ConcurrentMap<URI, URI>> resolved = new MapMaker()
+            .weakKeys().makeMap();
+    /* the file entries of a jar, and the files below a directory */
+    private final ConcurrentMap<File, Listing> archives = new ConcurrentHashMap<File, Listing>();
+    private final ConcurrentMap<File, Listing> directories = new ConcurrentHashMap<File, Listing>();
+    /* in access order, for evicting the least recently read */
+    private final LinkedHashMap<URI, Content> contents = new LinkedHashMap<URI, Content>(
+            16, 0.75f, true);
+    private long bytes;
+
+    private int resolutions;
+    private int resolutionHits;
+    private int reads;
+    private int readHits;
+    private int evictions;
+
+    UriCache(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static UriCache getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Makes the resource set use the cache, if it is enabled. Only the
+     * classpath URI resolution of Xtext's own resolver is cached, a resource
+     * set with another one keeps it.
+     */
+    public void install(final ResourceSet rs) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (rs instanceof XtextResourceSet) {
+            final XtextResourceSet xrs = (XtextResourceSet) rs;
+            if (xrs.getClasspathUriResolver()
+                    .getClass() == ClassloaderClasspathUriResolver.class) {
+                xrs.setClasspathUriResolver(new CachingResolver());
+            }
+        }
+        final URIConverter converter = rs.getURIConverter();
+        for (final URIHandler handler : converter.getURIHandlers()) {
+            if (handler instanceof CachingURIHandler) {
+                return;
+            }
+        }
+        converter.getURIHandlers().add(0, new CachingURIHandler(converter));
+    }
+
+    /**
+     * Resolves a classpath URI like {@link ClassloaderClasspathUriResolver},
+     * but looks up each URI only once per class loader if the cache is
+     * enabled. Other URIs are returned as they are.
+     *
+     * @param context
+     *            the class loader, a class or an object whose class loader
+     *            is used, or null for the context class loader of the thread
+     */
+    public URI resolve(final Object context, final URI uri) {
+        if (!ClasspathUriUtil.isClasspathUri(uri)) {
+            return uri;
+        }
+        final ClassLoader classLoader = classLoader(context);
+        if (!isEnabled()) {
+            return new ClassloaderClasspathUriResolver().resolve(classLoader,
+                    uri);
+        }
+        ConcurrentMap<URI, URI> uris = resolved.get(classLoader);
+        if (uris == null) {
+            uris = new ConcurrentHashMap<URI, URI>();
+            final ConcurrentMap<URI, URI> existing = resolved
+                    .putIfAbsent(classLoader, uris);
+            if (existing != null) {
+                uris = existing;
+            }
+        }
+        URI result = uris.get(uri);
+        synchronized (this) {
+            resolutions++;
+            if (result != null) {
+                resolutionHits++;
+            }
+        }
+        if (result == null) {
+            // not found throws, and is looked up again next time
+            result = new ClassloaderClasspathUriResolver().resolve(classLoader,
+                    uri);
+            uris.put(uri, result);
+        }
+        return result;
+    }
+
+    /**
+     * the names of all file entries of the jar, sorted; the jar is read again
+     * only if it changed, or always if the cache is disabled
+     */
+    List<String> archiveEntries(final File jar) throws IOException {
+        final File key = jar.getAbsoluteFile();
+        Listing listing = archives.get(key);
+        if (listing == null || !listing.isCurrent() || !isEnabled()) {
+            listing = new Listing();
+            listing.stamp(key);
+            final JarFile jarFile = new JarFile(key);
+            try {
+                for (final Enumeration<JarEntry> it = jarFile.entries(); it
+                        .hasMoreElements();) {
+                    final JarEntry entry = it.nextElement();
+                    if (!entry.isDirectory()) {
+                        listing.files.add(entry.getName());
+                    }
+                }
+            } finally {
+                jarFile.close();
+            }
+            Collections.sort(listing.files);
+            if (isEnabled()) {
+                archives.put(key, listing);
+            }
+        }
+        return Collections.unmodifiableList(listing.files);
+    }
+
+    /**
+     * the paths of all files below the directory relative to it, sorted; the
+     * directory is listed again only if it or one of its subdirectories
+     * changed, or always if the cache is disabled
+     */
+    List<String> directoryFiles(final File dir) {
+        final File key = dir.getAbsoluteFile();
+        Listing listing = directories.get(key);
+        if (listing == null || !listing.isCurrent() || !isEnabled()) {
+            listing = new Listing();
+            listDirectory(key, "", listing);
+            Collections.sort(listing.files);
+            if (isEnabled()) {
+                directories.put(key, listing);
+            }
+        }
+        return Collections.unmodifiableList(listing.files);
+    }
+
+    private static void listDirectory(final File dir, final String prefix,
+            final Listing listing) {
+        // before listing, so that files added meanwhile are noticed later
+        listing.stamp(dir);
+        final File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (final File child : children) {
+            if (child.isDirectory()) {
+                listDirectory(child, prefix + child.getName() + "/", listing);
+            } else {
+                listing.files.add(prefix + child.getName());
+            }
+        }
+    }
+
+    /**
+     * drops everything cached
+     */
+    public synchronized void clear() {
+        resolved.clear();
+        archives.clear();
+        directories.clear();
+        contents.clear();
+        bytes = 0;
+        resolutions = 0;
+        resolutionHits = 0;
+        reads = 0;
+        readHits = 0;
+        evictions = 0;
+    }
+
+    public synchronized int getResolutions() {
+        return resolutions;
+    }
+
+    public synchronized int getResolutionHits() {
+        return resolutionHits;
+    }
+
+    public synchronized int getReads() {
+        return reads;
+    }
+
+    public synchronized int getReadHits() {
+        return readHits;
+    }
+
+    /**
+     * the number of bytes of file contents currently kept
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized String getStatistics() {
+        return String.format(
+                "URI cache: %d of %d classpath resolutions and %d of %d reads"
+                        + " cached, %d evicted, %.1fMB kept",
+                resolutionHits, resolutions, readHits, reads, evictions,
+                bytes / 1048576.0);
+    }
+
+    /**
+     * the cached contents, null if there are none; misses are counted when
+     * the contents are put, so that reads too large to be cached don't count
+     */
+    private Content getContent(final URI uri) {
+        final Content content;
+        synchronized (this) {
+            content = contents.get(uri);
+        }
+        if (content == null) {
+            return null;
+        }
+        final File file = file(uri);
+        if (content.timeStamp != file.lastModified()
+                || content.length != file.length()) {
+            remove(uri);
+            return null;
+        }
+        synchronized (this) {
+            reads++;
+            readHits++;
+        }
+        return content;
+    }
+
+    private synchronized void putContent(final URI uri,
+            final Content content) {
+        if (content.data.length > maxBytes) {
+            return;
+        }
+        reads++;
+        remove(uri);
+        contents.put(uri, content);
+        bytes += content.data.length;
+        for (final Iterator<Content> it = contents.values().iterator(); bytes > maxBytes
+                && it.hasNext();) {
+            bytes -= it.next().data.length;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private synchronized void remove(final URI uri) {
+        final Content content = contents.remove(uri);
+        if (content != null) {
+            bytes -= content.data.length;
+        }
+    }
+
+    /**
+     * the file on disk with the contents of the URI, the jar for a jar entry,
+     * or null if there is none
+     */
+    private static File file(final URI uri) {
+        if (uri.isFile()) {
+            return new File(uri.toFileString());
+        }
+        if (uri.isArchive()) {
+            final String authority = uri.authority();
+            final URI jar = URI.createURI(
+                    authority.substring(0, authority.length() - 1));
+            if (jar.isFile()) {
+                return new File(jar.toFileString());
+            }
+        }
+        return null;
+    }
+
+    private static ClassLoader classLoader(final Object context) {
+        if (context == null) {
+            return Thread.currentThread().getContextClassLoader();
+        }
+        if (context instanceof ClassLoader) {
+            return (ClassLoader) context;
+        }
+        if (context instanceof Class<?>) {
+            return ((Class<?>) context).getClassLoader();
+        }
+        return context.getClass().getClassLoader();
+    }
+
+    /**
+     * The files of a directory tree or a jar, and the time stamps of the
+     * directories or the jar when they were listed.
+     */
+    private static class Listing {
+
+        final List<String> files = new ArrayList<String>();
+        final Map<File, Long> stamps = new HashMap<File, Long>();
+
+        void stamp(final File file) {
+            stamps.put(file, file.lastModified());
+        }
+
+        boolean isCurrent() {
+            for (final Map.Entry<File, Long> stamp : stamps.entrySet()) {
+                if (stamp.getKey().lastModified() != stamp.getValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Content {
+
+        final byte[] data;
+        final long timeStamp;
+        final long length;
+
+        Content(final byte[] data, final long timeStamp, final long length) {
+            this.data = data;
+            this.timeStamp = timeStamp;
+            this.length = length;
+        }
+    }
+
+    private class CachingResolver extends ClassloaderClasspathUriResolver {
+
+        @Override
+        public URI resolve(final Object context, final URI uri) {
+            return UriCache.this.resolve(context, uri);
+        }
+    }
+
+    /**
+     * Serves repeated reads of files and jar entries from memory and answers
+     * whether a jar entry exists from the index of the jar; everything else
+     * goes to the next handler of the URI converter.
+     */
+    private class CachingURIHandler extends URIHandlerImpl {
+
+        private final URIConverter converter;
+
+        CachingURIHandler(final URIConverter converter) {
+            this.converter = converter;
+        }
+
+        @Override
+        public boolean canHandle(final URI uri) {
+            return file(uri) != null;
+        }
+
+        @Override
+        public InputStream createInputStream(final URI uri,
+                final Map<?, ?> options) throws IOException {
+            Content content = getContent(uri);
+            if (content == null) {
+                final File file = file(uri);
+                final long timeStamp = file.lastModified();
+                final long length = file.length();
+                final boolean racy = System.currentTimeMillis()
+                        - timeStamp < RACY_MILLIS;
+                final InputStream in = delegate(uri).createInputStream(uri,
+                        options);
+                if (racy) {
+                    return in;
+                }
+                final byte[] data;
+                try {
+                    data = ByteStreams.toByteArray(in);
+                } finally {
+                    in.close();
+                }
+                content = new Content(data, timeStamp, length);
+                putContent(uri, content);
+            } else if (uri.isFile()) {
+                @SuppressWarnings("unchecked")
+                final Map<Object, Object> response = options == null ? null
+                        : (Map<Object, Object>) options
+                                .get(URIConverter.OPTION_RESPONSE);
+                if (response != null) {
+                    response.put(URIConverter.RESPONSE_TIME_STAMP_PROPERTY,
+                            content.timeStamp);
+                }
+            }
+            return new ByteArrayInputStream(content.data);
+        }
+
+        @Override
+        public OutputStream createOutputStream(final URI uri,
+                final Map<?, ?> options) throws IOException {
+            remove(uri);
+            return delegate(uri).createOutputStream(uri, options);
+        }
+
+        @Override
+        public void delete(final URI uri, final Map<?, ?> options)
+                throws IOException {
+            remove(uri);
+            delegate(uri).delete(uri, options);
+        }
+
+        @Override
+        public boolean exists(final URI uri, final Map<?, ?> options) {
+            if (uri.isArchive()) {
+                try {
+                    final String path = uri.path().substring(1);
+                    return Collections.binarySearch(
+                            archiveEntries(file(uri)), path) >= 0
+                            || delegate(uri).exists(uri, options);
+                } catch (final IOException e) {
+                    return false;
+                }
+            }
+            return delegate(uri).exists(uri, options);
+        }
+
+        @Override
+        public Map<String, ?> getAttributes(final URI uri,
+                final Map<?, ?> options) {
+            return delegate(uri).getAttributes(uri, options);
+        }
+
+        @Override
+        public void setAttributes(final URI uri,
+                final Map<String, ?> attributes, final Map<?, ?> options)
+                throws IOException {
+            remove(uri);
+            delegate(uri).setAttributes(uri, attributes, options);
+        }
+
+        @Override
+        public Map<String, ?> contentDescription(final URI uri,
+                final Map<?, ?> options) throws IOException {
+            return delegate(uri).contentDescription(uri, options);
+        }
+
+        /**
+         * the handler the converter would use without the cache
+         */
+        private URIHandler delegate(final URI uri) {
+            for (final URIHandler h : converter.getURIHandlers()) {
+                if (!(h instanceof CachingURIHandler) && h.canHandle(uri)) {
+                    return h;
+                }
+            }
+            throw new IllegalStateException("no URI handler for " + uri);
+        }
+    }
+}
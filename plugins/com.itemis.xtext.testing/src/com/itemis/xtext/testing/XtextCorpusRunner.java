@@ -0,0 +1,145 @@
+package com.itemis.xtext.testing;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+
+/**
+ * <p>
+ * Runs the {@link XtextTestBase#testFile(String, String...)} pipeline on
+ * every file of the {@link Corpus} directory of the test class as a test
+ * method of its own, named after the file, in addition to the methods
+ * annotated with <code>&#64;Test</code>.
+ * </p>
+ *
+ * <p>
+ * Like any test method the files fail on unasserted issues, and run on a pool
+ * of workers if the class is annotated with {@link ParallelExecution}. The
+ * referenced resources are lent to the files like with
+ * {@link XtextTestBase#reuseReferencedResources()}, so they are loaded about
+ * once per worker thread.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class XtextCorpusRunner extends XtextRunner2 {
+
+    /* computed on the first call from the constructor of the super class */
+    private List<FrameworkMethod> testMethods;
+
+    public XtextCorpusRunner(final Class<?> klass)
+            throws InitializationError {
+        super(klass);
+    }
+
+    @Override
+    protected void collectInitializationErrors(final List<Throwable> errors) {
+        super.collectInitializationErrors(errors);
+        final Class<?> klass = getTestClass().getJavaClass();
+        if (klass.getAnnotation(Corpus.class) == null) {
+            errors.add(new Exception(
+                    "Test class must be annotated with @Corpus"));
+        }
+        if (!XtextTestBase.class.isAssignableFrom(klass)) {
+            errors.add(new Exception(
+                    "Test class must extend " + XtextTestBase.class.getName()));
+        }
+    }
+
+    @Override
+    protected List<FrameworkMethod> computeTestMethods() {
+        if (testMethods == null) {
+            testMethods = new ArrayList<FrameworkMethod>(
+                    super.computeTestMethods());
+            final Corpus corpus = getTestClass().getJavaClass()
+                    .getAnnotation(Corpus.class);
+            if (corpus != null && XtextTestBase.class
+                    .isAssignableFrom(getTestClass().getJavaClass())) {
+                final List<String> references = Arrays
+                        .asList(corpus.references());
+                for (final String file : CorpusFiles.list(
+                        getTestClass().getJavaClass(), getResourceRoot(),
+                        corpus.directory(),
+                        Arrays.asList(corpus.fileExtensions()))) {
+                    if (!references.contains(file)) {
+                        testMethods.add(
+                                new CorpusMethod(file, corpus.references()));
+                    }
+                }
+            }
+        }
+        return testMethods;
+    }
+
+    /**
+     * the resource root set by the constructor of the test class
+     */
+    private String getResourceRoot() {
+        try {
+            return ((XtextTestBase) getTestClass().getOnlyConstructor()
+                    .newInstance()).resourceRoot;
+        } catch (final Exception e) {
+            throw new RuntimeException(
+                    "can't create " + getTestClass().getName(), e);
+        }
+    }
+
+    /**
+     * A test method that tests one file of the corpus.
+     */
+    private static class CorpusMethod extends FrameworkMethod {
+
+        private static final Method TEST_CORPUS_FILE;
+
+        static {
+            try {
+                TEST_CORPUS_FILE = XtextTestBase.class.getDeclaredMethod(
+                        "testCorpusFile", String.class, String[].class);
+            } catch (final NoSuchMethodException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final String file;
+        private final String[] references;
+
+        CorpusMethod(final String file, final String[] references) {
+            super(TEST_CORPUS_FILE);
+            this.file = file;
+            this.references = references;
+        }
+
+        @Override
+        public String getName() {
+            return file;
+        }
+
+        @Override
+        public Object invokeExplosively(final Object target,
+                final Object... params) throws Throwable {
+            ((XtextTestBase) target).testCorpusFile(file, references);
+            return null;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof CorpusMethod
+                    && ((CorpusMethod) obj).file.equals(file);
+        }
+
+        @Override
+        public int hashCode() {
+            return file.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return file;
+        }
+    }
+}
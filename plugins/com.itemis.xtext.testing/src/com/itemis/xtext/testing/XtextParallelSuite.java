@@ -0,0 +1,45 @@
+package com.itemis.xtext.testing;
+
+import org.junit.runner.Runner;
+import org.junit.runners.Suite;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerBuilder;
+
+/**
+ * <p>
+ * A JUnit suite that runs its test classes on a pool of worker threads, e.g.
+ * </p>
+ *
+ * <pre>
+ * &#64;RunWith(XtextParallelSuite.class)
+ * &#64;SuiteClasses({ ModelFileTest.class, ParserTest.class })
+ * &#64;ParallelExecution(threads = 4)
+ * public class AllTests {
+ * }
+ * </pre>
+ *
+ * <p>
+ * Classes run by {@link XtextRunner2} set up the EMF registries once per
+ * class; classes of different languages are serialized, since the registries
+ * are global.
+ * </p>
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class XtextParallelSuite extends Suite {
+
+    public XtextParallelSuite(final Class<?> klass, final RunnerBuilder builder)
+            throws InitializationError {
+        super(klass, builder);
+        final ParallelExecution parallel = klass
+                .getAnnotation(ParallelExecution.class);
+        setScheduler(new ParallelScheduler(ParallelScheduler
+                .threadCount(parallel != null ? parallel.threads() : 0)));
+        for (final Runner runner : getChildren()) {
+            if (runner instanceof XtextRunner2) {
+                ((XtextRunner2) runner).useSharedRegistry();
+            }
+        }
+    }
+}
@@ -1,48 +1,194 @@
 package com.itemis.xtext.testing;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
 import org.eclipse.xtext.junit4.IInjectorProvider;
 import org.eclipse.xtext.junit4.IRegistryConfigurator;
 import org.eclipse.xtext.junit4.XtextRunner;
+import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerScheduler;
 import org.junit.runners.model.Statement;
 
+/**
+ * <p>
+ * Runs Xtext tests with the EMF registries set up for the language of the
+ * test class.
+ * </p>
+ *
+ * <p>
+ * The registries are set up once for the whole class, and test classes of
+ * the same language that run at the same time share them. After each test
+ * method a changed registry is put back to the state after the setup, which
+ * costs a comparison of the registries if nothing changed. If the test class
+ * is annotated with {@link ParallelExecution}, the system property
+ * {@value ParallelScheduler#THREADS_PROPERTY} is greater than 1, or the class
+ * runs in an {@link XtextParallelSuite}, the test methods may run
+ * concurrently and the registries are not checked between them.
+ * </p>
+ *
+ * <p>
+ * Set the system property {@value #REGISTRY_PER_METHOD_PROPERTY} to
+ * <code>true</code> to set up and restore the registries around every test
+ * method instead, for test methods run one at a time. The time spent setting
+ * up the registries, including creating the injector, is logged per class.
+ * </p>
+ */
 public class XtextRunner2 extends XtextRunner {
 
+    /**
+     * System property that makes the registries be set up for every test
+     * method instead of once per class.
+     */
+    public static final String REGISTRY_PER_METHOD_PROPERTY = "xtext.testing.registryPerMethod";
+
+    private static Logger LOGGER = Logger.getLogger(XtextRunner2.class);
+
+    private boolean sharedRegistry = !Boolean
+            .getBoolean(REGISTRY_PER_METHOD_PROPERTY);
+    /* the test methods or the whole class may run on other threads */
+    private boolean concurrent;
+
+    /* the time of setting up and restoring the registries */
+    private final AtomicLong setupNanos = new AtomicLong();
+    private final AtomicInteger setups = new AtomicInteger();
+    private final AtomicInteger restores = new AtomicInteger();
+
     public XtextRunner2(final Class<?> klass) throws InitializationError {
         super(klass);
+        final ParallelExecution parallel = klass
+                .getAnnotation(ParallelExecution.class);
+        final int threads = parallel != null
+                ? ParallelScheduler.threadCount(parallel.threads())
+                : Integer.getInteger(ParallelScheduler.THREADS_PROPERTY, 1);
+        if (threads > 1) {
+            setScheduler(new ParallelScheduler(threads));
+        }
     }
 
     @Override
-    protected Statement methodBlock(final FrameworkMethod method) {
-        final IInjectorProvider injectorProvider = getOrCreateInjectorProvider();
-        if (injectorProvider instanceof IRegistryConfigurator) {
-
-            final Statement methodBlock = super.methodBlock(method);
+    public void setScheduler(final RunnerScheduler scheduler) {
+        super.setScheduler(scheduler);
+        if (scheduler instanceof ParallelScheduler) {
+            sharedRegistry = true;
+            concurrent = true;
+        }
+    }
 
-            final IRegistryConfigurator registryConfigurator = (IRegistryConfigurator) injectorProvider;
-            registryConfigurator.setupRegistry();
+    /**
+     * Sets up the registries once for the class, so that the class may run
+     * concurrently with other classes.
+     */
+    void useSharedRegistry() {
+        sharedRegistry = true;
+        concurrent = true;
+    }
 
-            // ATU: move this line up because super.methodBlock(method) will
-            // call
-            // <DSL>InjectorProvider.getInjector(),
-            // and because <DSL>InjectorProvider.setupRegistry() should be
-            // called afterwards.
-            //
-            // final Statement methodBlock = super.methodBlock(method);
+    @Override
+    protected Statement classBlock(final RunNotifier notifier) {
+        final Statement classBlock = super.classBlock(notifier);
+        final IInjectorProvider injectorProvider = getOrCreateInjectorProvider();
+        if (!(injectorProvider instanceof IRegistryConfigurator)) {
+            return classBlock;
+        }
+        final IRegistryConfigurator registryConfigurator = (IRegistryConfigurator) injectorProvider;
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                if (!sharedRegistry) {
+                    // creating the injector is part of the setup, like
+                    // below
+                    final long start = System.nanoTime();
+                    injectorProvider.getInjector();
+                    setupNanos.addAndGet(System.nanoTime() - start);
+                    try {
+                        classBlock.evaluate();
+                    } finally {
+                        logSetupTime();
+                    }
+                    return;
+                }
+                final long start = System.nanoTime();
+                RegistryLease.acquire(registryConfigurator);
+                setupNanos.addAndGet(System.nanoTime() - start);
+                setups.incrementAndGet();
+                try {
+                    classBlock.evaluate();
+                } finally {
+                    RegistryLease.release(registryConfigurator);
+                    logSetupTime();
+                }
+            }
+        };
+    }
 
+    @Override
+    protected Statement methodBlock(final FrameworkMethod method) {
+        final IInjectorProvider injectorProvider = getOrCreateInjectorProvider();
+        if (!(injectorProvider instanceof IRegistryConfigurator)) {
+            return super.methodBlock(method);
+        }
+        final IRegistryConfigurator registryConfigurator = (IRegistryConfigurator) injectorProvider;
+        if (sharedRegistry) {
+            // the registries are set up by #classBlock
+            final Statement methodBlock = superMethodBlock(method);
+            if (concurrent) {
+                return methodBlock;
+            }
             return new Statement() {
                 @Override
                 public void evaluate() throws Throwable {
                     try {
                         methodBlock.evaluate();
                     } finally {
-                        registryConfigurator.restoreRegistry();
+                        final long start = System.nanoTime();
+                        if (RegistryLease
+                                .restoreIfChanged(registryConfigurator)) {
+                            restores.incrementAndGet();
+                        }
+                        setupNanos.addAndGet(System.nanoTime() - start);
                     }
                 }
             };
-        } else {
-            return super.methodBlock(method);
         }
+
+        final Statement methodBlock = super.methodBlock(method);
+
+        final long setupStart = System.nanoTime();
+        registryConfigurator.setupRegistry();
+        setupNanos.addAndGet(System.nanoTime() - setupStart);
+        setups.incrementAndGet();
+
+        // ATU: move this line up because super.methodBlock(method) will
+        // call
+        // <DSL>InjectorProvider.getInjector(),
+        // and because <DSL>InjectorProvider.setupRegistry() should be
+        // called afterwards.
+        //
+        // final Statement methodBlock = super.methodBlock(method);
+
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                try {
+                    methodBlock.evaluate();
+                } finally {
+                    final long start = System.nanoTime();
+                    registryConfigurator.restoreRegistry();
+                    setupNanos.addAndGet(System.nanoTime() - start);
+                }
+            }
+        };
+    }
+
+    private void logSetupTime() {
+        LOGGER.info(String.format(
+                "registry setup of %s: %d setups, %d restores after tests,"
+                        + " %.1fms",
+                getTestClass().getName(), setups.get(), restores.get(),
+                setupNanos.get() / 1e6));
     }
 }
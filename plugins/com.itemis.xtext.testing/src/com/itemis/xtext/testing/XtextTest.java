@@ -1,5 +1,6 @@
 package com.itemis.xtext.testing;
 
+import org.apache.log4j.Logger;
 import org.eclipse.emf.mwe.utils.StandaloneSetup;
 import org.junit.BeforeClass;
 
@@ -24,6 +25,11 @@ import org.junit.BeforeClass;
  */
 public abstract class XtextTest extends XtextTestBase {
 
+    private static Logger LOGGER = Logger.getLogger(XtextTest.class);
+
+    /* the platform URI map is global, so the file system is scanned once */
+    private static boolean platformUriSet;
+
     public XtextTest() {
         super();
     }
@@ -33,8 +39,15 @@ public abstract class XtextTest extends XtextTestBase {
     }
 
     @BeforeClass
-    public static void init_internal() {
+    public static synchronized void init_internal() {
+        if (platformUriSet) {
+            return;
+        }
+        final long start = System.nanoTime();
         new StandaloneSetup().setPlatformUri("..");
+        platformUriSet = true;
+        LOGGER.info(String.format("scanned the platform URIs in %.1fms",
+                (System.nanoTime() - start) / 1e6));
     }
 
 }
@@ -7,12 +7,23 @@ import static org.junit.Assert.fail;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.CharStream;
@@ -25,8 +36,8 @@ import org.eclipse.emf.ecore.InternalEObject;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.ResourceSet;
 import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.xtext.AbstractRule;
 import org.eclipse.xtext.EcoreUtil2;
-import org.eclipse.xtext.GrammarUtil;
 import org.eclipse.xtext.IGrammarAccess;
 import org.eclipse.xtext.ParserRule;
 import org.eclipse.xtext.nodemodel.INode;
@@ -36,20 +47,24 @@ import org.eclipse.xtext.parser.IParser;
 import org.eclipse.xtext.parser.antlr.ITokenDefProvider;
 import org.eclipse.xtext.parser.antlr.Lexer;
 import org.eclipse.xtext.parser.antlr.XtextTokenStream;
+import org.eclipse.xtext.resource.FileExtensionProvider;
 import org.eclipse.xtext.resource.IResourceServiceProvider;
-import org.eclipse.xtext.resource.SaveOptions;
-import org.eclipse.xtext.resource.SaveOptions.Builder;
 import org.eclipse.xtext.util.EmfFormatter;
 import org.eclipse.xtext.util.Pair;
 import org.eclipse.xtext.util.Tuples;
-import org.eclipse.xtext.validation.CheckMode;
 import org.eclipse.xtext.validation.Issue;
 import org.junit.After;
+import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.Before;
 
 import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
 import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Provider;
+import com.itemis.xtext.testing.PhaseMetrics.Step;
+import com.itemis.xtext.testing.PhaseMetrics.Stopwatch;
 
 /**
  * <p>
@@ -76,22 +91,46 @@ public abstract class XtextTestBase {
 
     /* STATE for #testFile. TO BE initialized in #before */
     protected FluentIssueCollection issues;
-    private Set<Issue> assertedIssues;
     private boolean compareSerializedModelToInputFile;
-    private boolean invokeSerializer;
+    private TestPhase lastPhase;
+    private PhaseMetrics metrics;
+    /* the metrics of the running #testFile or #loadModel */
+    private PhaseMetrics recording;
+    private boolean reuseReferencedResources;
+    private boolean snapshotReferencedResources;
+    private List<ReferencedResourceCache.Entry> borrowedResources;
     private boolean formatOnSerialize;
     private boolean failOnParserWarnings;
     private boolean ignoreOsSpecificNewline;
     private EObject rootElement;
+    /* the name metrics are recorded under, null for the running method */
+    private String testMethodName;
     /* END STATE for #testFile */
 
     private static Logger LOGGER = Logger.getLogger(XtextTestBase.class);
 
+    /* the number of rules of a parser profile that are logged */
+    private static final int PROFILE_LOGGED_RULES = 20;
+
+    /*
+     * per thread read buffers for the file under test, kept until the
+     * comparison, and for referenced files
+     */
+    private static final ThreadLocal<ContentBuffer> MODEL_BUFFER = new ThreadLocal<ContentBuffer>();
+    private static final ThreadLocal<ContentBuffer> REFERENCE_BUFFER = new ThreadLocal<ContentBuffer>();
+    /* per thread read buffers for the referenced files of #testFile */
+    private static final ThreadLocal<List<ContentBuffer>> REFERENCE_BUFFERS = new ThreadLocal<List<ContentBuffer>>();
+    /* the number of buffers for referenced files kept between tests */
+    private static final int MAX_REFERENCE_BUFFERS = 8;
+
     @Inject
     protected ResourceSet resourceSet;
 
     @Inject
-    private IResourceServiceProvider.Registry serviceProviderRegistry;
+    private ModelPipeline pipeline;
+
+    @Inject
+    private Provider<ResourceSet> resourceSetProvider;
 
     @Inject
     private IGrammarAccess grammar;
@@ -99,12 +138,24 @@ public abstract class XtextTestBase {
     @Inject
     private IParser parser;
 
+    @Inject
+    private Provider<IParser> parserProvider;
+
     @Inject
     private Lexer lexer;
 
     @Inject
     private ITokenDefProvider tokenDefProvider;
 
+    @Inject
+    private Provider<ParserFuzzer> parserFuzzerProvider;
+
+    @Inject
+    private Injector injector;
+
+    @Inject
+    private FileExtensionProvider fileExtensionProvider;
+
     public XtextTestBase() {
         this("/");
     }
@@ -135,12 +186,18 @@ public abstract class XtextTestBase {
 
     @Before
     public final void _before() {
+        UriCache.getInstance().install(resourceSet);
         issues = null;
-        assertedIssues = new HashSet<Issue>();
-        invokeSerializer = true;
+        lastPhase = TestPhase.SERIALIZE;
+        metrics = null;
+        reuseReferencedResources = false;
+        snapshotReferencedResources = Boolean
+                .getBoolean(ResourceSnapshots.ENABLED_PROPERTY);
+        borrowedResources = new ArrayList<ReferencedResourceCache.Entry>();
         compareSerializedModelToInputFile = true;
         formatOnSerialize = true;
         failOnParserWarnings = true;
+        testMethodName = null;
     }
 
     private void ensureIsBeforeTestFile() {
@@ -170,15 +227,53 @@ public abstract class XtextTestBase {
 
     @After
     public void _after() {
+        if (metrics != null) {
+            PhaseMetricsReport.record(metrics);
+        }
+        releaseBorrowedResources();
         if (issues != null) {
-            dumpUnassertedIssues();
-            if (issues.except(assertedIssues).getIssues().size() != 0) {
+            final FluentIssueCollection unasserted = issues.unasserted();
+            if (unasserted.getIssues().size() != 0) {
+                dumpUnassertedIssues(unasserted);
                 Assert.fail("\n\nfound unasserted issues "
-                        + issues.except(assertedIssues).getSummary() + "\n\n");
+                        + unasserted.getSummary() + "\n\n");
             }
         }
     }
 
+    private void releaseBorrowedResources() {
+        final Resource tested = rootElement == null ? null
+                : rootElement.eResource();
+        for (final ReferencedResourceCache.Entry entry : borrowedResources) {
+            ReferencedResourceCache.getInstance().release(entry, resourceSet,
+                    tested);
+        }
+        borrowedResources.clear();
+    }
+
+    @AfterClass
+    public static void _afterClass() {
+        PhaseMetricsReport.writeAll();
+        PhaseMetricsReport.logSummaries();
+        final ReferencedResourceCache cache = ReferencedResourceCache
+                .getInstance();
+        if (cache.getHits() + cache.getMisses() > 0) {
+            LOGGER.info(cache.getStatistics());
+        }
+        final ResultCache resultCache = ResultCache.getInstance();
+        if (resultCache.getHits() + resultCache.getMisses() > 0) {
+            LOGGER.info(resultCache.getStatistics());
+        }
+        final ResourceSnapshots snapshots = ResourceSnapshots.getInstance();
+        if (snapshots.getLoaded() + snapshots.getStored() > 0) {
+            LOGGER.info(snapshots.getStatistics());
+        }
+        final UriCache uriCache = UriCache.getInstance();
+        if (uriCache.getResolutions() + uriCache.getReads() > 0) {
+            LOGGER.info(uriCache.getStatistics());
+        }
+    }
+
     protected EObject getModelRoot() {
         return rootElement;
     }
@@ -187,33 +282,183 @@ public abstract class XtextTestBase {
             final String... referencedResources) {
 
         LOGGER.info("testing " + fileToTest + " in test method "
-                + this.getClass().getSimpleName() + "."
-                + new Throwable().fillInStackTrace().getStackTrace()[1]
-                        .getMethodName());
+                + this.getClass().getSimpleName() + "." + getTestMethodName());
+        if (metrics != null) {
+            PhaseMetricsReport.record(metrics);
+        }
+        metrics = new PhaseMetrics(getClass().getName(), getTestMethodName(),
+                fileToTest);
+        recording = metrics;
+        try {
+            return runTestFile(fileToTest, referencedResources);
+        } finally {
+            recording = null;
+            releaseBuffers();
+        }
+    }
 
-        for (final String referencedResource : referencedResources) {
+    /**
+     * Drops the read buffers of this thread that grew too large for a file,
+     * and the ones for referenced files beyond the usual number.
+     */
+    private static void releaseBuffers() {
+        ContentBuffer.release(MODEL_BUFFER);
+        ContentBuffer.release(REFERENCE_BUFFER);
+        final List<ContentBuffer> buffers = REFERENCE_BUFFERS.get();
+        if (buffers != null) {
+            ContentBuffer.release(buffers, MAX_REFERENCE_BUFFERS);
+        }
+    }
+
+    private FluentIssueCollection runTestFile(final String fileToTest,
+            final String... referencedResources) {
+        final URI uri = URI.createURI(resourceRoot + "/" + fileToTest);
+        final ContentBuffer contents = ContentBuffer
+                .forCurrentThread(MODEL_BUFFER);
+        read(resourceSet, uri, contents);
+        final List<Reference> references = readReferencedResources(
+                referencedResources);
+        final List<String> referenceHashes = hashReferencedResources(
+                references);
+        final String cacheKey = getResultCacheKey(uri, contents,
+                referenceHashes);
+        final List<Issue> cached = cacheKey == null ? null
+                : ResultCache.getInstance().get(cacheKey);
+
+        loadReferencedModels(references, referenceHashes);
+
+        if (cached != null) {
+            LOGGER.info("result of " + fileToTest + " is cached");
+            // loaded and linked as usual, only the checks are skipped
+            final FluentIssueCollection result = new FluentIssueCollection(
+                    loadAndLink(uri, contents), cached,
+                    new ArrayList<String>());
+            result.setPhaseMetrics(metrics);
+            return issues = result;
+        }
+
+        final FluentIssueCollection result = loadAndValidate(uri, contents);
+
+        if (lastPhase.includes(TestPhase.SERIALIZE)) {
+            if (compareSerializedModelToInputFile) {
+                serializeAndCompare(fileToTest);
+            } else {
+                serialize(ByteStreams.nullOutputStream());
+            }
+        }
+
+        LOGGER.info("phase timings for " + metrics);
+
+        if (cacheKey != null) {
+            ResultCache.getInstance().put(cacheKey, result.getIssues());
+        }
+        result.setPhaseMetrics(metrics);
+        return issues = result;
+    }
+
+    /**
+     * Reads the referenced resources, each into its own buffer, if they are
+     * linked against; referenced resources are only needed to resolve cross
+     * references. The contents are read once for hashing and loading.
+     */
+    private List<Reference> readReferencedResources(
+            final String... referencedResources) {
+        final List<Reference> references = new ArrayList<Reference>();
+        if (!lastPhase.includes(TestPhase.LINK)) {
+            return references;
+        }
+        List<ContentBuffer> buffers = REFERENCE_BUFFERS.get();
+        if (buffers == null) {
+            buffers = new ArrayList<ContentBuffer>();
+            REFERENCE_BUFFERS.set(buffers);
+        }
+        for (int i = 0; i < referencedResources.length; i++) {
+            if (buffers.size() == i) {
+                buffers.add(new ContentBuffer());
+            }
             final URI uri = URI
-                    .createURI(resourceRoot + "/" + referencedResource);
-            loadModel(resourceSet, uri, getRootObjectType(uri));
+                    .createURI(resourceRoot + "/" + referencedResources[i]);
+            read(resourceSet, uri, buffers.get(i));
+            references.add(new Reference(uri, buffers.get(i)));
         }
+        return references;
+    }
 
-        final Pair<String, FluentIssueCollection> result = loadAndSaveModule(
-                resourceRoot, fileToTest);
+    /**
+     * Returns the URIs and content hashes of the referenced resources if the
+     * result cache or the snapshots need them, otherwise an empty list.
+     */
+    private List<String> hashReferencedResources(
+            final List<Reference> references) {
+        final List<String> hashes = new ArrayList<String>();
+        if (ResultCache.getInstance().isEnabled()
+                || snapshotReferencedResources) {
+            for (final Reference reference : references) {
+                hashes.add(reference.uri + " " + reference.getHash());
+            }
+        }
+        return hashes;
+    }
 
-        String serialized = result.getFirst();
+    /**
+     * Returns the key of the outcome of #testFile for the file in the
+     * {@link ResultCache}, or null if the cache is off.
+     */
+    private String getResultCacheKey(final URI uri,
+            final ContentBuffer contents,
+            final List<String> referenceHashes) {
+        if (!ResultCache.getInstance().isEnabled()) {
+            return null;
+        }
+        final IResourceServiceProvider provider = pipeline
+                .getResourceServiceProvider(uri);
+        if (provider == null) {
+            return null;
+        }
+        final List<String> parts = new ArrayList<String>();
+        parts.add(ResultCache.fingerprint(provider));
+        parts.add(uri + " " + contents.sha1());
+        parts.addAll(referenceHashes);
+        final Class<? extends EObject> rootType = getRootObjectType(uri);
+        parts.add(lastPhase + " " + compareSerializedModelToInputFile + " "
+                + formatOnSerialize + " " + failOnParserWarnings + " "
+                + ignoreOsSpecificNewline + " "
+                + (rootType == null ? null : rootType.getName()));
+        return ResultCache.key(parts);
+    }
 
-        if (compareSerializedModelToInputFile) {
-            String expected = loadFileContents(resourceRoot, fileToTest);
-            if (ignoreOsSpecificNewline) {
-                expected = expected.replaceAll("(\r\n|\r)", "\n");
-                serialized = serialized.replaceAll("(\r\n|\r)", "\n");
+    /**
+     * The serializer writes directly into a comparator, which stops it at the
+     * first difference to the input file.
+     */
+    private void serializeAndCompare(final String fileToTest) {
+        final Resource r = rootElement.eResource();
+        final StreamingComparator comparator = new StreamingComparator(
+                fileToTest,
+                decode(ContentBuffer.forCurrentThread(MODEL_BUFFER), r),
+                getEncoding(r), ignoreOsSpecificNewline);
+        try {
+            serialize(comparator);
+        } catch (final RuntimeException e) {
+            if (!comparator.hasMismatch()) {
+                throw e;
             }
-            // Remove trailing whitespace, see Bug#320074
-            // todo: Check if the trim really is still necessary!!
-            assertEquals(expected.trim(), serialized.trim());
         }
+        // leading and trailing whitespace is ignored, see Bug#320074
+        // todo: Check if the trim really is still necessary!!
+        final Stopwatch compare = phaseMetrics().start(Step.COMPARE);
+        comparator.finish();
+        compare.stop();
+    }
 
-        return issues = result.getSecond();
+    /**
+     * Runs the {@link #testFile(String, String...)} pipeline, but stops after
+     * the given phase.
+     */
+    protected FluentIssueCollection testFile(final TestPhase lastPhase,
+            final String fileToTest, final String... referencedResources) {
+        stopAfter(lastPhase);
+        return testFile(fileToTest, referencedResources);
     }
 
     protected FluentIssueCollection testFileNoSerializer(
@@ -222,6 +467,397 @@ public abstract class XtextTestBase {
         return testFile(fileToTest, referencedResources);
     }
 
+    /**
+     * Tests all model files of the directory sequentially, see
+     * {@link #testDirectory(int, String, String...)}.
+     */
+    protected CorpusResult testDirectory(final String directory,
+            final String... referencedResources) {
+        return testDirectory(1, directory, referencedResources);
+    }
+
+    /**
+     * <p>
+     * Runs the {@link #testFile(String, String...)} pipeline, as configured
+     * for this test, on every file of the language below the directory,
+     * which is relative to the resource root, and fails with all files that
+     * fail or have unasserted issues. The referenced resources are not tested
+     * themselves.
+     * </p>
+     *
+     * <p>
+     * The files are distributed over a pool of workers sharing the injector,
+     * 0 threads means one per processor. Each file gets a new resource set,
+     * the referenced resources are loaded once per worker and lent to its
+     * files like with {@link #reuseReferencedResources()}, so they must not
+     * be modified by the language. The workers are new instances of the test
+     * class, which needs a public constructor without parameters.
+     * </p>
+     *
+     * <p>
+     * Returns the outcome and timings per file; a summary with the slowest
+     * files is logged.
+     * </p>
+     */
+    protected CorpusResult testDirectory(final int threads,
+            final String directory, final String... referencedResources) {
+        final List<String> files = CorpusFiles.list(getClass(), resourceRoot,
+                directory, fileExtensionProvider.getFileExtensions());
+        for (final String referencedResource : referencedResources) {
+            files.remove(referencedResource);
+        }
+        final CorpusResult.FileResult[] results = new CorpusResult.FileResult[files
+                .size()];
+        final AtomicInteger next = new AtomicInteger();
+        final int workers = Math.min(ParallelScheduler.threadCount(threads),
+                Math.max(1, files.size()));
+        final String methodName = getTestMethodName();
+        final long start = System.nanoTime();
+        if (workers == 1) {
+            newCorpusWorker(methodName).runCorpusFiles(files,
+                    referencedResources, next, results);
+        } else {
+            final ExecutorService executor = Executors.newFixedThreadPool(
+                    workers, new DaemonThreadFactory("xtext-corpus"));
+            try {
+                final List<Future<?>> futures = new ArrayList<Future<?>>();
+                for (int w = 0; w < workers; w++) {
+                    final XtextTestBase worker = newCorpusWorker(methodName);
+                    futures.add(executor.submit(new Runnable() {
+                        public void run() {
+                            worker.runCorpusFiles(files, referencedResources,
+                                    next, results);
+                        }
+                    }));
+                }
+                for (final Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (final ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            } finally {
+                executor.shutdown();
+            }
+        }
+        final CorpusResult result = new CorpusResult(
+                Lists.newArrayList(results), workers,
+                System.nanoTime() - start);
+        LOGGER.info(result);
+
+        final List<CorpusResult.FileResult> failed = result.getFailures();
+        if (!failed.isEmpty()) {
+            final StringBuilder failures = new StringBuilder();
+            for (final CorpusResult.FileResult file : failed) {
+                failures.append("\n  " + file.getFile() + ": "
+                        + file.getFailure());
+            }
+            fail("\n\n" + failed.size() + " of " + files.size()
+                    + " files in " + directory + " failed:" + failures
+                    + "\n\n");
+        }
+        return result;
+    }
+
+    /**
+     * a new instance of the test class, configured like this one, to test
+     * corpus files on another thread
+     */
+    private XtextTestBase newCorpusWorker(final String methodName) {
+        final XtextTestBase worker = newTestInstance();
+        injector.injectMembers(worker);
+        worker._before();
+        worker.resourceRoot = resourceRoot;
+        worker.lastPhase = lastPhase;
+        worker.compareSerializedModelToInputFile = compareSerializedModelToInputFile;
+        worker.formatOnSerialize = formatOnSerialize;
+        worker.failOnParserWarnings = failOnParserWarnings;
+        worker.ignoreOsSpecificNewline = ignoreOsSpecificNewline;
+        worker.reuseReferencedResources = true;
+        worker.snapshotReferencedResources = snapshotReferencedResources;
+        worker.testMethodName = methodName;
+        return worker;
+    }
+
+    /**
+     * a new instance of the test class, created with its public constructor
+     * without parameters
+     */
+    private XtextTestBase newTestInstance() {
+        final String failure = "can't create a corpus worker: "
+                + getClass().getName();
+        try {
+            return getClass().getConstructor().newInstance();
+        } catch (final NoSuchMethodException e) {
+            throw new IllegalStateException(failure
+                    + " has no public constructor without parameters", e);
+        } catch (final InstantiationException e) {
+            throw new IllegalStateException(failure + " is abstract", e);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalStateException(failure + " is not public", e);
+        } catch (final InvocationTargetException e) {
+            throw new IllegalStateException(
+                    failure + ", its constructor threw " + e.getCause(),
+                    e.getCause());
+        }
+    }
+
+    /**
+     * tests the next untested file until there are none left
+     */
+    private void runCorpusFiles(final List<String> files,
+            final String[] referencedResources, final AtomicInteger next,
+            final CorpusResult.FileResult[] results) {
+        for (int i = next.getAndIncrement(); i < files.size(); i = next
+                .getAndIncrement()) {
+            results[i] = runCorpusFile(files.get(i), referencedResources);
+        }
+    }
+
+    /**
+     * runs #testFile on a new resource set and returns its outcome instead of
+     * failing
+     */
+    private CorpusResult.FileResult runCorpusFile(final String file,
+            final String[] referencedResources) {
+        resourceSet = resourceSetProvider.get();
+        UriCache.getInstance().install(resourceSet);
+        issues = null;
+        metrics = null;
+        String failure = null;
+        final long start = System.nanoTime();
+        try {
+            testFile(file, referencedResources);
+            final FluentIssueCollection unasserted = issues.unasserted();
+            if (unasserted.getIssues().size() != 0) {
+                failure = "unasserted issues " + unasserted.getSummary();
+            }
+        } catch (final AssertionError e) {
+            failure = String.valueOf(e.getMessage()).trim();
+        } catch (final RuntimeException e) {
+            failure = e.toString();
+        } finally {
+            releaseBorrowedResources();
+            rootElement = null;
+        }
+        final long nanos = System.nanoTime() - start;
+        if (metrics != null) {
+            PhaseMetricsReport.record(metrics);
+        }
+        return new CorpusResult.FileResult(file, nanos, metrics, failure);
+    }
+
+    /**
+     * Tests one file of a corpus as its own test method, see
+     * {@link XtextCorpusRunner}.
+     */
+    void testCorpusFile(final String file,
+            final String... referencedResources) {
+        testMethodName = file;
+        reuseReferencedResources();
+        testFile(file, referencedResources);
+    }
+
+    /**
+     * Checks that parsing the file stays within the given budget.
+     */
+    protected void assertParsesWithin(final PerformanceBudget budget,
+            final String fileToTest) {
+        assertPhaseWithin(TestPhase.PARSE, budget, fileToTest);
+    }
+
+    /**
+     * Checks that validating the file stays within the given budget. The file
+     * is parsed and linked before each validation, without measuring.
+     */
+    protected void assertValidatesWithin(final PerformanceBudget budget,
+            final String fileToTest, final String... referencedResources) {
+        assertPhaseWithin(TestPhase.VALIDATE, budget, fileToTest,
+                referencedResources);
+    }
+
+    /**
+     * <p>
+     * Checks that the given phase of the {@link #testFile(String, String...)}
+     * pipeline stays within the budget for the file. Each run uses a new
+     * resource set, and only the given phase is measured; the phases before
+     * it and loading the referenced resources are not.
+     * </p>
+     *
+     * <p>
+     * This is independent of <code>testFile</code>, no issues are
+     * collected and the serialized model is not compared.
+     * </p>
+     */
+    protected void assertPhaseWithin(final TestPhase phase,
+            final PerformanceBudget budget, final String fileToTest,
+            final String... referencedResources) {
+        final URI uri = URI.createURI(resourceRoot + "/" + fileToTest);
+        final ContentBuffer contents = new ContentBuffer();
+        try {
+            contents.readFrom(
+                    resourceSet.getURIConverter().createInputStream(uri));
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        final long[] nanos = new long[budget.getIterations()];
+        final long[] allocatedBytes = new long[budget.getIterations()];
+        final long[] phaseNanos = new long[TestPhase.values().length];
+        final long[] phaseBytes = new long[TestPhase.values().length];
+        for (int run = 0; run < budget.getWarmup()
+                + budget.getIterations(); run++) {
+            runPhases(phase, uri, contents, phaseNanos, phaseBytes,
+                    referencedResources);
+            final int i = run - budget.getWarmup();
+            if (i >= 0) {
+                nanos[i] = phaseNanos[phase.ordinal()];
+                allocatedBytes[i] = phaseBytes[phase.ordinal()];
+            }
+        }
+        budget.assertMet(phase.toString().toLowerCase() + " of " + fileToTest,
+                nanos, allocatedBytes);
+    }
+
+    /**
+     * <p>
+     * Checks that the time of each phase of the
+     * {@link #testFile(String, String...)} pipeline grows at most linearly
+     * with the size of the model, see
+     * {@link #assertScaling(double, String, ModelGenerator, int...)}.
+     * </p>
+     *
+     * <p>
+     * A growth exponent up to 1.5 is accepted, to allow for measurement
+     * noise.
+     * </p>
+     */
+    protected void assertLinearScaling(final String fileName,
+            final ModelGenerator generator, final int... sizes) {
+        assertScaling(Scaling.DEFAULT_MAX_EXPONENT, fileName, generator,
+                sizes);
+    }
+
+    /**
+     * a generator of models of the language under test, starting at the first
+     * rule of its grammar
+     */
+    protected GrammarModelGenerator newModelGenerator(final long seed) {
+        return new GrammarModelGenerator(grammar, seed);
+    }
+
+    /**
+     * <p>
+     * Generates a model for each size and runs it through the pipeline up to
+     * the configured last phase (see {@link #stopAfter(TestPhase)}), on a
+     * fresh resource set each time. The median time of each phase is fitted
+     * to <code>time = c * size ^ exponent</code>; the test fails if the
+     * exponent of any phase is above <code>maxExponent</code>.
+     * </p>
+     *
+     * <p>
+     * The file name is used for the URI of the generated models, its
+     * extension selects the language. Phases taking less than 20ms for the
+     * largest model are too fast to be judged and are not checked.
+     * </p>
+     */
+    protected void assertScaling(final double maxExponent,
+            final String fileName, final ModelGenerator generator,
+            final int... sizes) {
+        final URI uri = URI.createURI(resourceRoot + "/" + fileName);
+        final Scaling scaling = new Scaling(fileName, sizes);
+        final long[] phaseNanos = new long[TestPhase.values().length];
+        final long[] phaseBytes = new long[TestPhase.values().length];
+        final long[][] runs = new long[TestPhase.values().length][Scaling.RUNS];
+        for (int i = 0; i < sizes.length; i++) {
+            final ContentBuffer contents = new ContentBuffer();
+            try {
+                contents.write(generator.generate(sizes[i]).toString()
+                        .getBytes(getEncoding(uri)));
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+            // the first run warms up
+            for (int run = -1; run < Scaling.RUNS; run++) {
+                runPhases(lastPhase, uri, contents, phaseNanos, phaseBytes);
+                for (int phase = 0; run >= 0
+                        && phase < phaseNanos.length; phase++) {
+                    runs[phase][run] = phaseNanos[phase];
+                }
+            }
+            for (final TestPhase phase : TestPhase.values()) {
+                if (lastPhase.includes(phase)) {
+                    scaling.record(phase, i,
+                            PerformanceBudget.median(runs[phase.ordinal()]));
+                }
+            }
+        }
+        scaling.assertExponentAtMost(maxExponent);
+    }
+
+    /**
+     * Runs the phases up to the given one on a new resource set, and stores
+     * the time and allocated bytes of each phase at its ordinal. The
+     * referenced resources are loaded first, without measuring.
+     */
+    private void runPhases(final TestPhase lastPhase, final URI uri,
+            final ContentBuffer contents, final long[] nanos,
+            final long[] allocatedBytes,
+            final String... referencedResources) {
+        final ResourceSet rs = resourceSetProvider.get();
+        UriCache.getInstance().install(rs);
+        if (lastPhase.includes(TestPhase.LINK)) {
+            for (final String referencedResource : referencedResources) {
+                final URI refUri = URI
+                        .createURI(resourceRoot + "/" + referencedResource);
+                final Resource ref = rs.getResource(refUri, true);
+                assertNoResourceDiagnostics(ref);
+                pipeline.link(ref);
+            }
+        }
+        Resource r = null;
+        for (final TestPhase step : TestPhase.values()) {
+            if (!lastPhase.includes(step)) {
+                break;
+            }
+            final long startBytes = AllocatedBytes.currentThread();
+            final long start = System.nanoTime();
+            r = runPhase(step, rs, uri, contents, r);
+            nanos[step.ordinal()] = System.nanoTime() - start;
+            allocatedBytes[step.ordinal()] = startBytes < 0 ? -1
+                    : AllocatedBytes.currentThread() - startBytes;
+            if (step == TestPhase.PARSE) {
+                assertNoResourceDiagnostics(r);
+            }
+        }
+    }
+
+    private Resource runPhase(final TestPhase phase, final ResourceSet rs,
+            final URI uri, final ContentBuffer contents, final Resource r) {
+        try {
+            switch (phase) {
+            case PARSE:
+                return pipeline.parse(rs, uri, contents.newInputStream());
+            case LINK:
+                pipeline.link(r);
+                return r;
+            case VALIDATE:
+                pipeline.validate(r);
+                return r;
+            case SERIALIZE:
+                pipeline.serialize(r, ByteStreams.nullOutputStream(),
+                        formatOnSerialize);
+                return r;
+            default:
+                throw new IllegalArgumentException(phase.toString());
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     protected void testParserRule(final String textToParse,
             final String ruleName) {
         testParserRule(textToParse, ruleName, false);
@@ -230,12 +866,7 @@ public abstract class XtextTestBase {
     private List<SyntaxErrorMessage> testParserRule(final String textToParse,
             final String ruleName, final boolean errorsExpected) {
 
-        final ParserRule parserRule = (ParserRule) GrammarUtil
-                .findRuleForName(grammar.getGrammar(), ruleName);
-
-        if (parserRule == null) {
-            fail("\n\nCould not find ParserRule " + ruleName + "\n\n");
-        }
+        final ParserRule parserRule = getParserRule(ruleName);
 
         final IParseResult result = parser.parse(parserRule,
                 new StringReader(textToParse));
@@ -307,8 +938,184 @@ public abstract class XtextTestBase {
         }
     }
 
+    private ParserRule getParserRule(final String ruleName) {
+        final AbstractRule rule = XtextUtils.rule(grammar.getGrammar(),
+                ruleName);
+        if (!(rule instanceof ParserRule)) {
+            fail("\n\nCould not find ParserRule " + ruleName + "\n\n");
+        }
+        return (ParserRule) rule;
+    }
+
     /**
-     * return the list of tokens created by the lexer from the given input
+     * Parses all cases sequentially, see
+     * {@link #testParserRules(ParserRuleCases, int)}.
+     */
+    protected ParseStatistics testParserRules(final ParserRuleCases cases) {
+        return testParserRules(cases, 1);
+    }
+
+    /**
+     * <p>
+     * Parses each text of the cases with its rule and fails with all cases
+     * that have syntax errors. With more than one thread the cases are
+     * distributed over a pool of workers, each with its own parser; 0 means
+     * one per processor.
+     * </p>
+     *
+     * <p>
+     * Returns the parse times per rule, which are also logged.
+     * </p>
+     */
+    protected ParseStatistics testParserRules(final ParserRuleCases cases,
+            final int threads) {
+        final List<ParserRuleCases.Case> all = cases.getCases();
+        final ParserRule[] rules = new ParserRule[all.size()];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = getParserRule(all.get(i).ruleName);
+        }
+        final List<String>[] errors = newErrorLists(all.size());
+        final int workers = Math.min(ParallelScheduler.threadCount(threads),
+                Math.max(1, all.size()));
+        final ParseStatistics statistics = new ParseStatistics();
+        if (workers == 1) {
+            statistics.add(parseCases(parser, all, rules, 0, 1, errors));
+        } else {
+            final ExecutorService executor = Executors.newFixedThreadPool(
+                    workers, new DaemonThreadFactory("xtext-parse"));
+            try {
+                final List<Future<ParseStatistics>> futures = new ArrayList<Future<ParseStatistics>>();
+                for (int w = 0; w < workers; w++) {
+                    final int first = w;
+                    futures.add(executor
+                            .submit(new Callable<ParseStatistics>() {
+                                public ParseStatistics call() {
+                                    return parseCases(parserProvider.get(),
+                                            all, rules, first, workers,
+                                            errors);
+                                }
+                            }));
+                }
+                for (final Future<ParseStatistics> future : futures) {
+                    statistics.add(future.get());
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (final ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            } finally {
+                executor.shutdown();
+            }
+        }
+        LOGGER.info("parse times of " + all.size() + " texts:\n"
+                + statistics);
+
+        final StringBuilder failures = new StringBuilder();
+        int failed = 0;
+        for (int i = 0; i < errors.length; i++) {
+            if (!errors[i].isEmpty()) {
+                final ParserRuleCases.Case c = all.get(i);
+                failures.append("\n  " + c.ruleName + " '" + c.text + "': "
+                        + errors[i]);
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            fail("\n\n" + failed + " of " + all.size()
+                    + " parser rule cases failed:" + failures + "\n\n");
+        }
+        return statistics;
+    }
+
+    /**
+     * parses every <code>step</code>th case from <code>first</code> on
+     */
+    private static ParseStatistics parseCases(final IParser parser,
+            final List<ParserRuleCases.Case> cases, final ParserRule[] rules,
+            final int first, final int step, final List<String>[] errors) {
+        final ParseStatistics statistics = new ParseStatistics();
+        for (int i = first; i < cases.size(); i += step) {
+            final String text = cases.get(i).text;
+            final long start = System.nanoTime();
+            final IParseResult result = parser.parse(rules[i],
+                    new StringReader(text));
+            statistics.record(rules[i].getName(), text.length(),
+                    System.nanoTime() - start);
+            for (final INode err : result.getSyntaxErrors()) {
+                errors[i].add(err.getSyntaxErrorMessage().getMessage());
+            }
+        }
+        return statistics;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static List<String>[] newErrorLists(final int size) {
+        final List<String>[] lists = new List[size];
+        for (int i = 0; i < size; i++) {
+            lists[i] = new ArrayList<String>();
+        }
+        return lists;
+    }
+
+    /**
+     * <p>
+     * Parses the model files and reports per parser rule how often it was
+     * entered, how far the parser looked ahead to decide for it and how much
+     * time it took, ranked by the time spent in the rule itself; the top of
+     * the ranking is logged. See {@link RuleProfile} for how the numbers are
+     * obtained.
+     * </p>
+     */
+    protected RuleProfile profileParser(final String... files) {
+        final List<String> inputs = new ArrayList<String>();
+        for (final String file : files) {
+            inputs.add(loadFileContents(resourceRoot, file));
+        }
+        final RuleProfile profile = new ParserProfiler(parser).profile(inputs);
+        LOGGER.info(profile.toString(PROFILE_LOGGED_RULES));
+        return profile;
+    }
+
+    /**
+     * a parser fuzzer with the default settings, see
+     * {@link #fuzzParser(ParserFuzzer, String...)}
+     */
+    protected ParserFuzzer newParserFuzzer() {
+        return parserFuzzerProvider.get();
+    }
+
+    /**
+     * <p>
+     * Parses mutations of the given model files and fails if any of them is
+     * parsed slower than the limit of the fuzzer or makes the parser throw.
+     * The failing inputs are minimized and saved as reproducers, e.g.
+     * </p>
+     *
+     * <pre>
+     * fuzzParser(newParserFuzzer().millis(500).mutations(1000), "large.dmodel");
+     * </pre>
+     */
+    protected FuzzReport fuzzParser(final ParserFuzzer fuzzer,
+            final String... files) {
+        final Map<String, String> corpus = new LinkedHashMap<String, String>();
+        for (final String file : files) {
+            corpus.put(file, loadFileContents(resourceRoot, file));
+        }
+        if (files.length > 0) {
+            fuzzer.encoding(
+                    getEncoding(URI.createURI(resourceRoot + "/" + files[0])));
+        }
+        final FuzzReport report = fuzzer.fuzz(corpus);
+        if (!report.isClean()) {
+            fail("\n\nParser fuzzing failed: " + report + "\n\n");
+        }
+        return report;
+    }
+
+    /**
+     * return the list of tokens created by the lexer from the given input;
+     * for large inputs use {@link #getTokenCursor(Reader)}
      */
     protected List<Token> getTokens(final String input) {
         final CharStream stream = new ANTLRStringStream(input);
@@ -327,21 +1134,41 @@ public abstract class XtextTestBase {
         return tokenDefProvider.getTokenDefMap().get(token.getType());
     }
 
+    /**
+     * Returns a cursor over the tokens of the input, which keeps neither the
+     * input nor the tokens. It uses the lexer of the test, so only one cursor
+     * can be used at a time.
+     */
+    protected TokenCursor getTokenCursor(final Reader input) {
+        return new TokenCursor(lexer, tokenDefProvider.getTokenDefMap(),
+                input);
+    }
+
     /**
      * check whether an input is chopped into a list of expected token types
      */
     protected void testTerminal(final String input,
             final String... expectedTerminals) {
-        final List<Token> tokens = getTokens(input);
-        assertEquals(input, expectedTerminals.length, tokens.size());
-        for (int i = 0; i < tokens.size(); i++) {
-            final Token token = tokens.get(i);
-            String exp = expectedTerminals[i];
-            if (!exp.startsWith("'")) {
-                exp = "RULE_" + exp;
+        final TokenCursor tokens = getTokenCursor(new StringReader(input));
+        int count = 0;
+        String expectedAtMismatch = null;
+        String actualAtMismatch = null;
+        while (tokens.next()) {
+            if (count < expectedTerminals.length
+                    && expectedAtMismatch == null) {
+                String exp = expectedTerminals[count];
+                if (!exp.startsWith("'")) {
+                    exp = "RULE_" + exp;
+                }
+                if (!exp.equals(tokens.getTokenDef())) {
+                    expectedAtMismatch = exp;
+                    actualAtMismatch = tokens.getTokenDef();
+                }
             }
-            assertEquals(input, exp, getTokenType(token));
+            count++;
         }
+        assertEquals(input, expectedTerminals.length, count);
+        assertEquals(input, expectedAtMismatch, actualAtMismatch);
     }
 
     /**
@@ -349,11 +1176,108 @@ public abstract class XtextTestBase {
      */
     protected void testNotTerminal(final String input,
             final String unexpectedTerminal) {
-        final List<Token> tokens = getTokens(input);
-        final Token token = tokens.get(0);
+        final TokenCursor tokens = getTokenCursor(new StringReader(input));
+        assertTrue(input, tokens.next());
 
         assertFalse(input,
-                getTokenType(token).equals("RULE_" + unexpectedTerminal));
+                tokens.getTokenDef().equals("RULE_" + unexpectedTerminal));
+    }
+
+    /**
+     * Runs a table of terminal checks in one pass and fails with all failing
+     * cases, see {@link TerminalCases}.
+     */
+    protected void testTerminals(final TerminalCases cases) {
+        final StringBuilder failures = new StringBuilder();
+        int failed = 0;
+        for (final TerminalCases.Case c : cases.getCases()) {
+            final List<String> actual = getTokenTypes(c.input,
+                    c.negated ? 1 : Integer.MAX_VALUE);
+            if (c.negated) {
+                if (!actual.isEmpty()
+                        && actual.get(0).equals("RULE_" + c.terminals[0])) {
+                    failures.append("\n  '" + c.input + "' must not be "
+                            + actual.get(0));
+                    failed++;
+                }
+            } else {
+                final List<String> expected = new ArrayList<String>();
+                for (final String terminal : c.terminals) {
+                    expected.add(terminal.startsWith("'") ? terminal
+                            : "RULE_" + terminal);
+                }
+                if (!expected.equals(actual)) {
+                    failures.append("\n  '" + c.input + "' expected "
+                            + expected + " but was " + actual);
+                    failed++;
+                }
+            }
+        }
+        if (failed > 0) {
+            fail("\n\n" + failed + " of " + cases.size()
+                    + " terminal cases failed:" + failures + "\n\n");
+        }
+    }
+
+    /**
+     * the token types of at most <code>max</code> tokens of the input
+     */
+    private List<String> getTokenTypes(final String input, final int max) {
+        final TokenCursor tokens = getTokenCursor(new StringReader(input));
+        final List<String> types = new ArrayList<String>();
+        while (types.size() < max && tokens.next()) {
+            types.add(tokens.getTokenDef());
+        }
+        return types;
+    }
+
+    /**
+     * Lexes the given model files, a warmup pass and a measured one, and
+     * returns the throughput of the lexer per terminal rule.
+     */
+    protected LexerStatistics measureLexer(final String... files) {
+        final List<String> inputs = new ArrayList<String>();
+        for (final String file : files) {
+            inputs.add(loadFileContents(resourceRoot, file));
+        }
+        return measureLexer(inputs);
+    }
+
+    /**
+     * Lexes a generated model of the given size, e.g. of a
+     * {@link #newModelGenerator(long)}, see {@link #measureLexer(String...)}.
+     */
+    protected LexerStatistics measureLexer(final ModelGenerator generator,
+            final int size) {
+        return measureLexer(
+                Collections.singletonList(generator.generate(size).toString()));
+    }
+
+    private LexerStatistics measureLexer(final List<String> inputs) {
+        final Map<Integer, String> tokenDefs = tokenDefProvider
+                .getTokenDefMap();
+        for (final String input : inputs) {
+            lex(input, new LexerStatistics(tokenDefs));
+        }
+        final LexerStatistics statistics = new LexerStatistics(tokenDefs);
+        for (final String input : inputs) {
+            lex(input, statistics);
+        }
+        LOGGER.info(statistics);
+        return statistics;
+    }
+
+    private void lex(final String input, final LexerStatistics statistics) {
+        final TokenCursor tokens = getTokenCursor(new StringReader(input));
+        final long start = System.nanoTime();
+        long before = start;
+        while (tokens.next()) {
+            final long now = System.nanoTime();
+            statistics.record(tokens.getType(), tokens.getLength(),
+                    now - before);
+            before = now;
+        }
+        statistics.finishInput(System.nanoTime() - start);
     }
 
     /**
@@ -380,52 +1304,116 @@ public abstract class XtextTestBase {
     protected String loadFileContents(final String rootPath,
             final String filename) {
         final URI uri = URI.createURI(resourceRoot + "/" + filename);
+        final ContentBuffer contents = new ContentBuffer();
+        read(resourceSet, uri, contents);
         try {
-            final InputStream is = resourceSet.getURIConverter()
-                    .createInputStream(uri);
-            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            int i;
-            while ((i = is.read()) >= 0) {
-                bos.write(i);
-            }
-            is.close();
-            bos.close();
-            return bos.toString();
+            return contents.toString(getEncoding(uri));
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void read(final ResourceSet rs, final URI uri,
+            final ContentBuffer contents) {
+        final Stopwatch load = phaseMetrics().start(Step.LOAD);
+        try {
+            contents.readFrom(rs.getURIConverter().createInputStream(uri));
         } catch (final IOException e) {
             throw new RuntimeException(e);
         }
+        load.stop();
+    }
+
+    private String decode(final ByteArrayOutputStream bytes,
+            final Resource resource) {
+        try {
+            return bytes.toString(getEncoding(resource));
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private String getEncoding(final Resource resource) {
+        return pipeline.getEncoding(resource);
+    }
+
+    private String getEncoding(final URI uri) {
+        return pipeline.getEncoding(uri);
     }
 
     protected Pair<String, FluentIssueCollection> loadAndSaveModule(
             final String rootPath, final String filename) {
-        final URI uri = URI.createURI(resourceRoot + "/" + filename);
-        rootElement = loadModel(resourceSet, uri, getRootObjectType(uri));
-
-        final Resource r = resourceSet.getResource(uri, false);
-        final IResourceServiceProvider provider = serviceProviderRegistry
-                .getResourceServiceProvider(r.getURI());
-        final List<Issue> result = provider.getResourceValidator().validate(r,
-                CheckMode.ALL, null);
+        final FluentIssueCollection result = loadAndValidate(
+                URI.createURI(resourceRoot + "/" + filename));
 
-        if (invokeSerializer) {
+        if (lastPhase.includes(TestPhase.SERIALIZE)) {
             final ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            try {
-                final Builder builder = SaveOptions.newBuilder();
-                if (formatOnSerialize) {
-                    builder.format();
-                }
-                final SaveOptions s = builder.getOptions();
+            serialize(bos);
+            return Tuples.create(decode(bos, rootElement.eResource()), result);
+        } else {
+            return Tuples.create("-not serialized-", result);
+        }
+    }
 
-                rootElement.eResource().save(bos, s.toOptionsMap());
-            } catch (final IOException e) {
-                throw new RuntimeException(e);
-            }
+    /**
+     * Runs the pipeline up to the validation, as far as configured.
+     */
+    private FluentIssueCollection loadAndValidate(final URI uri) {
+        final ContentBuffer contents = ContentBuffer
+                .forCurrentThread(MODEL_BUFFER);
+        read(resourceSet, uri, contents);
+        try {
+            return loadAndValidate(uri, contents);
+        } finally {
+            ContentBuffer.release(MODEL_BUFFER);
+        }
+    }
+
+    private FluentIssueCollection loadAndValidate(final URI uri,
+            final ContentBuffer contents) {
+        final Resource r = loadAndLink(uri, contents);
 
-            return Tuples.create(bos.toString(), new FluentIssueCollection(r,
-                    result, new ArrayList<String>()));
+        final List<Issue> result;
+        if (lastPhase.includes(TestPhase.VALIDATE)) {
+            final Stopwatch validate = phaseMetrics().start(Step.VALIDATE);
+            result = pipeline.validate(r);
+            validate.stop();
         } else {
-            return Tuples.create("-not serialized-", new FluentIssueCollection(
-                    r, result, new ArrayList<String>()));
+            result = new ArrayList<Issue>();
+        }
+
+        return new FluentIssueCollection(r, result, new ArrayList<String>());
+    }
+
+    /**
+     * Runs the pipeline up to the linking, as far as configured.
+     */
+    private Resource loadAndLink(final URI uri, final ContentBuffer contents) {
+        rootElement = parseModel(resourceSet, uri, getRootObjectType(uri),
+                contents);
+
+        final Resource r = rootElement.eResource();
+        if (lastPhase.includes(TestPhase.LINK)) {
+            final Stopwatch resolve = phaseMetrics().start(Step.RESOLVE);
+            pipeline.link(r);
+            resolve.stop();
+            if (lastPhase == TestPhase.LINK) {
+                // no validation will report unresolved cross references
+                assertNoResourceDiagnostics(r);
+            }
+        }
+        return r;
+    }
+
+    private void serialize(final OutputStream out) {
+        final Stopwatch save = phaseMetrics()
+                .start(formatOnSerialize ? Step.FORMAT : Step.SERIALIZE);
+        try {
+            pipeline.serialize(rootElement.eResource(), out, formatOnSerialize);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            save.stop();
         }
     }
 
@@ -440,16 +1428,150 @@ public abstract class XtextTestBase {
         this.resourceRoot = resourceRoot;
     }
 
-    @SuppressWarnings("unchecked")
     protected <T extends EObject> T loadModel(final ResourceSet rs,
             final URI uri, final Class<T> clazz) {
-        final Resource resource = rs.createResource(uri);
+        if (metrics == null) {
+            metrics = new PhaseMetrics(getClass().getName(),
+                    getTestMethodName(), uri.lastSegment());
+        }
+        final PhaseMetrics outer = recording;
+        recording = metrics;
         try {
-            resource.load(null);
+            final ContentBuffer contents = ContentBuffer
+                    .forCurrentThread(REFERENCE_BUFFER);
+            read(rs, uri, contents);
+            return loadModel(rs, uri, clazz, contents);
+        } finally {
+            recording = outer;
+            ContentBuffer.release(REFERENCE_BUFFER);
+        }
+    }
+
+    private <T extends EObject> T loadModel(final ResourceSet rs,
+            final URI uri, final Class<T> clazz, final ContentBuffer contents) {
+        final T o = parseModel(rs, uri, clazz, contents);
+        final Stopwatch resolve = phaseMetrics().start(Step.RESOLVE);
+        pipeline.link(o.eResource());
+        resolve.stop();
+        return o;
+    }
+
+    /**
+     * Loads the referenced resources into the resource set of the test. With
+     * #reuseReferencedResources they are borrowed from the
+     * {@link ReferencedResourceCache} all together, since their cross
+     * references were resolved against each other.
+     */
+    private void loadReferencedModels(final List<Reference> references,
+            final List<String> referenceHashes) {
+        if (!reuseReferencedResources || references.isEmpty()) {
+            for (final Reference reference : references) {
+                loadReference(reference.uri, reference.contents,
+                        referenceHashes);
+            }
+            return;
+        }
+        final List<URI> uris = new ArrayList<URI>();
+        final List<String> hashes = new ArrayList<String>();
+        for (final Reference reference : references) {
+            uris.add(reference.uri);
+            hashes.add(reference.getHash());
+        }
+        final ReferencedResourceCache cache = ReferencedResourceCache
+                .getInstance();
+        ReferencedResourceCache.Entry entry = cache.acquire(uris, hashes,
+                injector, resourceSet);
+        if (entry != null) {
+            resourceSet.getResources().addAll(entry.dependencies);
+            for (final Resource resource : entry.resources) {
+                resourceSet.getResources().add(resource);
+                assertNoResourceDiagnostics(resource);
+                final Class<? extends EObject> clazz = getRootObjectType(
+                        resource.getURI());
+                if (clazz != null) {
+                    assertTrue(
+                            clazz.isInstance(resource.getContents().get(0)));
+                }
+            }
+        } else {
+            final List<Resource> resources = new ArrayList<Resource>();
+            for (final Reference reference : references) {
+                resources.add(loadReference(reference.uri, reference.contents,
+                        referenceHashes));
+            }
+            entry = new ReferencedResourceCache.Entry(uris, resources, hashes,
+                    injector);
+        }
+        borrowedResources.add(entry);
+    }
+
+    /**
+     * Parses and links the referenced model from the read contents, or loads
+     * it from its snapshot, see {@link #snapshotReferencedResources()}.
+     */
+    private Resource loadReference(final URI uri,
+            final ContentBuffer contents,
+            final List<String> referenceHashes) {
+        final IResourceServiceProvider provider = pipeline
+                .getResourceServiceProvider(uri);
+        if (!snapshotReferencedResources || provider == null) {
+            return loadModel(resourceSet, uri, getRootObjectType(uri),
+                    contents).eResource();
+        }
+        final List<String> parts = new ArrayList<String>();
+        parts.add(ResultCache.fingerprint(provider));
+        parts.add(uri.toString());
+        parts.addAll(referenceHashes);
+        final String key = ResultCache.key(parts);
+
+        final ResourceSnapshots snapshots = ResourceSnapshots.getInstance();
+        final Stopwatch load = phaseMetrics().start(Step.LOAD);
+        Resource resource = snapshots.load(resourceSet, uri, key);
+        load.stop();
+        if (resource != null) {
+            final Class<? extends EObject> clazz = getRootObjectType(uri);
+            if (clazz != null) {
+                assertTrue(clazz.isInstance(resource.getContents().get(0)));
+            }
+            return resource;
+        }
+        final long start = System.nanoTime();
+        resource = loadModel(resourceSet, uri, getRootObjectType(uri),
+                contents).eResource();
+        snapshots.store(resource, key, System.nanoTime() - start);
+        return resource;
+    }
+
+    /**
+     * Loads the model from the already read file contents without resolving
+     * its cross references.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends EObject> T parseModel(final ResourceSet rs,
+            final URI uri, final Class<T> clazz, final ContentBuffer contents) {
+        final Stopwatch load = phaseMetrics().start(Step.LOAD);
+        final Resource resource;
+        try {
+            resource = pipeline.parse(rs, uri, contents.newInputStream());
         } catch (final IOException e) {
             throw new RuntimeException(e);
         }
+        load.stop();
 
+        assertNoResourceDiagnostics(resource);
+
+        assertFalse("Resource has no content",
+                resource.getContents().isEmpty());
+        final EObject o = resource.getContents().get(0);
+        // assure that the root element is of the expected type
+        if (clazz != null) {
+            assertTrue(clazz.isInstance(o));
+        }
+        return (T) o;
+    }
+
+    private void assertNoResourceDiagnostics(final Resource resource) {
+        final URI uri = resource.getURI();
         final StringBuilder errors = new StringBuilder();
         if (!resource.getWarnings().isEmpty()) {
             LOGGER.error("Resource " + uri.toString() + " has warnings:");
@@ -484,16 +1606,6 @@ public abstract class XtextTestBase {
         if (!failMessage.equals("")) {
             fail("\n\n" + failMessage + "\n");
         }
-
-        assertFalse("Resource has no content",
-                resource.getContents().isEmpty());
-        final EObject o = resource.getContents().get(0);
-        // assure that the root element is of the expected type
-        if (clazz != null) {
-            assertTrue(clazz.isInstance(o));
-        }
-        EcoreUtil.resolveAll(resource);
-        return (T) o;
     }
 
     protected void assertAllCrossReferencesResolvable(final EObject obj) {
@@ -517,7 +1629,9 @@ public abstract class XtextTestBase {
     }
 
     protected void resetAssertedIssues() {
-        assertedIssues.clear();
+        if (issues != null) {
+            issues.resetAsserted();
+        }
     }
 
     /**
@@ -537,7 +1651,81 @@ public abstract class XtextTestBase {
         ensureIsBeforeTestFile();
 
         compareSerializedModelToInputFile = false;
-        invokeSerializer = false;
+        if (lastPhase.includes(TestPhase.SERIALIZE)) {
+            lastPhase = TestPhase.VALIDATE;
+        }
+    }
+
+    /**
+     * If called prior to #testFile, the pipeline stops after the given phase.
+     * Issues are only collected if {@link TestPhase#VALIDATE} is run; when
+     * stopping after {@link TestPhase#LINK}, unresolved cross references make
+     * the test fail.
+     */
+    protected void stopAfter(final TestPhase phase) {
+        ensureIsBeforeTestFile();
+
+        lastPhase = phase;
+    }
+
+    /**
+     * Returns the time spent and the bytes allocated in the steps of the last
+     * #testFile, including loading its referenced resources. Models loaded by
+     * calling #loadModel directly are measured as well. Before either,
+     * {@link PhaseMetrics#NONE} is returned.
+     */
+    protected PhaseMetrics getPhaseMetrics() {
+        return metrics != null ? metrics : PhaseMetrics.NONE;
+    }
+
+    /**
+     * the metrics of the running #testFile or #loadModel, otherwise ones that
+     * don't measure, so that reading files for other checks isn't reported
+     */
+    private PhaseMetrics phaseMetrics() {
+        return recording != null ? recording : PhaseMetrics.NONE;
+    }
+
+    /**
+     * the name of the first method on the stack not declared in this class
+     */
+    private String getTestMethodName() {
+        if (testMethodName != null) {
+            return testMethodName;
+        }
+        for (final StackTraceElement e : new Throwable().fillInStackTrace()
+                .getStackTrace()) {
+            if (!e.getClassName().equals(XtextTestBase.class.getName())) {
+                return e.getMethodName();
+            }
+        }
+        return "?";
+    }
+
+    /**
+     * If called prior to #testFile, the referenced resources are taken from a
+     * JVM wide cache of loaded and resolved resources instead of being parsed
+     * again, as long as their content is unchanged. The referenced models
+     * must not be modified by the test.
+     */
+    protected void reuseReferencedResources() {
+        ensureIsBeforeTestFile();
+
+        reuseReferencedResources = true;
+    }
+
+    /**
+     * If called prior to #testFile, the referenced resources are stored as
+     * binary snapshots after they were parsed and linked, and loaded from
+     * these instead of their text by later tests and test runs, as long as
+     * neither they nor the language changed. See {@link ResourceSnapshots},
+     * the system property {@value ResourceSnapshots#ENABLED_PROPERTY} turns
+     * this on for all tests.
+     */
+    protected void snapshotReferencedResources() {
+        ensureIsBeforeTestFile();
+
+        snapshotReferencedResources = true;
     }
 
     /**
@@ -567,8 +1755,7 @@ public abstract class XtextTestBase {
         ensureIsAfterTestFile();
 
         // just treat the warnings left as asserted
-        assertedIssues.addAll(
-                issues.warningsOnly().except(assertedIssues).getIssues());
+        issues.markAsserted(issues.warningsOnly());
     }
 
     /**
@@ -583,7 +1770,7 @@ public abstract class XtextTestBase {
             final String msg) {
         ensureIsAfterTestFile();
 
-        assertedIssues.addAll(coll.getIssues());
+        issues.markAsserted(coll);
         Assert.assertTrue("failed " + msg + coll.getMessageString(),
                 coll.evaluate());
     }
@@ -591,7 +1778,7 @@ public abstract class XtextTestBase {
     protected void assertConstraints(final FluentIssueCollection coll) {
         ensureIsAfterTestFile();
 
-        assertedIssues.addAll(coll.getIssues());
+        issues.markAsserted(coll);
         Assert.assertTrue("<no id> failed" + coll.getMessageString(),
                 coll.evaluate());
     }
@@ -600,25 +1787,46 @@ public abstract class XtextTestBase {
             final FluentIssueCollection coll) {
         ensureIsAfterTestFile();
 
-        assertedIssues.addAll(coll.getIssues());
+        issues.markAsserted(coll);
         Assert.assertTrue(constraintID + " failed" + coll.getMessageString(),
                 coll.evaluate());
     }
 
     public EObject getEObject(final URI uri) {
-        EObject eObject = issues.getResource().getEObject(uri.fragment());
+        EObject eObject = issues.getEObject(uri.fragment());
         if (eObject.eIsProxy()) {
             eObject = EcoreUtil.resolve(eObject, issues.getResource());
         }
         return eObject;
     }
 
-    private void dumpUnassertedIssues() {
-        if (issues.except(assertedIssues).getIssues().size() > 0) {
-            LOGGER.warn("---- Unasserted Issues ----");
-            for (final Issue issue : issues.except(assertedIssues)) {
-                FluentIssueCollection.dumpIssue(issues.getResource(), issue);
+    private void dumpUnassertedIssues(final FluentIssueCollection unasserted) {
+        LOGGER.warn("---- Unasserted Issues ----");
+        for (final Issue issue : unasserted) {
+            FluentIssueCollection.dumpIssue(issues.getResource(), issue);
+        }
+    }
+
+    /**
+     * A referenced resource of #testFile, read once; its hash is computed
+     * when it is first needed.
+     */
+    private static class Reference {
+
+        final URI uri;
+        final ContentBuffer contents;
+        private String hash;
+
+        Reference(final URI uri, final ContentBuffer contents) {
+            this.uri = uri;
+            this.contents = contents;
+        }
+
+        String getHash() {
+            if (hash == null) {
+                hash = contents.sha1();
             }
+            return hash;
         }
     }
 }
@@ -2,17 +2,25 @@ package com.itemis.xtext.testing;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
 import org.eclipse.emf.ecore.EStructuralFeature;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.ResourceSet;
 import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.xtext.AbstractRule;
 import org.eclipse.xtext.EcoreUtil2;
+import org.eclipse.xtext.Grammar;
+import org.eclipse.xtext.GrammarUtil;
 import org.eclipse.xtext.validation.Issue;
 
+import com.google.common.collect.MapMaker;
+
 /**
  * <p>
  * Utilities for Xtext supporting the IssueCollection
@@ -25,6 +33,18 @@ import org.eclipse.xtext.validation.Issue;
  */
 public class XtextUtils {
 
+    /* marks a feature name that doesn't exist in an EClass */
+    private static final Object NO_FEATURE = new Object();
+
+    private static final ConcurrentMap<EClass, ConcurrentMap<String, Object>> FEATURES = new MapMaker()
+            .weakKeys().makeMap();
+
+    /* marks a rule name that doesn't exist in a grammar */
+    private static final Object NO_RULE = new Object();
+
+    private static final ConcurrentMap<Grammar, ConcurrentMap<String, Object>> RULES = new MapMaker()
+            .weakKeys().makeMap();
+
     /**
      * Returns the ancestor of type ancestorClass of the ctx element
      */
@@ -88,8 +108,8 @@ public class XtextUtils {
      * null otherwise
      */
     public static String name(final EObject object) {
-        final EStructuralFeature namefeature = object.eClass()
-                .getEStructuralFeature("name");
+        final EStructuralFeature namefeature = feature(object.eClass(),
+                "name");
         if (namefeature == null) {
             return null;
         } else {
@@ -118,18 +138,94 @@ public class XtextUtils {
         }
     }
 
+    /**
+     * returns the feature of the EClass with the given name, or null. The
+     * lookup is cached per EClass, including missing features.
+     */
+    public static EStructuralFeature feature(final EClass eClass,
+            final String featureName) {
+        ConcurrentMap<String, Object> features = FEATURES.get(eClass);
+        if (features == null) {
+            features = new ConcurrentHashMap<String, Object>();
+            final ConcurrentMap<String, Object> other = FEATURES
+                    .putIfAbsent(eClass, features);
+            if (other != null) {
+                features = other;
+            }
+        }
+        Object feature = features.get(featureName);
+        if (feature == null) {
+            feature = eClass.getEStructuralFeature(featureName);
+            if (feature == null) {
+                feature = NO_FEATURE;
+            }
+            features.put(featureName, feature);
+        }
+        return feature == NO_FEATURE ? null : (EStructuralFeature) feature;
+    }
+
+    /**
+     * returns the rule with the given name like
+     * {@link GrammarUtil#findRuleForName(Grammar, String)}, or null. The
+     * lookup is cached per grammar, including missing rules.
+     */
+    public static AbstractRule rule(final Grammar grammar,
+            final String ruleName) {
+        ConcurrentMap<String, Object> rules = RULES.get(grammar);
+        if (rules == null) {
+            rules = new ConcurrentHashMap<String, Object>();
+            final ConcurrentMap<String, Object> other = RULES
+                    .putIfAbsent(grammar, rules);
+            if (other != null) {
+                rules = other;
+            }
+        }
+        Object rule = rules.get(ruleName);
+        if (rule == null) {
+            rule = GrammarUtil.findRuleForName(grammar, ruleName);
+            if (rule == null) {
+                rule = NO_RULE;
+            }
+            rules.put(ruleName, rule);
+        }
+        return rule == NO_RULE ? null : (AbstractRule) rule;
+    }
+
     public static Object eget(final EObject eObject, final String featureName) {
-        final Object val = eObject
-                .eGet(eObject.eClass().getEStructuralFeature(featureName));
+        return eget(eObject, feature(eObject.eClass(), featureName));
+    }
+
+    public static Object eget(final EObject eObject,
+            final EStructuralFeature feature) {
+        final Object val = eObject.eGet(feature);
         return val;
     }
 
+    /**
+     * returns the value of the feature, or null if the EObject doesn't have
+     * the feature or the value is not of the given type
+     */
+    public static <T> T eget(final EObject eObject,
+            final EStructuralFeature feature, final Class<T> type) {
+        if (!feature.getEContainingClass().isInstance(eObject)) {
+            return null;
+        }
+        final Object val = eObject.eGet(feature);
+        return type.isInstance(val) ? type.cast(val) : null;
+    }
+
     public static EObject egetAndResolve(final EObject eObject,
             final String featureName, final ResourceSet rs) {
         final EObject val = (EObject) eget(eObject, featureName);
         return resolveProxy(val, rs);
     }
 
+    public static EObject egetAndResolve(final EObject eObject,
+            final EReference reference, final ResourceSet rs) {
+        final EObject val = (EObject) eget(eObject, reference);
+        return resolveProxy(val, rs);
+    }
+
     public static EObject getEObject(final Issue issue, final Resource r) {
         final URI uri = issue.getUriToProblem();
         final EObject eObject = r.getEObject(uri.fragment());
@@ -0,0 +1,70 @@
+package com.itemis.xtext.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author Vlad Dumitrescu
+ *
+ */
+public class ContentBufferTest {
+
+    private final ThreadLocal<ContentBuffer> buffers =
+            new ThreadLocal<ContentBuffer>();
+
+    @Test
+    public void readsAllBytes() throws IOException {
+        final byte[] bytes = new byte[20000];
+        Arrays.fill(bytes, (byte) 'x');
+        final ContentBuffer buffer = filled(bytes.length);
+        assertEquals(bytes.length, buffer.size());
+        assertEquals(new String(bytes, "UTF-8"), buffer.toString("UTF-8"));
+    }
+
+    @Test
+    public void keepsSmallBuffersForReuse() throws IOException {
+        final ContentBuffer buffer = ContentBuffer.forCurrentThread(buffers);
+        buffer.readFrom(new ByteArrayInputStream(new byte[100000]));
+        ContentBuffer.release(buffers);
+        assertSame(buffer, ContentBuffer.forCurrentThread(buffers));
+    }
+
+    @Test
+    public void dropsBuffersThatGrewTooLarge() throws IOException {
+        final ContentBuffer buffer = ContentBuffer.forCurrentThread(buffers);
+        buffer.readFrom(new ByteArrayInputStream(
+                new byte[ContentBuffer.MAX_RETAINED_BYTES + 1]));
+        ContentBuffer.release(buffers);
+        assertNotSame(buffer, ContentBuffer.forCurrentThread(buffers));
+        assertFalse(ContentBuffer.forCurrentThread(buffers).isOversized());
+    }
+
+    @Test
+    public void keepsAtMostTheGivenNumberOfSmallBuffers() throws IOException {
+        final ContentBuffer small = filled(10);
+        final List<ContentBuffer> list = new ArrayList<ContentBuffer>(
+                Arrays.asList(filled(ContentBuffer.MAX_RETAINED_BYTES + 1),
+                        small, filled(10), filled(10)));
+        ContentBuffer.release(list, 2);
+        assertEquals(2, list.size());
+        assertSame(small, list.get(0));
+    }
+
+    private static ContentBuffer filled(final int size) throws IOException {
+        final ContentBuffer buffer = new ContentBuffer();
+        final byte[] bytes = new byte[size];
+        Arrays.fill(bytes, (byte) 'x');
+        buffer.readFrom(new ByteArrayInputStream(bytes));
+        return buffer;
+    }
+}
@@ -0,0 +1,135 @@
+package com.itemis.xtext.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EDataType;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
+import org.eclipse.xtext.diagnostics.Severity;
+import org.eclipse.xtext.validation.Issue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Vlad Dumitrescu
+ *
+ */
+public class FluentIssueCollectionTest {
+
+    private Resource resource;
+    private IssueFixture fixture;
+    private EClass person;
+    private EDataType name;
+    private List<String> messages;
+    private Issue personError;
+    private Issue personWarning;
+    private Issue nameError;
+    private FluentIssueCollection issues;
+
+    @Before
+    public void createIssues() {
+        resource = new ResourceImpl(URI.createURI("test.ecore"));
+        fixture = new IssueFixture(resource);
+        person = fixture.person;
+        name = fixture.name;
+
+        personError = issue(person, Severity.ERROR, "a", 1);
+        personWarning = issue(person, Severity.WARNING, "b", 2);
+        nameError = issue(name, Severity.ERROR, "b", 2);
+        messages = new ArrayList<String>();
+        issues = new FluentIssueCollection(resource, new ArrayList<Issue>(
+                Arrays.asList(personError, personWarning, nameError)),
+                messages);
+    }
+
+    @Test
+    public void combinesFilters() {
+        assertEquals(Arrays.asList(nameError),
+                issues.errorsOnly().withCode("b").getIssues());
+        assertEquals(Arrays.asList(personError, personWarning),
+                issues.forType(EClass.class).getIssues());
+        assertEquals(Arrays.asList(personWarning),
+                issues.forType(EClass.class).inLine(2).getIssues());
+        assertEquals(Arrays.asList(personError, nameError),
+                issues.withSeverity(Severity.ERROR, Severity.INFO)
+                        .getIssues());
+        assertEquals(Arrays.asList(nameError),
+                issues.inLine(2).get(1).getIssues());
+    }
+
+    @Test
+    public void derivedCollectionsDontChangeTheirSource() {
+        final FluentIssueCollection errors = issues.errorsOnly();
+        assertEquals(2, errors.getIssues().size());
+        assertEquals(1, errors.withCode("a").getIssues().size());
+        assertEquals(2, errors.getIssues().size());
+        assertEquals(3, issues.getIssues().size());
+    }
+
+    @Test
+    public void evaluatesFiltersOnFirstUse() {
+        final FluentIssueCollection missing = issues.withCode("c").inLine(7);
+        assertTrue(messages.isEmpty());
+        issues.addIssue(issue(name, Severity.ERROR, "c", 7));
+        assertEquals(1, missing.getIssues().size());
+        assertTrue(messages.isEmpty());
+        issues.withCode("d").getIssues();
+        assertEquals(Arrays.asList(
+                "failed withCode: no issues found with code 'd'"), messages);
+    }
+
+    @Test
+    public void addsIssuesToTheViewButNotToItsSource() {
+        final FluentIssueCollection errors = issues.errorsOnly();
+        final FluentIssueCollection pending = errors.withCode("c");
+        final Issue added = issue(name, Severity.ERROR, "c", 7);
+        errors.addIssue(added);
+        assertEquals(Arrays.asList(personError, nameError, added),
+                errors.getIssues());
+        assertEquals(Arrays.asList(added), pending.getIssues());
+        assertEquals(3, issues.getIssues().size());
+        assertTrue(issues.withCode("c").getIssues().isEmpty());
+    }
+
+    @Test
+    public void filtersUnassertedIssues() {
+        issues.markAsserted(issues.withCode("b").inLine(2).forType(
+                EDataType.class));
+        assertEquals(Arrays.asList(personError, personWarning),
+                issues.unasserted().getIssues());
+        final FluentIssueCollection other = new FluentIssueCollection(
+                resource, new ArrayList<Issue>(Arrays.asList(personError)),
+                messages);
+        issues.markAsserted(other);
+        assertEquals(Arrays.asList(personWarning),
+                issues.unasserted().getIssues());
+        issues.resetAsserted();
+        assertEquals(3, issues.unasserted().getIssues().size());
+    }
+
+    @Test
+    public void getsElementsByPositionInTheSelection() {
+        final FluentIssueCollection errors = issues.errorsOnly();
+        assertEquals(Arrays.asList(nameError), errors.get(1).getIssues());
+        assertTrue(errors.get(2).getIssues().isEmpty());
+        assertEquals(1, messages.size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void returnsUnmodifiableIssues() {
+        issues.errorsOnly().getIssues().clear();
+    }
+
+    private Issue issue(final EObject eObject, final Severity severity,
+            final String code, final int line) {
+        return fixture.issue(eObject, severity, code, line);
+    }
+}
@@ -0,0 +1,58 @@
+package com.itemis.xtext.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.StringReader;
+
+import org.eclipse.xtext.IGrammarAccess;
+import org.eclipse.xtext.XtextStandaloneSetup;
+import org.eclipse.xtext.parser.IParseResult;
+import org.eclipse.xtext.parser.IParser;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.inject.Injector;
+
+/**
+ * Generates grammars of the Xtext language, which repeats its rules with
+ * <code>+</code>.
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class GrammarModelGeneratorTest {
+
+    private static IGrammarAccess grammar;
+    private static IParser parser;
+
+    @BeforeClass
+    public static void createLanguage() {
+        final Injector injector = new XtextStandaloneSetup()
+                .createInjectorAndDoEMFRegistration();
+        grammar = injector.getInstance(IGrammarAccess.class);
+        parser = injector.getInstance(IParser.class);
+    }
+
+    @Test
+    public void generatesValidModelsSmallerThanTheirHeader() {
+        for (long seed = 0; seed < 5; seed++) {
+            assertParses(new GrammarModelGenerator(grammar, seed).generate(1));
+        }
+    }
+
+    @Test
+    public void generatesTheSameModelForTheSameSeed() {
+        assertEquals(
+                new GrammarModelGenerator(grammar, 7).generate(2000)
+                        .toString(),
+                new GrammarModelGenerator(grammar, 7).generate(2000)
+                        .toString());
+    }
+
+    private static void assertParses(final CharSequence model) {
+        final IParseResult result = parser
+                .parse(new StringReader(model.toString()));
+        assertFalse(model.toString(), result.hasSyntaxErrors());
+    }
+}
@@ -0,0 +1,67 @@
+package com.itemis.xtext.testing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EDataType;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.xtext.diagnostics.Severity;
+import org.eclipse.xtext.validation.Issue;
+
+/**
+ * A small Ecore model, package <code>model</code> with the classifiers
+ * <code>Person</code> and <code>Name</code>, and the issues reported on its
+ * elements.
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+class IssueFixture {
+
+    final Resource resource;
+    final EClass person;
+    final EDataType name;
+
+    IssueFixture(final Resource resource) {
+        this.resource = resource;
+        final EPackage ePackage = EcoreFactory.eINSTANCE.createEPackage();
+        ePackage.setName("model");
+        person = EcoreFactory.eINSTANCE.createEClass();
+        person.setName("Person");
+        name = EcoreFactory.eINSTANCE.createEDataType();
+        name.setName("Name");
+        ePackage.getEClassifiers().add(person);
+        ePackage.getEClassifiers().add(name);
+        resource.getContents().add(ePackage);
+    }
+
+    /**
+     * @param eObject
+     *            the element of the issue, or <code>null</code> for an issue
+     *            whose element can't be found
+     */
+    Issue issue(final EObject eObject, final Severity severity,
+            final String code, final int line) {
+        final Issue.IssueImpl issue = new Issue.IssueImpl();
+        issue.setSeverity(severity);
+        issue.setCode(code);
+        issue.setLineNumber(line);
+        issue.setMessage(code);
+        issue.setUriToProblem(resource.getURI().appendFragment(
+                eObject == null ? "//Missing" : resource.getURIFragment(
+                        eObject)));
+        return issue;
+    }
+
+    static List<Issue> issues(final Issue... issues) {
+        final List<Issue> result = new ArrayList<Issue>();
+        for (final Issue issue : issues) {
+            result.add(issue);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,146 @@
+package com.itemis.xtext.testing;
+
+import static com.itemis.xtext.testing.IssueFixture.issues;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.BitSet;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EDataType;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
+import org.eclipse.xtext.diagnostics.Severity;
+import org.eclipse.xtext.validation.Issue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Vlad Dumitrescu
+ *
+ */
+public class IssueIndexTest {
+
+    private CountingResource resource;
+    private IssueFixture fixture;
+    private EClass person;
+    private EDataType name;
+
+    @Before
+    public void createResource() {
+        resource = new CountingResource();
+        fixture = new IssueFixture(resource);
+        person = fixture.person;
+        name = fixture.name;
+    }
+
+    @Test
+    public void indexesByLineSeverityAndCode() {
+        final IssueIndex index = new IssueIndex(resource, issues(
+                issue(person, Severity.ERROR, "a", 1),
+                issue(name, Severity.WARNING, "b", 2),
+                issue(person, Severity.ERROR, "b", 2)));
+        assertEquals(bits(1, 2), index.inLine(2));
+        assertEquals(bits(0, 2), index.withSeverity(Severity.ERROR));
+        assertEquals(bits(1, 2), index.withCode("b"));
+        assertEquals(bits(), index.withCode("c"));
+        assertEquals(bits(), index.withSeverity(Severity.INFO));
+    }
+
+    @Test
+    public void rebuildsIndexesWhenIssuesAreAdded() {
+        final IssueIndex index = new IssueIndex(resource, issues(
+                issue(person, Severity.ERROR, "a", 1)));
+        assertEquals(bits(0), index.withCode("a"));
+        final Issue added = issue(name, Severity.ERROR, "a", 3);
+        assertEquals(1, index.add(added));
+        assertEquals(bits(0, 1), index.withCode("a"));
+        assertEquals(bits(1), index.inLine(3));
+        assertEquals(bits(1), index.forType(EDataType.class));
+        assertEquals(1, index.indexOf(added));
+    }
+
+    @Test
+    public void findsIssuesOfSubtypes() {
+        final IssueIndex index = new IssueIndex(resource, issues(
+                issue(person, Severity.ERROR, "a", 1),
+                issue(name, Severity.ERROR, "a", 2),
+                issue(null, Severity.ERROR, "a", 3)));
+        assertEquals(bits(0), index.forType(EClass.class));
+        assertEquals(bits(1), index.forType(EDataType.class));
+        assertEquals(bits(0, 1), index.forType(EClassifier.class));
+        assertEquals(bits(), index.forType(EPackage.class));
+        assertNull(index.getEObject(2));
+    }
+
+    @Test
+    public void resolvesEachFragmentOnce() {
+        final IssueIndex index = new IssueIndex(resource, issues(
+                issue(person, Severity.ERROR, "a", 1),
+                issue(person, Severity.WARNING, "b", 1),
+                issue(null, Severity.ERROR, "c", 2)));
+        assertSame(person, index.getEObject(0));
+        assertSame(person, index.getEObject(1));
+        index.forType(EObject.class);
+        assertNull(index.getEObject(2));
+        assertNull(index.getEObject(2));
+        assertEquals(2, resource.lookups);
+    }
+
+    @Test
+    public void tracksAssertedIssues() {
+        final IssueIndex index = new IssueIndex(resource, issues(
+                issue(person, Severity.ERROR, "a", 1),
+                issue(name, Severity.ERROR, "b", 2),
+                issue(person, Severity.ERROR, "c", 3)));
+        index.markAsserted(bits(0));
+        index.markAsserted(2);
+        assertEquals(bits(1), index.unasserted());
+        index.clearAsserted();
+        assertEquals(bits(0, 1, 2), index.unasserted());
+    }
+
+    @Test
+    public void findsIssuesByIdentity() {
+        final Issue issue = issue(person, Severity.ERROR, "a", 1);
+        final IssueIndex index = new IssueIndex(resource, issues(
+                issue(person, Severity.ERROR, "a", 1), issue));
+        assertEquals(1, index.indexOf(issue));
+        assertEquals(-1, index.indexOf(issue(person, Severity.ERROR, "a", 1)));
+    }
+
+    private Issue issue(final EObject eObject, final Severity severity,
+            final String code, final int line) {
+        return fixture.issue(eObject, severity, code, line);
+    }
+
+    private static BitSet bits(final int... positions) {
+        final BitSet result = new BitSet();
+        for (final int i : positions) {
+            result.set(i);
+        }
+        return result;
+    }
+
+    /**
+     * counts the lookups of elements by fragment
+     */
+    private static class CountingResource extends ResourceImpl {
+
+        int lookups;
+
+        CountingResource() {
+            super(URI.createURI("test.ecore"));
+        }
+
+        @Override
+        public EObject getEObject(final String uriFragment) {
+            lookups++;
+            return super.getEObject(uriFragment);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.itemis.xtext.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+
+import org.antlr.runtime.CharStream;
+import org.junit.Test;
+
+/**
+ * @author Vlad Dumitrescu
+ *
+ */
+public class ReaderCharStreamTest {
+
+    /* lines of 10 characters, far larger than the window */
+    private static final int LINES = 10000;
+    private static final String TEXT = lines(LINES);
+
+    @Test
+    public void readsAllCharacters() {
+        final ReaderCharStream stream = stream("ab\ncd");
+        final StringBuilder read = new StringBuilder();
+        while (stream.LA(1) != CharStream.EOF) {
+            read.append((char) stream.LA(1));
+            stream.consume();
+        }
+        assertEquals("ab\ncd", read.toString());
+        assertEquals(5, stream.index());
+        assertEquals(5, stream.size());
+        assertEquals(2, stream.getLine());
+        assertEquals(2, stream.getCharPositionInLine());
+        assertEquals('d', stream.LA(-1));
+        assertEquals(CharStream.EOF, stream.LA(2));
+    }
+
+    @Test
+    public void keepsDiscardedCharactersUntilCompacted() {
+        final ReaderCharStream stream = stream(TEXT);
+        consume(stream, 100);
+        assertEquals("000000000\n", stream.substring(0, 9));
+    }
+
+    @Test
+    public void dropsDiscardedCharacters() {
+        final ReaderCharStream stream = stream(TEXT);
+        consume(stream, TEXT.length());
+        assertEquals(TEXT.length(), stream.size());
+        assertEquals(LINES + 1, stream.getLine());
+        assertEquals(TEXT.substring(TEXT.length() - 10),
+                stream.substring(TEXT.length() - 10, TEXT.length() - 1));
+        try {
+            stream.substring(0, 9);
+            fail("expected the start of the input to be dropped");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void keepsCharactersFromTheOldestMark() {
+        final ReaderCharStream stream = stream(TEXT);
+        consume(stream, 105);
+        final int marker = stream.mark();
+        consume(stream, TEXT.length());
+        assertEquals("0010\n", stream.substring(105, 109));
+        stream.rewind(marker);
+        assertEquals(105, stream.index());
+        assertEquals(11, stream.getLine());
+        assertEquals(5, stream.getCharPositionInLine());
+        assertEquals('0', stream.LA(1));
+        assertEquals('1', stream.LA(3));
+    }
+
+    @Test
+    public void rewindsNestedMarks() {
+        final ReaderCharStream stream = stream(TEXT);
+        final int outer = stream.mark();
+        consume(stream, 30);
+        final int inner = stream.mark();
+        consume(stream, 20000);
+        stream.rewind(inner);
+        assertEquals(30, stream.index());
+        assertEquals(4, stream.getLine());
+        consume(stream, 40000);
+        stream.rewind(outer);
+        assertEquals(0, stream.index());
+        assertEquals(1, stream.getLine());
+        assertEquals(0, stream.getCharPositionInLine());
+        assertEquals(TEXT.substring(0, 20), stream.substring(0, 19));
+    }
+
+    @Test
+    public void seeksForward() {
+        final ReaderCharStream stream = stream(TEXT);
+        stream.seek(25);
+        assertEquals(25, stream.index());
+        assertEquals(3, stream.getLine());
+        assertEquals(5, stream.getCharPositionInLine());
+        stream.seek(TEXT.length() + 10);
+        assertEquals(TEXT.length(), stream.index());
+    }
+
+    private static ReaderCharStream stream(final String text) {
+        return new ReaderCharStream(new StringReader(text), "test");
+    }
+
+    /**
+     * consumes like the lexer, which only needs the current token
+     */
+    private static void consume(final ReaderCharStream stream, final int n) {
+        for (int i = 0; i < n && stream.LA(1) != CharStream.EOF; i++) {
+            stream.discardBefore(stream.index());
+            stream.consume();
+        }
+    }
+
+    private static String lines(final int n) {
+        final StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            result.append(String.format("%09d\n", i));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,147 @@
+package com.itemis.xtext.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A library model whose class extends a class of a type resource, lent to
+ * tests of a model extending the library class.
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class ReferencedResourceCacheTest {
+
+    private static final Object OWNER = new Object();
+    private static final List<String> HASHES = Arrays.asList("1");
+
+    private ReferencedResourceCache cache;
+    private ResourceSet rs;
+    private Resource types;
+    private Resource library;
+    private Resource tested;
+    private EClass sub;
+    private ReferencedResourceCache.Entry entry;
+
+    @Before
+    public void createResources() {
+        cache = new ReferencedResourceCache(2);
+        rs = new ResourceSetImpl();
+        final EClass type = eClass(rs, "types.ecore", "Type");
+        types = type.eResource();
+        final EClass base = eClass(rs, "library.ecore", "Base");
+        base.getESuperTypes().add(type);
+        library = base.eResource();
+        sub = eClass(rs, "test.ecore", "Sub");
+        sub.getESuperTypes().add(base);
+        tested = sub.eResource();
+        entry = entry(library);
+    }
+
+    @Test
+    public void lendsResourcesWithTheirDependencies() {
+        cache.release(entry, rs, tested);
+        assertEquals(Arrays.asList(tested), rs.getResources());
+        assertNull(library.getResourceSet());
+        assertEquals(Arrays.asList(types), entry.dependencies);
+
+        final ResourceSet other = new ResourceSetImpl();
+        assertSame(entry, cache.acquire(entry.uris, HASHES, OWNER, other));
+        assertEquals(Arrays.asList(library, types), entry.allResources());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void lendsEachEntryToOneTestAtATime() {
+        cache.release(entry, rs, tested);
+        assertSame(entry, cache.acquire(entry.uris, HASHES, OWNER, rs));
+        assertNull(cache.acquire(entry.uris, HASHES, OWNER, rs));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void keepsTheEntriesOfEachOwner() {
+        cache.release(entry, rs, tested);
+        assertNull(cache.acquire(entry.uris, HASHES, new Object(), rs));
+        assertSame(entry, cache.acquire(entry.uris, HASHES, OWNER, rs));
+    }
+
+    @Test
+    public void discardsEntriesWithChangedContents() {
+        cache.release(entry, rs, tested);
+        assertNull(cache.acquire(entry.uris, Arrays.asList("2"), OWNER, rs));
+        assertEquals(1, cache.getInvalidations());
+        assertNull(cache.acquire(entry.uris, HASHES, OWNER, rs));
+    }
+
+    @Test
+    public void keepsEntriesWhoseResourcesAreInTheResourceSet() {
+        cache.release(entry, rs, tested);
+        final ResourceSet other = new ResourceSetImpl();
+        other.getResources().add(new ResourceImpl(types.getURI()));
+        assertNull(cache.acquire(entry.uris, HASHES, OWNER, other));
+        assertSame(entry, cache.acquire(entry.uris, HASHES, OWNER, rs));
+    }
+
+    @Test
+    public void doesntPoolEntriesReferringToTheTestedResource() {
+        final EClass user = eClass(rs, "user.ecore", "User");
+        user.getESuperTypes().add(sub);
+        cache.release(entry(user.eResource()), rs, tested);
+        assertSame(rs, tested.getResourceSet());
+        assertNull(user.eResource().getResourceSet());
+        assertNull(cache.acquire(Arrays.asList(user.eResource().getURI()),
+                HASHES, OWNER, rs));
+    }
+
+    @Test
+    public void evictsTheLongestIdleEntries() {
+        final ReferencedResourceCache.Entry second = entry(eClass(rs,
+                "second.ecore", "Second").eResource());
+        final ReferencedResourceCache.Entry third = entry(eClass(rs,
+                "third.ecore", "Third").eResource());
+        cache.release(entry, rs, tested);
+        cache.release(second, rs, tested);
+        cache.release(third, rs, tested);
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.acquire(entry.uris, HASHES, OWNER, rs));
+        assertSame(second, cache.acquire(second.uris, HASHES, OWNER, rs));
+        assertSame(third, cache.acquire(third.uris, HASHES, OWNER, rs));
+    }
+
+    private static ReferencedResourceCache.Entry entry(
+            final Resource resource) {
+        return new ReferencedResourceCache.Entry(
+                Arrays.asList(resource.getURI()),
+                Collections.singletonList(resource), HASHES, OWNER);
+    }
+
+    private static EClass eClass(final ResourceSet rs, final String uri,
+            final String name) {
+        final EPackage ePackage = EcoreFactory.eINSTANCE.createEPackage();
+        ePackage.setName(name.toLowerCase());
+        final EClass eClass = EcoreFactory.eINSTANCE.createEClass();
+        eClass.setName(name);
+        ePackage.getEClassifiers().add(eClass);
+        final Resource resource = new ResourceImpl(URI.createURI(uri));
+        resource.getContents().add(ePackage);
+        rs.getResources().add(resource);
+        return eClass;
+    }
+}
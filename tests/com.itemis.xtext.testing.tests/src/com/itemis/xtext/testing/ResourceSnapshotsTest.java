@@ -0,0 +1,160 @@
+package com.itemis.xtext.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.xtext.Grammar;
+import org.eclipse.xtext.ParserRule;
+import org.eclipse.xtext.RuleCall;
+import org.eclipse.xtext.XtextRuntimeModule;
+import org.eclipse.xtext.XtextStandaloneSetup;
+import org.eclipse.xtext.generator.AbstractFileSystemAccess2;
+import org.eclipse.xtext.generator.JavaIoFileSystemAccess;
+import org.eclipse.xtext.resource.XtextResource;
+import org.eclipse.xtext.resource.XtextResourceSet;
+import org.eclipse.xtext.resource.persistence.IResourceStorageFacade;
+import org.eclipse.xtext.resource.persistence.ResourceStorageFacade;
+import org.eclipse.xtext.resource.persistence.StorageAwareResource;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.util.Modules;
+
+/**
+ * Snapshots of grammars of the Xtext language, with resources made
+ * <code>StorageAwareResource</code>s as in Xbase languages.
+ *
+ * @author Vlad Dumitrescu
+ *
+ */
+public class ResourceSnapshotsTest {
+
+    private static final URI LIBRARY_URI = URI.createURI("test/Library.xtext");
+    private static final URI MAIN_URI = URI.createURI("test/Main.xtext");
+
+    private static final String LIBRARY = "grammar test.Library"
+            + " with org.eclipse.xtext.common.Terminals\n"
+            + "generate library \"http://test/Library\"\n"
+            + "Element: 'element' name=ID;\n";
+    private static final String MAIN = "grammar test.Main with test.Library\n"
+            + "generate main \"http://test/Main\"\n"
+            + "Model: elements+=Element*;\n";
+
+    private static Injector injector;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String key;
+
+    @BeforeClass
+    public static void createLanguage() {
+        injector = new XtextStandaloneSetup() {
+            @Override
+            public Injector createInjector() {
+                return Guice.createInjector(Modules.override(
+                        new XtextRuntimeModule()).with(new AbstractModule() {
+                    @Override
+                    protected void configure() {
+                        bind(XtextResource.class).to(
+                                StorageAwareResource.class);
+                        bind(IResourceStorageFacade.class).to(
+                                ResourceStorageFacade.class);
+                        bind(AbstractFileSystemAccess2.class).to(
+                                JavaIoFileSystemAccess.class);
+                    }
+                }));
+            }
+        }.createInjectorAndDoEMFRegistration();
+    }
+
+    @Before
+    public void createKey() {
+        key = ResultCache.key(Arrays.asList(MAIN_URI.toString(), MAIN));
+    }
+
+    @Test
+    public void resolvesReferencesOfLoadedSnapshots() throws IOException {
+        final ResourceSnapshots snapshots = new ResourceSnapshots(
+                folder.getRoot(), false);
+        final XtextResourceSet stored = resourceSet();
+        load(stored, LIBRARY_URI, LIBRARY);
+        final Resource main = load(stored, MAIN_URI, MAIN);
+        EcoreUtil.resolveAll(main);
+        assertTrue(main.getErrors().isEmpty());
+        snapshots.store(main, key, 1000);
+
+        final XtextResourceSet loaded = resourceSet();
+        final Resource library = load(loaded, LIBRARY_URI, LIBRARY);
+        final Resource snapshot = snapshots.load(loaded, MAIN_URI, key);
+        assertNotNull(snapshot);
+        assertSame(loaded, snapshot.getResourceSet());
+
+        final Grammar grammar = (Grammar) snapshot.getContents().get(0);
+        assertEquals("test.Main", grammar.getName());
+        final Grammar used = grammar.getUsedGrammars().get(0);
+        assertFalse(used.eIsProxy());
+        assertSame(library, used.eResource());
+        final RuleCall element = (RuleCall) ((ParserRule) grammar.getRules()
+                .get(0)).getAlternatives().eContents().get(0);
+        assertFalse(element.getRule().eIsProxy());
+        assertSame(library, element.getRule().eResource());
+
+        assertEquals(1, snapshots.getStored());
+        assertEquals(1, snapshots.getLoaded());
+    }
+
+    @Test
+    public void loadsNothingWithoutASnapshot() {
+        final ResourceSnapshots snapshots = new ResourceSnapshots(
+                folder.getRoot(), false);
+        final XtextResourceSet rs = resourceSet();
+        assertNull(snapshots.load(rs, MAIN_URI, key));
+        assertTrue(rs.getResources().isEmpty());
+    }
+
+    @Test
+    public void clearsOnFirstUseIfRequested() throws IOException {
+        final XtextResourceSet rs = resourceSet();
+        load(rs, LIBRARY_URI, LIBRARY);
+        final Resource main = load(rs, MAIN_URI, MAIN);
+        new ResourceSnapshots(folder.getRoot(), false).store(main, key, 1000);
+        assertNotNull(new ResourceSnapshots(folder.getRoot(), false).load(
+                resourceSet(), MAIN_URI, key));
+        assertNull(new ResourceSnapshots(folder.getRoot(), true).load(
+                resourceSet(), MAIN_URI, key));
+    }
+
+    private XtextResourceSet resourceSet() {
+        final XtextResourceSet rs = injector
+                .getInstance(XtextResourceSet.class);
+        rs.setClasspathURIContext(getClass());
+        return rs;
+    }
+
+    private static Resource load(final XtextResourceSet rs, final URI uri,
+            final String text) throws IOException {
+        final Resource resource = rs.createResource(uri);
+        resource.load(new ByteArrayInputStream(text.getBytes("UTF-8")),
+                Collections.emptyMap());
+        return resource;
+    }
+}
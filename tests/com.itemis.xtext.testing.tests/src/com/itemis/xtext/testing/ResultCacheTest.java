@@ -0,0 +1,167 @@
+package com.itemis.xtext.testing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.xtext.diagnostics.Severity;
+import org.eclipse.xtext.validation.CheckType;
+import org.eclipse.xtext.validation.Issue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Vlad Dumitrescu
+ *
+ */
+public class ResultCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String directory;
+    private String key;
+
+    @Before
+    public void createKey() {
+        directory = folder.getRoot().getPath();
+        key = ResultCache.key(Arrays.asList("a.dmodel", "contents"));
+    }
+
+    @Test
+    public void keysDependOnAllParts() {
+        assertEquals(key,
+                ResultCache.key(Arrays.asList("a.dmodel", "contents")));
+        assertFalse(key.equals(
+                ResultCache.key(Arrays.asList("a.dmodel", "changed"))));
+        assertFalse(key.equals(
+                ResultCache.key(Arrays.asList("contents", "a.dmodel"))));
+        assertFalse(key.equals(
+                ResultCache.key(Arrays.asList("a.dmodelc", "ontents"))));
+        assertFalse(key.equals(ResultCache.key(
+                Arrays.asList("a.dmodel", "contents", ""))));
+        assertEquals(40, key.length());
+    }
+
+    @Test
+    public void isOnlyEnabledWithADirectory() {
+        assertFalse(new ResultCache(null, false).isEnabled());
+        assertFalse(new ResultCache("", false).isEnabled());
+        assertTrue(new ResultCache(directory, false).isEnabled());
+    }
+
+    @Test
+    public void storesAllFieldsOfIssues() {
+        final Issue.IssueImpl full = new Issue.IssueImpl();
+        full.setSeverity(Severity.WARNING);
+        full.setCode("code");
+        full.setMessage(repeat('m', 70000));
+        full.setType(CheckType.NORMAL);
+        full.setUriToProblem(URI.createURI("a.dmodel#//@elements.0"));
+        full.setLineNumber(3);
+        full.setColumn(4);
+        full.setOffset(20);
+        full.setLength(5);
+        full.setSyntaxError(true);
+        full.setData(new String[] { "x", null });
+        final Issue.IssueImpl empty = new Issue.IssueImpl();
+
+        final ResultCache cache = new ResultCache(directory, false);
+        cache.put(key, Arrays.<Issue> asList(full, empty));
+        final List<Issue> issues = cache.get(key);
+
+        assertEquals(2, issues.size());
+        final Issue read = issues.get(0);
+        assertEquals(Severity.WARNING, read.getSeverity());
+        assertEquals("code", read.getCode());
+        assertEquals(full.getMessage(), read.getMessage());
+        assertEquals(CheckType.NORMAL, read.getType());
+        assertEquals(full.getUriToProblem(), read.getUriToProblem());
+        assertEquals(Integer.valueOf(3), read.getLineNumber());
+        assertEquals(Integer.valueOf(4), read.getColumn());
+        assertEquals(Integer.valueOf(20), read.getOffset());
+        assertEquals(Integer.valueOf(5), read.getLength());
+        assertTrue(read.isSyntaxError());
+        assertArrayEquals(new String[] { "x", null }, read.getData());
+
+        final Issue readEmpty = issues.get(1);
+        assertEquals(empty.getSeverity(), readEmpty.getSeverity());
+        assertNull(readEmpty.getMessage());
+        assertNull(readEmpty.getUriToProblem());
+        assertNull(readEmpty.getLineNumber());
+        assertNull(readEmpty.getData());
+        assertFalse(readEmpty.isSyntaxError());
+    }
+
+    @Test
+    public void countsHitsAndMisses() {
+        final ResultCache cache = new ResultCache(directory, false);
+        assertNull(cache.get(key));
+        cache.put(key, Collections.<Issue> emptyList());
+        assertEquals(Collections.emptyList(), cache.get(key));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void keepsEntriesAcrossInstances() {
+        new ResultCache(directory, false).put(key,
+                Collections.<Issue> emptyList());
+        assertEquals(Collections.emptyList(),
+                new ResultCache(directory, false).get(key));
+    }
+
+    @Test
+    public void clearsOnFirstUseIfRequested() {
+        new ResultCache(directory, false).put(key,
+                Collections.<Issue> emptyList());
+        final ResultCache cache = new ResultCache(directory, true);
+        assertNull(cache.get(key));
+        cache.put(key, Collections.<Issue> emptyList());
+        assertEquals(Collections.emptyList(), cache.get(key));
+    }
+
+    @Test
+    public void clearDeletesAllEntries() {
+        final ResultCache cache = new ResultCache(directory, false);
+        cache.put(key, Collections.<Issue> emptyList());
+        cache.clear();
+        assertFalse(new File(directory).exists());
+        assertEquals(0, cache.getHits());
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void ignoresBrokenEntries() throws IOException {
+        final ResultCache cache = new ResultCache(directory, false);
+        cache.put(key, Collections.<Issue> emptyList());
+        final File entry = new File(new File(directory, key.substring(0, 2)),
+                key);
+        final FileOutputStream out = new FileOutputStream(entry);
+        try {
+            out.write(new byte[] { 0, 0, 0, 1 });
+        } finally {
+            out.close();
+        }
+        assertNull(cache.get(key));
+        assertEquals(1, cache.getMisses());
+    }
+
+    private static String repeat(final char c, final int n) {
+        final char[] chars = new char[n];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
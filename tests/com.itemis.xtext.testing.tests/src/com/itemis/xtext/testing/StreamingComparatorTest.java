@@ -0,0 +1,147 @@
+package com.itemis.xtext.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+import org.junit.ComparisonFailure;
+import org.junit.Test;
+
+/**
+ * @author Vlad Dumitrescu
+ *
+ */
+public class StreamingComparatorTest {
+
+    @Test
+    public void ignoresLeadingAndTrailingWhitespace() throws IOException {
+        compare("\n  entity A {}\n", " entity A {}\t\n\n", false);
+    }
+
+    @Test
+    public void comparesInnerWhitespace() throws IOException {
+        final ComparisonFailure failure = mismatch("entity  A", "entity A",
+                false);
+        assertTrue(failure.getMessage(), failure.getMessage().startsWith(
+                "serialized model differs from test at line 1, column 8"));
+    }
+
+    @Test
+    public void normalizesNewlines() throws IOException {
+        compare("a\r\nb\rc\n", "a\nb\nc", true);
+        compare("a\nb\nc", "a\r\nb\r\nc\r\n", true);
+    }
+
+    @Test
+    public void keepsNewlinesUnlessNormalizing() throws IOException {
+        mismatch("a\r\nb", "a\nb", false);
+    }
+
+    @Test
+    public void reportsLineAndColumn() throws IOException {
+        final ComparisonFailure failure = mismatch("a\nbb\ncXc\nd",
+                "a\nbb\ncYc\nd", false);
+        assertTrue(failure.getMessage(), failure.getMessage().startsWith(
+                "serialized model differs from test at line 3, column 2"));
+        assertEquals("a\nbb\ncXc\nd", failure.getExpected());
+        assertEquals("a\nbb\ncYc\nd", failure.getActual());
+    }
+
+    @Test
+    public void reportsMissingText() throws IOException {
+        final ComparisonFailure failure = mismatch("a b c", "a b", false);
+        assertEquals("a b c", failure.getExpected());
+        assertEquals("a b", failure.getActual());
+    }
+
+    @Test
+    public void reportsExtraText() throws IOException {
+        final ComparisonFailure failure = mismatch("a b", "a b c", false);
+        assertEquals("a b", failure.getExpected());
+        assertEquals("a b c", failure.getActual());
+    }
+
+    @Test
+    public void reportsOnlyLinesAroundTheDifference() throws IOException {
+        final StringBuilder expected = new StringBuilder();
+        final StringBuilder actual = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            expected.append("line").append(i).append('\n');
+            actual.append(i == 50 ? "changed" : "line").append(i)
+                    .append('\n');
+        }
+        final ComparisonFailure failure = mismatch(expected, actual, false);
+        assertEquals("line48\nline49\nline50\nline51\nline52\n",
+                failure.getExpected());
+        assertEquals("line48\nline49\nchanged50\nline51\nline52\n",
+                failure.getActual());
+    }
+
+    @Test
+    public void stopsAcceptingInputAfterTheDifference() throws IOException {
+        final StreamingComparator comparator = new StreamingComparator(
+                "test", "a\nb\nc\nd\ne\n", "UTF-8", false);
+        comparator.write(bytes("x\nb\n"));
+        assertTrue(comparator.hasMismatch());
+        try {
+            comparator.write(bytes("c\nd\ne\n"));
+            fail("expected the serializer to be stopped");
+        } catch (final IOException e) {
+            // expected
+        }
+        try {
+            comparator.finish();
+            fail("expected a ComparisonFailure");
+        } catch (final ComparisonFailure e) {
+            assertEquals("x\nb\nc\n", e.getActual());
+        }
+    }
+
+    @Test
+    public void decodesCharactersSplitAcrossWrites() throws IOException {
+        final byte[] text = bytes("name : ä€");
+        final StreamingComparator comparator = new StreamingComparator(
+                "test", "name : ä€", "UTF-8", false);
+        for (final byte b : text) {
+            comparator.write(b);
+        }
+        assertFalse(comparator.hasMismatch());
+        comparator.finish();
+    }
+
+    private static void compare(final CharSequence expected,
+            final CharSequence actual, final boolean normalizeNewlines)
+            throws IOException {
+        final StreamingComparator comparator = new StreamingComparator(
+                "test", expected, "UTF-8", normalizeNewlines);
+        try {
+            comparator.write(bytes(actual));
+        } catch (final IOException e) {
+            // like the serializer, stopped after a difference
+            if (!comparator.hasMismatch()) {
+                throw e;
+            }
+        }
+        comparator.finish();
+    }
+
+    private static ComparisonFailure mismatch(final CharSequence expected,
+            final CharSequence actual, final boolean normalizeNewlines)
+            throws IOException {
+        try {
+            compare(expected, actual, normalizeNewlines);
+        } catch (final ComparisonFailure e) {
+            return e;
+        }
+        throw new AssertionError("expected a ComparisonFailure");
+    }
+
+    private static byte[] bytes(final CharSequence s)
+            throws UnsupportedEncodingException {
+        return s.toString().getBytes("UTF-8");
+    }
+}
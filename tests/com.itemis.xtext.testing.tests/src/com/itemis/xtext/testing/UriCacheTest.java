@@ -0,0 +1,236 @@
+package com.itemis.xtext.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.URIHandler;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.resource.impl.URIHandlerImpl;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * @author Vlad Dumitrescu
+ *
+ */
+public class UriCacheTest {
+
+    /* well before the time stamps of files written by the tests */
+    private static final long PAST = System.currentTimeMillis() - 60000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private UriCache cache;
+    private ResourceSet rs;
+
+    @Before
+    public void createCache() {
+        cache = new UriCache(1000);
+        rs = new ResourceSetImpl();
+        cache.install(rs);
+    }
+
+    @Test
+    public void isOffByDefault() {
+        assertEquals(0, UriCache.DEFAULT_MAX_BYTES);
+        final UriCache off = new UriCache(UriCache.DEFAULT_MAX_BYTES);
+        final ResourceSet plain = new ResourceSetImpl();
+        final List<URIHandler> handlers = new ArrayList<URIHandler>(
+                plain.getURIConverter().getURIHandlers());
+        off.install(plain);
+        assertFalse(off.isEnabled());
+        assertEquals(handlers, plain.getURIConverter().getURIHandlers());
+    }
+
+    @Test
+    public void installsOncePerResourceSet() {
+        final int handlers = rs.getURIConverter().getURIHandlers().size();
+        cache.install(rs);
+        assertEquals(handlers, rs.getURIConverter().getURIHandlers().size());
+    }
+
+    @Test
+    public void servesRepeatedReadsFromMemory() throws IOException {
+        final URI uri = file("a.txt", "abc", PAST);
+        assertEquals("abc", read(uri));
+        assertEquals("abc", read(uri));
+        assertEquals(2, cache.getReads());
+        assertEquals(1, cache.getReadHits());
+        assertEquals(3, cache.getBytes());
+    }
+
+    @Test
+    public void rereadsFilesWithAnotherTimeStamp() throws IOException {
+        final URI uri = file("a.txt", "abc", PAST);
+        assertEquals("abc", read(uri));
+        file("a.txt", "xyz", PAST + 1000);
+        assertEquals("xyz", read(uri));
+        assertEquals(0, cache.getReadHits());
+    }
+
+    @Test
+    public void rereadsFilesWithAnotherLength() throws IOException {
+        final URI uri = file("a.txt", "abc", PAST);
+        assertEquals("abc", read(uri));
+        file("a.txt", "abcd", PAST);
+        assertEquals("abcd", read(uri));
+        assertEquals(0, cache.getReadHits());
+    }
+
+    @Test
+    public void doesntCacheRecentlyModifiedFiles() throws IOException {
+        final URI uri = file("a.txt", "abc", System.currentTimeMillis());
+        assertEquals("abc", read(uri));
+        // a change within the granularity of the time stamp
+        file("a.txt", "xyz", new File(uri.toFileString()).lastModified());
+        assertEquals("xyz", read(uri));
+        assertEquals(0, cache.getReadHits());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void rereadsEntriesOfChangedJars() throws IOException {
+        final File jar = jar("a.jar", "abc", PAST);
+        final URI uri = URI.createURI("archive:"
+                + URI.createFileURI(jar.getAbsolutePath()) + "!/a.txt");
+        assertEquals("abc", read(uri));
+        assertEquals("abc", read(uri));
+        assertEquals(1, cache.getReadHits());
+        jar("a.jar", "xyz", PAST + 1000);
+        assertEquals("xyz", read(uri));
+        assertEquals(1, cache.getReadHits());
+    }
+
+    @Test
+    public void dropsFilesWrittenThroughTheResourceSet() throws IOException {
+        final URI uri = file("a.txt", "abc", PAST);
+        assertEquals("abc", read(uri));
+        final OutputStream out = rs.getURIConverter().createOutputStream(uri);
+        try {
+            out.write("xyz".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyRead() throws IOException {
+        cache = new UriCache(10);
+        rs = new ResourceSetImpl();
+        cache.install(rs);
+        final URI a = file("a.txt", "aaaa", PAST);
+        final URI b = file("b.txt", "bbbb", PAST);
+        final URI c = file("c.txt", "cccc", PAST);
+        read(a);
+        read(b);
+        read(a);
+        read(c);
+        assertEquals(8, cache.getBytes());
+        assertEquals(1, cache.getReadHits());
+        read(a);
+        assertEquals(2, cache.getReadHits());
+        read(b);
+        assertEquals(2, cache.getReadHits());
+        assertTrue(cache.getStatistics().contains("2 evicted"));
+    }
+
+    @Test
+    public void doesntKeepContentsLargerThanTheCache() throws IOException {
+        final URI uri = file("a.txt", new String(new char[1001]), PAST);
+        read(uri);
+        read(uri);
+        assertEquals(0, cache.getBytes());
+        assertEquals(0, cache.getReadHits());
+    }
+
+    @Test
+    public void readsWithTheHandlersOfTheResourceSet() throws IOException {
+        final CountingHandler counting = new CountingHandler();
+        rs = new ResourceSetImpl();
+        rs.getURIConverter().getURIHandlers().add(0, counting);
+        cache.install(rs);
+        final URI uri = file("a.txt", "abc", PAST);
+        assertEquals("counted", read(uri));
+        assertEquals("counted", read(uri));
+        assertEquals(1, counting.reads);
+    }
+
+    private URI file(final String name, final String contents,
+            final long timeStamp) throws IOException {
+        final File file = new File(folder.getRoot(), name);
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        file.setLastModified(timeStamp);
+        return URI.createFileURI(file.getAbsolutePath());
+    }
+
+    private File jar(final String name, final String contents,
+            final long timeStamp) throws IOException {
+        final File file = new File(folder.getRoot(), name);
+        final JarOutputStream out = new JarOutputStream(
+                new FileOutputStream(file));
+        try {
+            out.putNextEntry(new ZipEntry("a.txt"));
+            out.write(contents.getBytes("UTF-8"));
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        file.setLastModified(timeStamp);
+        return file;
+    }
+
+    private String read(final URI uri) throws IOException {
+        final InputStream in = rs.getURIConverter().createInputStream(uri);
+        try {
+            return new String(ByteStreams.toByteArray(in), "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * reads every file as the same text
+     */
+    private static class CountingHandler extends URIHandlerImpl {
+
+        int reads;
+
+        @Override
+        public boolean canHandle(final URI uri) {
+            return uri.isFile();
+        }
+
+        @Override
+        public InputStream createInputStream(final URI uri,
+                final Map<?, ?> options) throws IOException {
+            reads++;
+            return new ByteArrayInputStream("counted".getBytes("UTF-8"));
+        }
+    }
+}